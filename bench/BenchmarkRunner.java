@@ -0,0 +1,122 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Measures benchmarks and prints one line of results per run. A benchmark is warmed up, then
+ * repeated until the measurement time has passed, and reported as throughput, time per operation
+ * and allocation.
+ *
+ * <p>Allocation is read from the JVM for all live threads, so the work done on the image
+ * processing pool is counted as well. It is not reported on JVMs without per-thread allocation
+ * counters.
+ */
+public class BenchmarkRunner {
+
+  /**
+   * A piece of work to measure.
+   */
+  public interface Benchmark {
+
+    /**
+     * Runs the work once.
+     *
+     * @throws Exception If the work fails, which ends the benchmark run.
+     */
+    void run() throws Exception;
+  }
+
+  private final long warmupNanos;
+  private final long measureNanos;
+  private final com.sun.management.ThreadMXBean threads;
+
+  /**
+   * Constructs a runner.
+   *
+   * @param warmupMillis  How long each benchmark is run before it is measured.
+   * @param measureMillis How long each benchmark is measured.
+   */
+  public BenchmarkRunner(long warmupMillis, long measureMillis) {
+    this.warmupNanos = warmupMillis * 1_000_000L;
+    this.measureNanos = measureMillis * 1_000_000L;
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      this.threads = (com.sun.management.ThreadMXBean) bean;
+      this.threads.setThreadAllocatedMemoryEnabled(true);
+    } else {
+      this.threads = null;
+    }
+  }
+
+  /**
+   * Prints the header of the result table.
+   */
+  public void printHeader() {
+    System.out.println(String.format(Locale.ROOT, "%-28s %11s %7s %10s %12s %12s %14s",
+        "benchmark", "size", "threads", "ops/s", "ms/op", "alloc MB/s", "alloc B/op"));
+  }
+
+  /**
+   * Warms up and measures a benchmark, printing its results.
+   *
+   * @param name      The name of the benchmark.
+   * @param size      The size of the image it works on, for the report.
+   * @param threads   The number of image processing threads, for the report.
+   * @param benchmark The work to measure.
+   * @throws Exception If the work fails.
+   */
+  public void measure(String name, String size, int threads, Benchmark benchmark)
+      throws Exception {
+    repeat(benchmark, warmupNanos);
+    System.gc();
+
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    long operations = repeat(benchmark, measureNanos);
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocatedBytes() - allocatedBefore;
+
+    double seconds = elapsed / 1e9;
+    String allocRate = "-";
+    String allocPerOp = "-";
+    if (this.threads != null) {
+      allocRate = String.format(Locale.ROOT, "%.1f", allocated / seconds / (1 << 20));
+      allocPerOp = String.valueOf(allocated / operations);
+    }
+    System.out.println(String.format(Locale.ROOT, "%-28s %11s %7d %10.2f %12.3f %12s %14s",
+        name, size, threads, operations / seconds, elapsed / 1e6 / operations, allocRate,
+        allocPerOp));
+  }
+
+  /**
+   * Runs a benchmark at least once and until the given time has passed.
+   *
+   * @return The number of runs.
+   */
+  private static long repeat(Benchmark benchmark, long nanos) throws Exception {
+    long operations = 0;
+    long end = System.nanoTime() + nanos;
+    do {
+      benchmark.run();
+      operations++;
+    } while (System.nanoTime() < end);
+    return operations;
+  }
+
+  /**
+   * Sums the bytes allocated so far by all live threads.
+   */
+  private long allocatedBytes() {
+    if (threads == null) {
+      return 0;
+    }
+    long total = 0;
+    for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      if (bytes > 0) {
+        total += bytes;
+      }
+    }
+    return total;
+  }
+}
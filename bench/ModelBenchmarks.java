@@ -0,0 +1,221 @@
+import controller.command.Load;
+import controller.command.Save;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import model.AdvancedImageManipulatorModel;
+import model.AdvancedImageManipulatorModelImpl;
+import model.Image;
+import model.TileScheduler;
+
+/**
+ * Benchmarks of every model operation, of loading and saving each file format, of histogram
+ * generation and of split view previews, on synthetic images from 256x256 up to 8K. Each
+ * benchmark is measured for every image size and every number of image processing threads
+ * requested, so that the results also show how the operations scale.
+ *
+ * <p>The benchmarks only need the compiled sources and run offline. From the project directory:
+ *
+ * <pre>
+ * sh bench/run.sh [options]
+ * </pre>
+ *
+ * <p>Options:
+ * <ul>
+ *   <li>{@code -sizes 256,1024,2048,4096,8k} image sizes, a width for square images or 8k for
+ *   7680x4320. The default leaves out 8K.</li>
+ *   <li>{@code -threads 1,2,4} numbers of image processing threads. The default is 1 and the
+ *   number of processors.</li>
+ *   <li>{@code -filter regex} only runs the benchmarks whose name matches.</li>
+ *   <li>{@code -warmup ms} and {@code -time ms} the warmup and measurement time of each run,
+ *   500 and 1000 by default.</li>
+ * </ul>
+ *
+ * <p>The result cache is turned off, unless set with {@code -Dimea.cache.bytes}, so that
+ * repeated operations are computed every time.
+ */
+public class ModelBenchmarks {
+
+  private static final String[] FORMATS = {"ppm", "png", "jpg", "bmp", "hwt", "pix"};
+
+  private final AdvancedImageManipulatorModel model;
+  private final Path directory;
+  private final Map<String, BenchmarkRunner.Benchmark> benchmarks = new LinkedHashMap<>();
+  private int splitStep;
+
+  /**
+   * Sets up the benchmarks on a synthetic image of the given size.
+   *
+   * @param width     The width of the image.
+   * @param height    The height of the image.
+   * @param directory The directory the file benchmarks write to.
+   * @throws Exception If the input files cannot be written.
+   */
+  private ModelBenchmarks(int width, int height, Path directory) throws Exception {
+    this.directory = directory;
+    this.model = new AdvancedImageManipulatorModelImpl();
+    model.addImageToHashMap("src", syntheticImage(width, height));
+    model.rgbSplit("src", "r", "g", "b");
+    model.horizontalFlip("src", "counted");
+    for (String format : FORMATS) {
+      new Save(file("input." + format), "src").execute(model);
+    }
+    addBenchmarks();
+  }
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args The options, see the class description.
+   * @throws Exception If a benchmark fails.
+   */
+  public static void main(String[] args) throws Exception {
+    if (System.getProperty("imea.cache.bytes") == null) {
+      System.setProperty("imea.cache.bytes", "0");
+    }
+    List<String> sizes = Arrays.asList("256", "1024", "2048", "4096");
+    List<Integer> threadCounts = new ArrayList<>(Arrays.asList(1));
+    int processors = Runtime.getRuntime().availableProcessors();
+    if (processors > 1) {
+      threadCounts.add(processors);
+    }
+    Pattern filter = Pattern.compile(".*");
+    long warmup = 500;
+    long time = 1000;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "-sizes":
+          sizes = Arrays.asList(args[i + 1].split(","));
+          break;
+        case "-threads":
+          threadCounts.clear();
+          for (String count : args[i + 1].split(",")) {
+            threadCounts.add(Integer.parseInt(count.trim()));
+          }
+          break;
+        case "-filter":
+          filter = Pattern.compile(args[i + 1]);
+          break;
+        case "-warmup":
+          warmup = Long.parseLong(args[i + 1]);
+          break;
+        case "-time":
+          time = Long.parseLong(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+
+    BenchmarkRunner runner = new BenchmarkRunner(warmup, time);
+    runner.printHeader();
+    Path directory = Files.createTempDirectory("imea-bench");
+    try {
+      for (String size : sizes) {
+        int width = size.equalsIgnoreCase("8k") ? 7680 : Integer.parseInt(size.trim());
+        int height = size.equalsIgnoreCase("8k") ? 4320 : width;
+        ModelBenchmarks suite = new ModelBenchmarks(width, height, directory);
+        for (Map.Entry<String, BenchmarkRunner.Benchmark> entry : suite.benchmarks.entrySet()) {
+          if (!filter.matcher(entry.getKey()).find()) {
+            continue;
+          }
+          for (int threads : threadCounts) {
+            TileScheduler.setParallelism(threads);
+            runner.measure(entry.getKey(), width + "x" + height, threads, entry.getValue());
+          }
+        }
+      }
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(directory);
+    }
+  }
+
+  /**
+   * Registers the benchmarks. Point operations are computed when their result is read, so the
+   * benchmarks read every result.
+   */
+  private void addBenchmarks() {
+    for (String format : FORMATS) {
+      benchmarks.put("load-" + format, () -> {
+        new Load(file("input." + format), "loaded").execute(model);
+        model.getImageFromHashMap("loaded");
+      });
+      benchmarks.put("save-" + format, () -> new Save(file("output." + format), "src")
+          .execute(model));
+    }
+    add("rgb-split", () -> model.rgbSplit("src", "dr", "dg", "db"));
+    add("rgb-combine", () -> model.rgbCombine("r", "g", "b", "dest"));
+    add("horizontal-flip", () -> model.horizontalFlip("src", "dest"));
+    add("vertical-flip", () -> model.verticalFlip("src", "dest"));
+    add("brighten", () -> model.brighten(20, "src", "dest"));
+    for (String component : new String[] {"red-component", "green-component", "blue-component",
+        "value-component", "luma-component", "intensity-component"}) {
+      add(component, () -> model.greyscale(component, "src", "dest"));
+    }
+    add("blur", () -> model.blur("src", "dest"));
+    add("sharpen", () -> model.sharpen("src", "dest"));
+    add("sepia", () -> model.sepia("src", "dest"));
+    add("compress", () -> model.compress(50, "src", "dest"));
+    add("thumbnail", () -> model.thumbnail(4, "src", "dest"));
+    add("color-correct", () -> model.colorCorrect("src", "dest"));
+    add("levels-adjust", () -> model.adjustLevels(10, 128, 245, "src", "dest"));
+    // The counts are dropped each time, since an image keeps its histogram once counted.
+    add("histogram", () -> {
+      model.getImageFromHashMap("counted").markModified();
+      model.generateHistogram("counted", "dest");
+    });
+    // Moving the split line back and forth, as when dragging the slider.
+    add("split-preview-move", () -> model.splitViewNew("blur src dest",
+        30 + 40 * (splitStep++ % 2)));
+    add("split-preview-new", () -> {
+      model.releaseImage("dest");
+      model.splitViewNew("sepia src dest", 50);
+    });
+  }
+
+  /**
+   * Registers an operation that writes the image named dest, reading it afterwards.
+   */
+  private void add(String name, Runnable operation) {
+    benchmarks.put(name, () -> {
+      operation.run();
+      model.getImageFromHashMap("dest");
+    });
+  }
+
+  private String file(String name) {
+    return directory.resolve(name).toString();
+  }
+
+  /**
+   * Creates an image with smooth gradients and some noise, so that compression and the file
+   * formats see a photo-like image rather than a flat one.
+   */
+  private static Image syntheticImage(int width, int height) {
+    Image image = new Image(width, height);
+    int[] pixels = image.getPixelData();
+    Random random = new Random(42);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int noise = random.nextInt(16);
+        int red = Math.min(255, x * 255 / width + noise);
+        int green = Math.min(255, y * 255 / height + noise);
+        int blue = Math.min(255, (x + y) * 255 / (width + height) + noise);
+        pixels[y * width + x] = Image.packRGB(red, green, blue);
+      }
+    }
+    return image;
+  }
+}
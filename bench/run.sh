@@ -0,0 +1,11 @@
+#!/bin/sh
+# Compiles the application and the benchmarks into a temporary directory and runs them.
+# Usage, from the project directory:
+#   sh bench/run.sh [-sizes 256,1024,8k] [-threads 1,4] [-filter regex] [-warmup ms] [-time ms]
+# Extra JVM options can be given in JAVA_OPTS.
+set -e
+cd "$(dirname "$0")/.."
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+javac -nowarn -d "$OUT" $(find src bench -name "*.java")
+java -Djava.awt.headless=true -Xmx6g $JAVA_OPTS -cp "$OUT" ModelBenchmarks "$@"
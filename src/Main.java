@@ -1,8 +1,12 @@
 import controller.AdvancedImageManipulatorControllerImpl;
+import controller.BatchProcessor;
 import controller.GUICallBackController;
-import controller.ImageManipulatorController;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import model.AdvancedImageManipulatorModel;
 import model.AdvancedImageManipulatorModelImpl;
 import view.AdvancedImageManipulatorViewImpl;
@@ -23,24 +27,83 @@ public class Main {
   public static void main(String[] args) throws IOException {
     AdvancedImageManipulatorModel model = new AdvancedImageManipulatorModelImpl();
     ImageManipulatorView view = new AdvancedImageManipulatorViewImpl();
-    ImageManipulatorController controller = new AdvancedImageManipulatorControllerImpl(model, view);
+    AdvancedImageManipulatorControllerImpl controller =
+        new AdvancedImageManipulatorControllerImpl(model, view);
 
     if (args.length > 0 && args[0].equals("-file")) {
       if (args.length > 1) {
         String fileName = args[1];
+        if (args.length > 2) {
+          // Independent commands of the script run on the given number of threads.
+          int threads = parseThreads(args);
+          if (threads < 1) {
+            System.out.println("Error: Expected -threads N with N at least 1 after the file name.");
+            System.exit(1);
+          }
+          controller = new AdvancedImageManipulatorControllerImpl(model, view, threads);
+        }
+        // The command metrics can be watched through JMX while the script runs.
+        controller.getMetrics().register();
         controller.runCommandsFromFile(fileName, System.out);
         System.exit(0);
       } else {
         System.out.println("Error: File name not provided after -file option.");
         System.exit(1);
       }
+    } else if (args.length > 0 && args[0].equals("-batch")) {
+      // -batch template glob output-directory [threads]
+      int threads = args.length == 5 ? parseCount(args[4])
+          : Runtime.getRuntime().availableProcessors();
+      if ((args.length != 4 && args.length != 5) || threads < 1) {
+        System.out.println("Error: Expected -batch template-file glob output-directory"
+            + " [threads].");
+        System.exit(1);
+      }
+      BatchProcessor batch = new BatchProcessor(Files.readAllLines(Paths.get(args[1])), threads,
+          view);
+      int failed = batch.run(args[2], Paths.get(args[3]), System.out);
+      System.exit(failed == 0 ? 0 : 1);
     } else if (args.length > 0 && args[0].equals("-text")) {
+      controller.getMetrics().register();
       controller.executeApplication(new InputStreamReader(System.in), System.out);
     } else if (args.length == 0) {
       ImageManipulatorGUIView guiView = new GUIViewImpl(
           "Image Manipulation & Enhancement Application");
       AdvancedImageManipulatorModel guiModel = new AdvancedImageManipulatorModelImpl();
-      new GUICallBackController(guiModel,guiView);
+      // Operations run one at a time on a worker thread so the window stays responsive.
+      ExecutorService worker = Executors.newSingleThreadExecutor(job -> {
+        Thread thread = new Thread(job, "imea-gui-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+      new GUICallBackController(guiModel, guiView, worker);
+    }
+  }
+
+  /**
+   * Reads the number of script threads from the arguments -file name -threads N.
+   *
+   * @param args Command-line arguments passed to the application.
+   * @return The number of threads, or 0 if the arguments do not give one.
+   */
+  private static int parseThreads(String[] args) {
+    if (args.length != 4 || !args[2].equals("-threads")) {
+      return 0;
+    }
+    return parseCount(args[3]);
+  }
+
+  /**
+   * Reads a count given on the command line.
+   *
+   * @param text The argument.
+   * @return The count, or 0 if the argument is not a number.
+   */
+  private static int parseCount(String text) {
+    try {
+      return Integer.parseInt(text);
+    } catch (NumberFormatException e) {
+      return 0;
     }
   }
 }
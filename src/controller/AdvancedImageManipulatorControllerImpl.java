@@ -5,7 +5,10 @@ import controller.command.ColorCorrect;
 import controller.command.Compress;
 import controller.command.Histogram;
 import controller.command.SplitOperation;
+import controller.command.Stream;
+import controller.command.Thumbnail;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -29,6 +32,21 @@ public class AdvancedImageManipulatorControllerImpl extends ImageManipulatorCont
     super(model, view);
   }
 
+  /**
+   * Constructs an AdvancedImageManipulatorControllerImpl that runs the independent commands of a
+   * script on several threads.
+   *
+   * @param model         The ImageManipulatorModel for image manipulation operations.
+   * @param view          The view for displaying messages and results.
+   * @param scriptThreads The number of script commands run at the same time, 1 to run scripts
+   *                      in order.
+   * @throws IllegalArgumentException if scriptThreads is less than one.
+   */
+  public AdvancedImageManipulatorControllerImpl(AdvancedImageManipulatorModel model,
+      ImageManipulatorView view, int scriptThreads) {
+    super(model, view, scriptThreads);
+  }
+
   @Override
   protected boolean processCommand(String commandLine, Appendable out) throws IOException {
     Map<String, Function<String[], AdvancedImageManipulationCommand>> commands = new HashMap<>();
@@ -38,6 +56,16 @@ public class AdvancedImageManipulatorControllerImpl extends ImageManipulatorCont
     commands.put("color-correct", tokens -> new ColorCorrect(tokens[1], tokens[2]));
     commands.put("levels-adjust", tokens -> new AdjustLevels(Integer.parseInt(tokens[1]),
         Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]), tokens[4], tokens[5]));
+    commands.put("thumbnail",
+        tokens -> new Thumbnail(Integer.parseInt(tokens[1]), tokens[2], tokens[3]));
+    commands.put("stream", tokens -> {
+      if (tokens.length < 4) {
+        handleError(out, "Invalid command format: stream input-file output-file operation");
+        return null;
+      }
+      return new Stream(tokens[1], tokens[2],
+          String.join(" ", Arrays.copyOfRange(tokens, 3, tokens.length)));
+    });
 
     String[] tokens = commandLine.split("\\s+");
     String command = tokens[0].toLowerCase();
@@ -47,7 +75,8 @@ public class AdvancedImageManipulatorControllerImpl extends ImageManipulatorCont
       double splitPercentage = Double.parseDouble(tokens[tokens.length - 1]);
       AdvancedImageManipulationCommand cmd = new SplitOperation(commandBeforeSplit,
           splitPercentage);
-      cmd.execute((AdvancedImageManipulatorModel) model);
+      executeMeasured(command + " split", commandLine,
+          () -> cmd.execute((AdvancedImageManipulatorModel) model));
       out.append("Operation performed successfully: ").append("split").append("\n");
       return true;
     } else {
@@ -59,7 +88,8 @@ public class AdvancedImageManipulatorControllerImpl extends ImageManipulatorCont
         AdvancedImageManipulationCommand cmd = cmdFunction.apply(tokens);
         if (cmd != null) {
           try {
-            cmd.execute((AdvancedImageManipulatorModel) model);
+            executeMeasured(command, commandLine,
+                () -> cmd.execute((AdvancedImageManipulatorModel) model));
             out.append("Operation performed successfully: ").append(command).append("\n");
             return true;
           } catch (IllegalArgumentException e) {
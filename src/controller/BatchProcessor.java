@@ -0,0 +1,248 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import model.AdvancedImageManipulatorModel;
+import model.AdvancedImageManipulatorModelImpl;
+import model.ImageAlbum;
+import view.ImageManipulatorView;
+
+/**
+ * Applies one script to every file matching a glob pattern. The script is a template in which
+ * {@code {in}} stands for the path of the input file, {@code {name}} for its file name without
+ * the extension and {@code {out}} for the output directory, for example:
+ *
+ * <pre>
+ * load {in} img
+ * sepia img img
+ * save {out}/{name}-sepia.png img
+ * </pre>
+ *
+ * <p>Files are processed on a fixed number of workers, each file with a model of its own, so
+ * one image can be decoding while another is being processed or encoded. Only a few files per
+ * worker are handed out ahead of the workers, so a large directory never queues up in memory.
+ * Images are released after their last use in the script. A file whose commands fail is
+ * reported and the run goes on with the next file.
+ *
+ * <p>The models share the memory budget of one album, each getting an equal part, and keep no
+ * operation results, since a model lives for a single file.
+ */
+public class BatchProcessor {
+
+  /**
+   * Files handed out ahead of each worker.
+   */
+  private static final int FILES_AHEAD_PER_WORKER = 2;
+
+  private final List<String> template;
+  private final int threads;
+  private final long albumBytesPerFile;
+  private final ImageManipulatorView view;
+  private final AtomicInteger processed = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  /**
+   * Prepares a batch run.
+   *
+   * @param template The lines of the script template.
+   * @param threads  The number of files processed at the same time.
+   * @param view     The view of the controller running the script of each file.
+   * @throws IllegalArgumentException if threads is less than one.
+   */
+  public BatchProcessor(List<String> template, int threads, ImageManipulatorView view) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Threads must be at least 1.");
+    }
+    this.template = new ArrayList<>(template);
+    this.threads = threads;
+    this.albumBytesPerFile = new ImageAlbum().getMemoryBudget() / threads;
+    this.view = view;
+  }
+
+  /**
+   * Processes every file matching a glob pattern, writing one line per file and a final count.
+   *
+   * @param glob            The pattern, such as photos/*.jpg. Directories are searched from the
+   *                        part of the pattern before the first wildcard.
+   * @param outputDirectory The directory substituted for {out}, created if needed.
+   * @param out             Where the report is written.
+   * @return The number of files that failed.
+   * @throws IOException If the files cannot be listed or the report cannot be written.
+   */
+  public int run(String glob, Path outputDirectory, Appendable out) throws IOException {
+    Files.createDirectories(outputDirectory);
+    Path base = baseDirectory(glob);
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+      Thread thread = new Thread(task, "imea-batch-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    Semaphore ahead = new Semaphore(threads * FILES_AHEAD_PER_WORKER);
+    try (Stream<Path> files = Files.walk(base, searchDepth(glob))) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (!Files.isRegularFile(file) || !matcher.matches(file)) {
+          continue;
+        }
+        // Wait for a worker to catch up before listing more files.
+        ahead.acquireUninterruptibly();
+        workers.execute(() -> {
+          try {
+            processFile(file, outputDirectory, out);
+          } finally {
+            ahead.release();
+          }
+        });
+      }
+    } finally {
+      workers.shutdown();
+      ahead.acquireUninterruptibly(threads * FILES_AHEAD_PER_WORKER);
+    }
+    report(out, String.format(Locale.ROOT, "Processed %d files, %d failed.", processed.get(),
+        failed.get()));
+    return failed.get();
+  }
+
+  /**
+   * Returns the number of files processed so far, including those that failed.
+   *
+   * @return The number of files.
+   */
+  public int getProcessedCount() {
+    return processed.get();
+  }
+
+  /**
+   * Returns the number of files that failed so far.
+   *
+   * @return The number of files.
+   */
+  public int getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * Runs the script on one file, reporting the outcome.
+   */
+  private void processFile(Path file, Path outputDirectory, Appendable out) {
+    long start = System.nanoTime();
+    String failure;
+    StringBuilder messages = new StringBuilder();
+    try {
+      failure = runScript(file, outputDirectory, messages);
+    } catch (IOException | RuntimeException e) {
+      failure = e.getClass().getSimpleName()
+          + (e.getMessage() != null ? ": " + e.getMessage() : "");
+    }
+    processed.incrementAndGet();
+    if (failure == null) {
+      report(out, String.format(Locale.ROOT, "OK %s (%.0f ms)", file,
+          (System.nanoTime() - start) / 1e6));
+    } else {
+      failed.incrementAndGet();
+      report(out, "FAILED " + file + ": " + failure);
+    }
+  }
+
+  /**
+   * Runs the script of one file in order, releasing images after their last use.
+   *
+   * @return A description of the failure, or null if every command succeeded.
+   */
+  private String runScript(Path file, Path outputDirectory, StringBuilder messages)
+      throws IOException {
+    String input = file.toString();
+    String output = outputDirectory.toString();
+    if (input.matches(".*\\s.*") || output.matches(".*\\s.*")) {
+      return "Paths with spaces cannot be used in commands.";
+    }
+    String fileName = file.getFileName().toString();
+    String name = fileName.contains(".")
+        ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+    List<String> lines = new ArrayList<>();
+    for (String line : template) {
+      lines.add(line.replace("{in}", input).replace("{out}", output).replace("{name}", name));
+    }
+
+    AdvancedImageManipulatorModel model =
+        new AdvancedImageManipulatorModelImpl(albumBytesPerFile, 0);
+    ImageManipulatorControllerImpl controller =
+        new AdvancedImageManipulatorControllerImpl(model, view);
+    ScriptAnalysis script = new ScriptAnalysis(lines);
+    for (int i = 0; i < script.size(); i++) {
+      int length = messages.length();
+      if (!controller.processCommand(script.getCommand(i), messages)) {
+        String message = messages.substring(length).trim();
+        return "Command failed: " + script.getCommand(i)
+            + (message.isEmpty() ? "" : " (" + message + ")");
+      }
+      for (String dead : script.getDeadAfter(i)) {
+        model.releaseImage(dead);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the directory to search, the part of the pattern before the first wildcard.
+   */
+  private static Path baseDirectory(String glob) {
+    int separator = lastSeparatorBeforeWildcard(glob);
+    if (separator < 0) {
+      return Paths.get("");
+    }
+    return Paths.get(separator == 0 ? glob.substring(0, 1) : glob.substring(0, separator));
+  }
+
+  /**
+   * Finds how many directory levels below the base directory the pattern reaches, unlimited
+   * for a pattern with **.
+   */
+  private static int searchDepth(String glob) {
+    String rest = glob.substring(lastSeparatorBeforeWildcard(glob) + 1);
+    if (rest.contains("**")) {
+      return Integer.MAX_VALUE;
+    }
+    int depth = 1;
+    for (char c : rest.toCharArray()) {
+      if (c == '/' || c == '\\') {
+        depth++;
+      }
+    }
+    return depth;
+  }
+
+  private static int lastSeparatorBeforeWildcard(String glob) {
+    int wildcard = glob.length();
+    for (int i = 0; i < glob.length() && wildcard == glob.length(); i++) {
+      if ("*?[{".indexOf(glob.charAt(i)) >= 0) {
+        wildcard = i;
+      }
+    }
+    return Math.max(glob.lastIndexOf('/', wildcard), glob.lastIndexOf('\\', wildcard));
+  }
+
+  private static void report(Appendable out, String line) {
+    synchronized (out) {
+      try {
+        out.append(line).append("\n");
+      } catch (IOException e) {
+        System.err.println("Error displaying the message.");
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package controller;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per command timing and allocation, summed by command name. For every command it records the
+ * wall time, the CPU time and the bytes allocated, both on the thread running the command and on
+ * the image processing pool, and the megapixels of the images it read. Throughput is the number
+ * of megapixels processed per second of wall time. Point operations such as brighten are
+ * computed when their result is first read, so their time is counted under the command reading
+ * it.
+ *
+ * <p>The metrics can be printed as a table, written as JSON or CSV, and published through JMX
+ * under {@value #OBJECT_NAME}. CPU time and allocation are left out when the JVM does not
+ * measure them.
+ */
+public class CommandMetrics implements CommandMetricsMXBean {
+
+  /**
+   * The name the metrics are published under through JMX.
+   */
+  public static final String OBJECT_NAME = "imea:type=CommandMetrics";
+
+  private final Map<String, Totals> totals = new LinkedHashMap<>();
+
+  /**
+   * Adds a run of a command to the metrics.
+   *
+   * @param name           The name of the command.
+   * @param wallNanos      The wall time of the run.
+   * @param cpuNanos       The CPU time of the run, or a negative value if not measured.
+   * @param allocatedBytes The bytes allocated by the run, or a negative value if not measured.
+   * @param pixels         The number of pixels the command read.
+   */
+  public synchronized void record(String name, long wallNanos, long cpuNanos,
+                                  long allocatedBytes, long pixels) {
+    Totals total = totals.computeIfAbsent(name, k -> new Totals());
+    total.count++;
+    total.wallNanos += wallNanos;
+    total.pixels += pixels;
+    if (cpuNanos < 0) {
+      total.cpuMeasured = false;
+    }
+    total.cpuNanos += Math.max(0, cpuNanos);
+    if (allocatedBytes < 0) {
+      total.allocationMeasured = false;
+    }
+    total.allocatedBytes += Math.max(0, allocatedBytes);
+  }
+
+  @Override
+  public synchronized String[] getCommandNames() {
+    return totals.keySet().toArray(new String[0]);
+  }
+
+  @Override
+  public synchronized long getCommandCount() {
+    long count = 0;
+    for (Totals total : totals.values()) {
+      count += total.count;
+    }
+    return count;
+  }
+
+  @Override
+  public synchronized double getTotalWallMillis() {
+    long nanos = 0;
+    for (Totals total : totals.values()) {
+      nanos += total.wallNanos;
+    }
+    return nanos / 1e6;
+  }
+
+  /**
+   * Returns how many times a command has run.
+   *
+   * @param name The name of the command.
+   * @return The number of runs, 0 if it never ran.
+   */
+  public synchronized long getCount(String name) {
+    Totals total = totals.get(name);
+    return total == null ? 0 : total.count;
+  }
+
+  /**
+   * Returns the megapixels read by all runs of a command.
+   *
+   * @param name The name of the command.
+   * @return The megapixels, 0 if it never ran.
+   */
+  public synchronized double getMegapixels(String name) {
+    Totals total = totals.get(name);
+    return total == null ? 0 : total.pixels / 1e6;
+  }
+
+  @Override
+  public synchronized String getSummary() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%-22s %6s %11s %11s %11s %10s %9s%n", "Command",
+        "Count", "Wall ms", "CPU ms", "Alloc MB", "MPixels", "MP/s"));
+    for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+      Totals total = entry.getValue();
+      sb.append(String.format(Locale.ROOT, "%-22s %6d %11.1f %11s %11s %10.2f %9.1f%n",
+          entry.getKey(), total.count, total.wallNanos / 1e6,
+          total.cpuMeasured ? String.format(Locale.ROOT, "%.1f", total.cpuNanos / 1e6) : "-",
+          total.allocationMeasured
+              ? String.format(Locale.ROOT, "%.1f", total.allocatedBytes / (double) (1 << 20))
+              : "-",
+          total.pixels / 1e6, total.throughput()));
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public synchronized String getJson() {
+    StringBuilder sb = new StringBuilder("{\"commands\":[");
+    String separator = "";
+    for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+      Totals total = entry.getValue();
+      sb.append(separator).append("{\"name\":\"").append(escapeJson(entry.getKey()))
+          .append("\",\"count\":").append(total.count)
+          .append(",\"wallNanos\":").append(total.wallNanos)
+          .append(",\"cpuNanos\":").append(total.cpuMeasured ? total.cpuNanos : "null")
+          .append(",\"allocatedBytes\":")
+          .append(total.allocationMeasured ? total.allocatedBytes : "null")
+          .append(",\"megapixels\":").append(format(total.pixels / 1e6))
+          .append(",\"megapixelsPerSecond\":").append(format(total.throughput()))
+          .append('}');
+      separator = ",";
+    }
+    return sb.append("]}").toString();
+  }
+
+  @Override
+  public synchronized String getCsv() {
+    StringBuilder sb = new StringBuilder(
+        "command,count,wall_nanos,cpu_nanos,allocated_bytes,megapixels,megapixels_per_second\n");
+    for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+      Totals total = entry.getValue();
+      sb.append(entry.getKey()).append(',').append(total.count).append(',')
+          .append(total.wallNanos).append(',')
+          .append(total.cpuMeasured ? String.valueOf(total.cpuNanos) : "").append(',')
+          .append(total.allocationMeasured ? String.valueOf(total.allocatedBytes) : "")
+          .append(',').append(format(total.pixels / 1e6)).append(',')
+          .append(format(total.throughput())).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public synchronized void reset() {
+    totals.clear();
+  }
+
+  /**
+   * Writes the metrics to a file, as JSON if its name ends in .json and as CSV otherwise.
+   *
+   * @param file The file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public void writeTo(Path file) throws IOException {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    Files.write(file, (name.endsWith(".json") ? getJson() : getCsv()).getBytes("UTF-8"));
+  }
+
+  /**
+   * Publishes the metrics through the platform MBean server under {@value #OBJECT_NAME},
+   * replacing metrics published before.
+   *
+   * @return True if the metrics were published.
+   */
+  public boolean register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(this, name);
+      return true;
+    } catch (JMException e) {
+      return false;
+    }
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  private static String escapeJson(String text) {
+    StringBuilder sb = new StringBuilder();
+    for (char c : text.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The sums for one command name.
+   */
+  private static class Totals {
+    private long count;
+    private long wallNanos;
+    private long cpuNanos;
+    private long allocatedBytes;
+    private long pixels;
+    private boolean cpuMeasured = true;
+    private boolean allocationMeasured = true;
+
+    private double throughput() {
+      return wallNanos == 0 ? 0 : pixels / 1e6 / (wallNanos / 1e9);
+    }
+  }
+}
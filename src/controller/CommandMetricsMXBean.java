@@ -0,0 +1,55 @@
+package controller;
+
+/**
+ * The timing and allocation of the commands run by a controller, as published through JMX. See
+ * {@link CommandMetrics}.
+ */
+public interface CommandMetricsMXBean {
+
+  /**
+   * Returns the names of the commands that have run, in the order they first ran.
+   *
+   * @return The command names.
+   */
+  String[] getCommandNames();
+
+  /**
+   * Returns how many commands have run.
+   *
+   * @return The number of commands.
+   */
+  long getCommandCount();
+
+  /**
+   * Returns the wall time of all commands together.
+   *
+   * @return The time in milliseconds.
+   */
+  double getTotalWallMillis();
+
+  /**
+   * Returns the metrics as a table for people to read.
+   *
+   * @return The table.
+   */
+  String getSummary();
+
+  /**
+   * Returns the metrics as JSON.
+   *
+   * @return The JSON document.
+   */
+  String getJson();
+
+  /**
+   * Returns the metrics as CSV, one line per command name after a header line.
+   *
+   * @return The CSV text.
+   */
+  String getCsv();
+
+  /**
+   * Forgets all recorded commands.
+   */
+  void reset();
+}
@@ -14,30 +14,78 @@ import controller.command.Sharpen;
 import controller.command.SplitOperation;
 import controller.command.VerticalFlip;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
 import model.AdvancedImageManipulatorModel;
+import model.Image;
 import view.ImageManipulatorGUIView;
 
 /**
  * Controller class that serves as a callback for GUI events.
+ *
+ * <p>When given an executor, the controller runs every operation as a job on it and returns to
+ * the caller right away, so the window stays responsive while a large image is processed. The
+ * view is told it is busy while jobs are outstanding and receives the results on the event
+ * dispatch thread. Each new request supersedes a pending preview: a preview that has not started
+ * is skipped, a running one is interrupted and stops at the next strip of rows, and its result is
+ * never shown. Other operations always run to completion, in the order they were requested.
  */
 public class GUICallBackController implements GUIController {
 
   private final String currentImageName = "currentImg";
   private final String currentHistogram = "currentHistogram";
-  private ImageManipulationCommand command;
-  private AdvancedImageManipulationCommand advCommand;
   private final AdvancedImageManipulatorModel model;
   private final ImageManipulatorGUIView view;
 
   /**
-   * Constructor for GUICallBackController.
+   * Runs the jobs one at a time, or null to run them on the calling thread.
+   */
+  private final Executor executor;
+
+  /**
+   * Number of the latest request, previews older than it are stale.
+   */
+  private final AtomicLong latestRequest = new AtomicLong();
+
+  /**
+   * Number of jobs submitted and not yet finished.
+   */
+  private final AtomicInteger outstandingJobs = new AtomicInteger();
+
+  private final Object jobLock = new Object();
+
+  /**
+   * The thread running a preview, if any, guarded by jobLock.
+   */
+  private Thread previewThread;
+
+  /**
+   * Constructor for GUICallBackController. Operations run on the thread that requests them.
    *
    * @param model The AdvancedImageManipulatorModel.
    * @param view  The ImageManipulatorGUIView.
    */
   public GUICallBackController(AdvancedImageManipulatorModel model, ImageManipulatorGUIView view) {
+    this(model, view, null);
+  }
+
+  /**
+   * Constructor for GUICallBackController running operations in the background.
+   *
+   * @param model    The AdvancedImageManipulatorModel.
+   * @param view     The ImageManipulatorGUIView.
+   * @param executor Runs the operations. It must run one job at a time, in the order they were
+   *                 submitted, and is the only one to use the model. Null runs operations on the
+   *                 thread that requests them.
+   */
+  public GUICallBackController(AdvancedImageManipulatorModel model, ImageManipulatorGUIView view,
+                               Executor executor) {
     this.model = model;
     this.view = view;
+    this.executor = executor;
     if (view != null) {
       this.view.addFeatures(this);
     }
@@ -45,131 +93,216 @@ public class GUICallBackController implements GUIController {
 
   @Override
   public void loadImage(String imagePath) {
-    command = new Load(imagePath, currentImageName);
-    executeCommand(command);
-    advCommand = new Histogram(currentImageName, currentHistogram);
-    executeAdvancedCommand(advCommand);
-    if (model.getRawImageFromHashMap(currentImageName) == null) {
-      System.out.println("Img null");
-    } else {
-      System.out.println(model.getRawImageFromHashMap(currentImageName).length);
-    }
-    if (model.getRawImageFromHashMap(currentHistogram) == null) {
-      System.out.println("Img null");
-    } else {
-      System.out.println(model.getRawImageFromHashMap(currentHistogram).length);
-    }
-    view.setImageInPanel(model.getRawImageFromHashMap(currentImageName));
-    view.setHistogramInPanel(model.getRawImageFromHashMap(currentHistogram));
+    submit(false, request -> {
+      executeCommand(new Load(imagePath, currentImageName));
+      executeAdvancedCommand(new Histogram(currentImageName, currentHistogram));
+      show(request, false, model.getImageFromHashMap(currentImageName),
+          model.getImageFromHashMap(currentHistogram));
+    });
   }
 
   @Override
   public void saveImage(String imagePath, String imageName) {
-    command = new Save(imagePath, imageName);
-    executeCommand(command);
+    submit(false, request -> executeCommand(new Save(imagePath, imageName)));
   }
 
   @Override
   public void preview(String operation, double widthPercentage) {
     String currentPreviewedImageName = "currentPreviewedImageName";
     String commandLine = operation + " " + currentImageName + " " + currentPreviewedImageName;
-    advCommand = new SplitOperation(commandLine, widthPercentage);
-    executeAdvancedCommand(advCommand);
-    String currentPreviewedHistogram = "currentPreviewedHistogram";
-    advCommand = new Histogram(currentPreviewedImageName, currentPreviewedHistogram);
-    executeAdvancedCommand(advCommand);
-    setImageAndHistogram(currentPreviewedImageName, currentPreviewedHistogram);
+    submit(true, request -> {
+      executeAdvancedCommand(new SplitOperation(commandLine, widthPercentage));
+      String currentPreviewedHistogram = "currentPreviewedHistogram";
+      executeAdvancedCommand(new Histogram(currentPreviewedImageName, currentPreviewedHistogram));
+      setImageAndHistogram(request, currentPreviewedImageName, currentPreviewedHistogram);
+    });
   }
 
   @Override
   public void revert() {
-    setCurrentImageAndHistogram();
+    submit(false, this::setCurrentImageAndHistogram);
   }
 
   @Override
   public void horizontalFlip() {
-    command = new HorizontalFlip(currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new HorizontalFlip(currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void verticalFlip() {
-    command = new VerticalFlip(currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new VerticalFlip(currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void visualizeComponent(String componentName) {
-    command = new GreyScale(componentName, currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new GreyScale(componentName, currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void blur() {
-    command = new Blur(currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new Blur(currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void sharpen() {
-    command = new Sharpen(currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new Sharpen(currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void greyscale() {
-    command = new GreyScale("luma-component", currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new GreyScale("luma-component", currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void sepia() {
-    command = new Sepia(currentImageName, currentImageName);
-    executeCommand(command);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeCommand(new Sepia(currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void compress(double compressPercentage) {
-    advCommand = new Compress(compressPercentage, currentImageName, currentImageName);
-    executeAdvancedCommand(advCommand);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeAdvancedCommand(new Compress(compressPercentage, currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void colorCorrect() {
-    advCommand = new ColorCorrect(currentImageName, currentImageName);
-    executeAdvancedCommand(advCommand);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeAdvancedCommand(new ColorCorrect(currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
   @Override
   public void adjustLevels(int b, int m, int w) {
-    advCommand = new AdjustLevels(b, m, w, currentImageName, currentImageName);
-    executeAdvancedCommand(advCommand);
-    setCurrentImageAndHistogram();
+    submit(false, request -> {
+      executeAdvancedCommand(new AdjustLevels(b, m, w, currentImageName, currentImageName));
+      setCurrentImageAndHistogram(request);
+    });
   }
 
-  private void setImageAndHistogram(String imageName, String histogramName) {
-    view.setImageInPanel(model.getRawImageFromHashMap(imageName));
-    advCommand = new Histogram(currentImageName, currentHistogram);
-    executeAdvancedCommand(advCommand);
-    view.setHistogramInPanel(model.getRawImageFromHashMap(histogramName));
+  private void setImageAndHistogram(long request, String imageName, String histogramName) {
+    Image image = model.getImageFromHashMap(imageName);
+    executeAdvancedCommand(new Histogram(currentImageName, currentHistogram));
+    show(request, true, image, model.getImageFromHashMap(histogramName));
   }
 
-  private void setCurrentImageAndHistogram() {
-    view.setImageInPanel(model.getRawImageFromHashMap(currentImageName));
-    advCommand = new Histogram(currentImageName, currentHistogram);
-    executeAdvancedCommand(advCommand);
-    view.setHistogramInPanel(model.getRawImageFromHashMap(currentHistogram));
+  private void setCurrentImageAndHistogram(long request) {
+    Image image = model.getImageFromHashMap(currentImageName);
+    executeAdvancedCommand(new Histogram(currentImageName, currentHistogram));
+    show(request, false, image, model.getImageFromHashMap(currentHistogram));
   }
 
+  /**
+   * Shows an image and its histogram, unless they belong to a preview that was superseded.
+   *
+   * @param request   The number of the request that produced them.
+   * @param preview   Whether they come from a preview.
+   * @param image     The image.
+   * @param histogram The histogram chart of the image.
+   */
+  private void show(long request, boolean preview, Image image, Image histogram) {
+    onView(() -> {
+      if (!preview || request == latestRequest.get()) {
+        view.setImageInPanel(image);
+        view.setHistogramInPanel(histogram);
+      }
+    });
+  }
+
+  /**
+   * Work done for one request, given the number of the request.
+   */
+  private interface Job {
+    void run(long request);
+  }
+
+  /**
+   * Runs the work for a request, on the executor when there is one. A new request interrupts a
+   * running preview, whose strips of rows then stop with a {@link CancellationException}.
+   *
+   * @param preview Whether the work is a preview, which newer requests supersede.
+   * @param job     The work to run.
+   */
+  private void submit(boolean preview, Job job) {
+    long request;
+    synchronized (jobLock) {
+      request = latestRequest.incrementAndGet();
+      if (previewThread != null) {
+        previewThread.interrupt();
+      }
+    }
+    if (executor == null) {
+      job.run(request);
+      return;
+    }
+    if (outstandingJobs.getAndIncrement() == 0) {
+      view.setBusy(true);
+    }
+    executor.execute(() -> {
+      try {
+        if (preview) {
+          synchronized (jobLock) {
+            if (request != latestRequest.get()) {
+              return;
+            }
+            previewThread = Thread.currentThread();
+          }
+        }
+        job.run(request);
+      } catch (CancellationException ex) {
+        // A newer request superseded this preview.
+      } catch (RuntimeException ex) {
+        onView(() -> view.displayErrorMessage("An error occurred, please try another operation"));
+      } finally {
+        if (preview) {
+          synchronized (jobLock) {
+            previewThread = null;
+            // Clear an interrupt that arrived after the preview finished.
+            Thread.interrupted();
+          }
+        }
+        outstandingJobs.decrementAndGet();
+        onView(() -> view.setBusy(outstandingJobs.get() > 0));
+      }
+    });
+  }
+
+  /**
+   * Runs an update of the view on the event dispatch thread when operations run in the
+   * background, or right away otherwise.
+   *
+   * @param update The update.
+   */
+  private void onView(Runnable update) {
+    if (executor == null) {
+      update.run();
+    } else {
+      SwingUtilities.invokeLater(update);
+    }
+  }
 
   /**
    * Executes the specified command and handles exceptions.
@@ -180,9 +313,9 @@ public class GUICallBackController implements GUIController {
     try {
       command.execute(model);
     } catch (IOException ex) {
-      view.displayErrorMessage("An error occurred, please try another operation");
+      onView(() -> view.displayErrorMessage("An error occurred, please try another operation"));
     } catch (IllegalArgumentException ex) {
-      view.displayErrorMessage(ex.getMessage());
+      onView(() -> view.displayErrorMessage(ex.getMessage()));
     }
   }
 
@@ -195,9 +328,9 @@ public class GUICallBackController implements GUIController {
     try {
       command.execute(model);
     } catch (IOException ex) {
-      view.displayErrorMessage("An error occurred, please try another operation");
+      onView(() -> view.displayErrorMessage("An error occurred, please try another operation"));
     } catch (IllegalArgumentException ex) {
-      view.displayErrorMessage(ex.getMessage());
+      onView(() -> view.displayErrorMessage(ex.getMessage()));
     }
   }
 }
@@ -16,7 +16,11 @@ public interface ImageManipulatorController {
   void executeApplication(Readable in, Appendable out) throws IOException;
 
   /**
-   * Reads commands from a file, processes them, and outputs the results.
+   * Reads commands from a file, processes them, and outputs the results. Each image is released
+   * from the model after the last command of the script that uses it, so only the files the
+   * script saves remain once it has run. A summary of the time and memory each kind of command
+   * took is written at the end, and also to the file named by the {@code imea.metrics.file}
+   * system property, as JSON if it ends in .json and as CSV otherwise.
    *
    * @param fileName The name of the file containing commands to be executed.
    */
@@ -14,14 +14,16 @@ import controller.command.VerticalFlip;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import model.ImageManipulatorModel;
+import model.WorkUsage;
 import view.ImageManipulatorView;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.List;
 
 import static java.lang.System.out;
 
@@ -36,6 +38,10 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
   // The view for displaying messages and results.
   protected final ImageManipulatorView view;
   protected final Map<String, Function<String[], ImageManipulationCommand>> knownCommands;
+  // The number of script commands run at the same time.
+  protected final int scriptThreads;
+  // Timing and allocation of the commands run.
+  protected final CommandMetrics metrics = new CommandMetrics();
 
 
   /**
@@ -46,8 +52,27 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
    */
   public ImageManipulatorControllerImpl(ImageManipulatorModel model,
       ImageManipulatorView view) {
+    this(model, view, 1);
+  }
+
+  /**
+   * Constructs an ImageManipulatorControllerImpl that runs the independent commands of a script
+   * on several threads.
+   *
+   * @param model         The ImageManipulatorModel for image manipulation operations.
+   * @param view          The view for displaying messages and results.
+   * @param scriptThreads The number of script commands run at the same time, 1 to run scripts
+   *                      in order.
+   * @throws IllegalArgumentException if scriptThreads is less than one.
+   */
+  public ImageManipulatorControllerImpl(ImageManipulatorModel model,
+      ImageManipulatorView view, int scriptThreads) {
+    if (scriptThreads < 1) {
+      throw new IllegalArgumentException("Threads must be at least 1.");
+    }
     this.model = model;
     this.view = view;
+    this.scriptThreads = scriptThreads;
     this.knownCommands = initializeCommands();
   }
 
@@ -82,7 +107,8 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
         throw new IllegalArgumentException("Invalid command format: " + tokens[0]);
       } else {
         try {
-          runCommandsFromFile(tokens[1], out);
+          // The names of a nested script may still be used after it, so none are released.
+          runScript(tokens[1], out, false);
         } catch (IOException e) {
           throw new RuntimeException(e);
         }
@@ -123,7 +149,7 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
    * ImageManipulationCommand. Supported commands include load, save, rgb-split, rgb-combine,
    * horizontal-flip, vertical-flip, brighten, blur, sharpen, sepia, red-component, green-component,
    * blue-component, value-component, luma-component, intensity-component, run, compress, split,
-   * histogram, color-correct, and levels-adjust.
+   * histogram, color-correct, levels-adjust, thumbnail and stream.
    *
    * @param commandLine The input command line to be processed.
    * @param out         The Appendable object where output messages are appended.
@@ -136,7 +162,7 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
     if (cmdFunction != null) {
       ImageManipulationCommand cmd = cmdFunction.apply(tokens);
       if (cmd != null) {
-        cmd.execute(model);
+        executeMeasured(command, commandLine, () -> cmd.execute(model));
         out.append("Operation performed successfully: ").append(command).append("\n");
         return true;
       }
@@ -144,6 +170,64 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
     return false;
   }
 
+  /**
+   * Runs a command, recording its wall time, CPU time, allocation and the megapixels it read in
+   * the metrics. The images a command reads are found from the command line, before it runs. A
+   * command reading no image, such as load, is counted by the images it writes.
+   *
+   * @param name        The name under which the command is recorded.
+   * @param commandLine The command line.
+   * @param command     Runs the command.
+   * @throws IOException If the command fails to read or write a file.
+   */
+  protected void executeMeasured(String name, String commandLine, MeasuredCommand command)
+      throws IOException {
+    ScriptAnalysis names = new ScriptAnalysis(Collections.singletonList(commandLine));
+    long pixels = names.size() > 0 ? countPixels(names.getReads(0)) : 0;
+    WorkUsage usage = WorkUsage.start();
+    long start = System.nanoTime();
+    try {
+      command.run();
+    } finally {
+      usage.stop();
+    }
+    long wallNanos = System.nanoTime() - start;
+    if (pixels == 0 && names.size() > 0) {
+      pixels = countPixels(names.getWrites(0));
+    }
+    metrics.record(name, wallNanos, usage.getCpuNanos(), usage.getAllocatedBytes(), pixels);
+  }
+
+  private long countPixels(List<String> imageNames) {
+    long pixels = 0;
+    for (String name : imageNames) {
+      pixels += model.getPixelCount(name);
+    }
+    return pixels;
+  }
+
+  /**
+   * Returns the timing and allocation of the commands this controller has run.
+   *
+   * @return The metrics.
+   */
+  public CommandMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * A command to run and measure.
+   */
+  protected interface MeasuredCommand {
+
+    /**
+     * Runs the command.
+     *
+     * @throws IOException If the command fails to read or write a file.
+     */
+    void run() throws IOException;
+  }
+
   /**
    * Handles errors by appending the error message to the Appendable object.
    *
@@ -160,12 +244,41 @@ public class ImageManipulatorControllerImpl implements ImageManipulatorControlle
 
   @Override
   public void runCommandsFromFile(String fileName, Appendable out) throws IOException {
+    runScript(fileName, out, true);
+    out.append(metrics.getSummary());
+    String metricsFile = System.getProperty("imea.metrics.file");
+    if (metricsFile != null && !metricsFile.trim().isEmpty()) {
+      metrics.writeTo(Paths.get(metricsFile.trim()));
+    }
+  }
+
+  /**
+   * Runs the commands of a script file. With more than one script thread, commands that do not
+   * use each other's images or files run at the same time, see {@link ScriptScheduler}.
+   *
+   * @param fileName     The name of the file containing the commands.
+   * @param out          The Appendable object where output messages are appended.
+   * @param releaseDead  Whether to release each image from the model after the last command that
+   *                     uses it. This is only done when the whole script could be analysed.
+   * @throws IOException If the messages cannot be written.
+   */
+  protected void runScript(String fileName, Appendable out, boolean releaseDead)
+      throws IOException {
     view.startMessageForScriptExecution(out);
     try {
-      List<String> lines = Files.readAllLines(Paths.get(fileName));
-      for (String line : lines) {
-        if (!line.trim().startsWith("#") && !line.trim().isEmpty()) {
-          processCommand(line, out);
+      ScriptAnalysis script = new ScriptAnalysis(Files.readAllLines(Paths.get(fileName)));
+      if (scriptThreads > 1 && script.isComplete()) {
+        new ScriptScheduler(script, scriptThreads, this::processCommand,
+            releaseDead ? model::releaseImage : null).run(out);
+        view.endMessageForScriptExecution(out);
+        return;
+      }
+      for (int i = 0; i < script.size(); i++) {
+        processCommand(script.getCommand(i), out);
+        if (releaseDead) {
+          for (String name : script.getDeadAfter(i)) {
+            model.releaseImage(name);
+          }
         }
       }
     } catch (IOException e) {
@@ -0,0 +1,304 @@
+package controller;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The commands of a script, with the image names each of them reads and writes. A script is
+ * analysed before it runs, so that images can be released as soon as no later command uses them,
+ * and so that commands that do not depend on each other can run at the same time. Files loaded
+ * and saved are followed the same way as images, so a command loading a file waits for the
+ * command saving it.
+ *
+ * <p>The analysis only knows the commands of the controllers. A script with a {@code run}
+ * command or any command it does not know is marked incomplete, since such a command may use
+ * any image.
+ */
+public class ScriptAnalysis {
+
+  private final List<String> commands = new ArrayList<>();
+  private final List<List<String>> reads = new ArrayList<>();
+  private final List<List<String>> writes = new ArrayList<>();
+  private final List<List<String>> filesRead = new ArrayList<>();
+  private final List<List<String>> filesWritten = new ArrayList<>();
+  private final List<List<String>> deadAfter = new ArrayList<>();
+  private final List<List<Integer>> dependencies = new ArrayList<>();
+  private boolean complete = true;
+
+  /**
+   * Analyses the lines of a script. Blank lines and comments starting with # are skipped.
+   *
+   * @param lines The lines of the script.
+   */
+  public ScriptAnalysis(List<String> lines) {
+    for (String line : lines) {
+      if (!line.trim().startsWith("#") && !line.trim().isEmpty()) {
+        addCommand(line);
+      }
+    }
+    computeLastUses();
+    computeDependencies();
+  }
+
+  /**
+   * Returns the number of commands in the script.
+   *
+   * @return The number of commands.
+   */
+  public int size() {
+    return commands.size();
+  }
+
+  /**
+   * Returns a command of the script, as written.
+   *
+   * @param index The index of the command, counting only commands.
+   * @return The command line.
+   */
+  public String getCommand(int index) {
+    return commands.get(index);
+  }
+
+  /**
+   * Returns the names of the images a command reads.
+   *
+   * @param index The index of the command.
+   * @return The names, empty if the command is not known.
+   */
+  public List<String> getReads(int index) {
+    return Collections.unmodifiableList(reads.get(index));
+  }
+
+  /**
+   * Returns the names of the images a command writes.
+   *
+   * @param index The index of the command.
+   * @return The names, empty if the command is not known.
+   */
+  public List<String> getWrites(int index) {
+    return Collections.unmodifiableList(writes.get(index));
+  }
+
+  /**
+   * Tells whether every command of the script is known, so that the names it reads and writes
+   * are all the images it uses.
+   *
+   * @return True if the analysis covers the whole script.
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Returns the images that no command after the given one uses, and that are not written by it
+   * only to be read later. They can be released once the command has run. Always empty for an
+   * incomplete script.
+   *
+   * @param index The index of the command.
+   * @return The names of the images last used by the command.
+   */
+  public List<String> getDeadAfter(int index) {
+    return complete ? Collections.unmodifiableList(deadAfter.get(index))
+        : Collections.emptyList();
+  }
+
+  /**
+   * Returns the earlier commands that must have run before a command: those writing an image or
+   * file it reads, and those reading or writing an image or file it writes. Always empty for an
+   * incomplete script, which must run in order.
+   *
+   * @param index The index of the command.
+   * @return The indices of the commands, in increasing order.
+   */
+  public List<Integer> getDependencies(int index) {
+    return complete ? Collections.unmodifiableList(dependencies.get(index))
+        : Collections.emptyList();
+  }
+
+  /**
+   * Returns the images a command reads or writes, each once.
+   *
+   * @param index The index of the command.
+   * @return The names.
+   */
+  public List<String> getUses(int index) {
+    List<String> uses = new ArrayList<>(reads.get(index));
+    for (String name : writes.get(index)) {
+      if (!uses.contains(name)) {
+        uses.add(name);
+      }
+    }
+    return uses;
+  }
+
+  /**
+   * Works out the names a command reads and writes from its tokens.
+   */
+  private void addCommand(String line) {
+    commands.add(line);
+    List<String> read = new ArrayList<>();
+    List<String> written = new ArrayList<>();
+    List<String> filesRead = new ArrayList<>();
+    List<String> filesWritten = new ArrayList<>();
+    reads.add(read);
+    writes.add(written);
+    this.filesRead.add(filesRead);
+    this.filesWritten.add(filesWritten);
+
+    // A split preview uses the same names as the operation before the split keyword.
+    int indexOfSplit = line.indexOf(" split ");
+    String[] tokens = (indexOfSplit != -1 ? line.substring(0, indexOfSplit) : line).split("\\s+");
+    switch (tokens[0].toLowerCase()) {
+      case "load":
+        addFile(tokens, filesRead, 1);
+        addNames(tokens, written, 2);
+        break;
+      case "save":
+        addFile(tokens, filesWritten, 1);
+        addNames(tokens, read, 2);
+        break;
+      case "stream":
+        // Streams from file to file without going through any image.
+        addFile(tokens, filesRead, 1);
+        addFile(tokens, filesWritten, 2);
+        break;
+      case "rgb-split":
+        addNames(tokens, read, 1);
+        addNames(tokens, written, 2, 3, 4);
+        break;
+      case "rgb-combine":
+        addNames(tokens, read, 1, 2, 3);
+        addNames(tokens, written, 4);
+        break;
+      case "brighten":
+      case "compress":
+      case "thumbnail":
+        addNames(tokens, read, 2);
+        addNames(tokens, written, 3);
+        break;
+      case "levels-adjust":
+        addNames(tokens, read, 4);
+        addNames(tokens, written, 5);
+        break;
+      case "horizontal-flip":
+      case "vertical-flip":
+      case "blur":
+      case "sharpen":
+      case "sepia":
+      case "red-component":
+      case "green-component":
+      case "blue-component":
+      case "value-component":
+      case "luma-component":
+      case "intensity-component":
+      case "histogram":
+      case "color-correct":
+        addNames(tokens, read, 1);
+        addNames(tokens, written, 2);
+        break;
+      default:
+        complete = false;
+    }
+  }
+
+  /**
+   * Adds the tokens at the given positions to a list of names, marking the script incomplete if
+   * the command is too short to have them.
+   */
+  private void addNames(String[] tokens, List<String> names, int... positions) {
+    for (int position : positions) {
+      if (position < tokens.length) {
+        names.add(tokens[position]);
+      } else {
+        complete = false;
+      }
+    }
+  }
+
+  /**
+   * Adds the file named by the token at the given position, by its absolute path.
+   */
+  private void addFile(String[] tokens, List<String> files, int position) {
+    if (position < tokens.length) {
+      try {
+        files.add(Paths.get(tokens[position]).toAbsolutePath().normalize().toString());
+      } catch (InvalidPathException e) {
+        files.add(tokens[position]);
+      }
+    }
+  }
+
+  /**
+   * Finds for every command the last earlier command writing each image or file it uses, and
+   * the commands reading what it writes since that write.
+   */
+  private void computeDependencies() {
+    // Files are kept apart from images by a prefix no image name can have, since names are
+    // single tokens.
+    Map<String, Integer> lastWriter = new HashMap<>();
+    Map<String, List<Integer>> readersSinceWrite = new HashMap<>();
+    for (int i = 0; i < commands.size(); i++) {
+      List<String> read = new ArrayList<>(reads.get(i));
+      List<String> written = new ArrayList<>(writes.get(i));
+      for (String file : filesRead.get(i)) {
+        read.add("file " + file);
+      }
+      for (String file : filesWritten.get(i)) {
+        written.add("file " + file);
+      }
+
+      TreeSet<Integer> before = new TreeSet<>();
+      for (String key : read) {
+        addIfPresent(before, lastWriter.get(key));
+      }
+      for (String key : written) {
+        addIfPresent(before, lastWriter.get(key));
+        before.addAll(readersSinceWrite.getOrDefault(key, Collections.emptyList()));
+      }
+      before.remove(i);
+      dependencies.add(new ArrayList<>(before));
+
+      for (String key : read) {
+        readersSinceWrite.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+      }
+      for (String key : written) {
+        lastWriter.put(key, i);
+        readersSinceWrite.remove(key);
+      }
+    }
+  }
+
+  private static void addIfPresent(TreeSet<Integer> indices, Integer index) {
+    if (index != null) {
+      indices.add(index);
+    }
+  }
+
+  /**
+   * Finds for every name the last command that reads or writes it.
+   */
+  private void computeLastUses() {
+    Map<String, Integer> lastUse = new HashMap<>();
+    for (int i = 0; i < commands.size(); i++) {
+      for (List<String> names : Arrays.asList(reads.get(i), writes.get(i))) {
+        for (String name : names) {
+          lastUse.put(name, i);
+        }
+      }
+      deadAfter.add(new ArrayList<>());
+    }
+    for (Map.Entry<String, Integer> entry : lastUse.entrySet()) {
+      deadAfter.get(entry.getValue()).add(entry.getKey());
+    }
+    for (List<String> names : deadAfter) {
+      Collections.sort(names);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the commands of an analysed script on a bounded pool of threads. A command starts once
+ * every command it depends on has run, see {@link ScriptAnalysis#getDependencies(int)}, so the
+ * images and files it uses are the same as when the script runs in order. The messages of the
+ * commands are written in script order.
+ *
+ * <p>When a command fails, no further command is started. The commands already running are
+ * finished and the failure of the earliest failed command is thrown, as if the script had stopped
+ * there. Commands that did not depend on it may have run already.
+ */
+class ScriptScheduler {
+
+  /**
+   * Runs one command, writing its messages to the given Appendable.
+   */
+  interface CommandRunner {
+
+    /**
+     * Runs a command line.
+     *
+     * @param commandLine The command line.
+     * @param out         Where the messages of the command are written.
+     * @throws IOException If the command fails to read or write a file.
+     */
+    void run(String commandLine, Appendable out) throws IOException;
+  }
+
+  private static final AtomicInteger POOLS = new AtomicInteger();
+
+  private final ScriptAnalysis script;
+  private final int threads;
+  private final CommandRunner runner;
+  private final Consumer<String> release;
+
+  private final Object lock = new Object();
+  private final int[] waitingFor;
+  private final List<List<Integer>> dependents = new ArrayList<>();
+  private final Map<String, AtomicInteger> remainingUses = new HashMap<>();
+  private final StringBuilder[] messages;
+  private final boolean[] done;
+  private int nextMessage;
+  private int running;
+  private int failedIndex = -1;
+  private Throwable failure;
+
+  /**
+   * Prepares a script to run.
+   *
+   * @param script  The analysed script, which must be complete.
+   * @param threads The number of commands to run at the same time.
+   * @param runner  Runs a single command.
+   * @param release Called with each image once every command using it has run, or null to keep
+   *                all images.
+   * @throws IllegalArgumentException if the script is incomplete or threads is less than one.
+   */
+  ScriptScheduler(ScriptAnalysis script, int threads, CommandRunner runner,
+                  Consumer<String> release) {
+    if (!script.isComplete()) {
+      throw new IllegalArgumentException("Only complete scripts can run out of order.");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("Threads must be at least 1.");
+    }
+    this.script = script;
+    this.threads = threads;
+    this.runner = runner;
+    this.release = release;
+    int size = script.size();
+    this.waitingFor = new int[size];
+    this.messages = new StringBuilder[size];
+    this.done = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      dependents.add(new ArrayList<>());
+    }
+    for (int i = 0; i < size; i++) {
+      List<Integer> before = script.getDependencies(i);
+      waitingFor[i] = before.size();
+      for (int j : before) {
+        dependents.get(j).add(i);
+      }
+      for (String name : script.getUses(i)) {
+        remainingUses.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Runs the script and waits for it to finish.
+   *
+   * @param out Where the messages of the commands are written.
+   * @throws IOException           If a command failed to read or write a file.
+   * @throws CancellationException If the calling thread was interrupted while waiting.
+   */
+  void run(Appendable out) throws IOException {
+    int pool = POOLS.incrementAndGet();
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+      Thread thread = new Thread(task,
+          "imea-script-" + pool + "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      synchronized (lock) {
+        for (int i = 0; i < waitingFor.length; i++) {
+          if (waitingFor[i] == 0) {
+            start(workers, i);
+          }
+        }
+        while (running > 0) {
+          lock.wait();
+        }
+        writeMessages(out);
+      }
+    } catch (InterruptedException e) {
+      synchronized (lock) {
+        failure = new CancellationException("Script execution was cancelled.");
+      }
+      Thread.currentThread().interrupt();
+    } finally {
+      workers.shutdown();
+    }
+    rethrowFailure();
+  }
+
+  /**
+   * Hands a command to the pool. Called with the lock held.
+   */
+  private void start(ExecutorService workers, int index) {
+    running++;
+    workers.execute(() -> {
+      StringBuilder commandOut = new StringBuilder();
+      Throwable thrown = null;
+      try {
+        runner.run(script.getCommand(index), commandOut);
+        releaseUnused(index);
+      } catch (IOException | RuntimeException | Error e) {
+        thrown = e;
+      }
+      finish(workers, index, commandOut, thrown);
+    });
+  }
+
+  /**
+   * Releases the images of a command that no command still to run uses.
+   */
+  private void releaseUnused(int index) {
+    if (release == null) {
+      return;
+    }
+    for (String name : script.getUses(index)) {
+      if (remainingUses.get(name).decrementAndGet() == 0) {
+        release.accept(name);
+      }
+    }
+  }
+
+  /**
+   * Records that a command has run and starts the commands that were waiting only for it.
+   */
+  private void finish(ExecutorService workers, int index, StringBuilder commandOut,
+                      Throwable thrown) {
+    synchronized (lock) {
+      messages[index] = commandOut;
+      done[index] = true;
+      if (thrown != null && (failure == null || index < failedIndex)) {
+        failure = thrown;
+        failedIndex = index;
+      }
+      if (failure == null) {
+        for (int next : dependents.get(index)) {
+          if (--waitingFor[next] == 0) {
+            start(workers, next);
+          }
+        }
+      }
+      running--;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Writes the messages of the commands that ran, in script order, up to the first one that did
+   * not run. Called with the lock held.
+   */
+  private void writeMessages(Appendable out) throws IOException {
+    while (nextMessage < done.length && done[nextMessage]) {
+      out.append(messages[nextMessage]);
+      messages[nextMessage] = null;
+      nextMessage++;
+    }
+  }
+
+  private void rethrowFailure() throws IOException {
+    Throwable thrown;
+    synchronized (lock) {
+      thrown = failure;
+    }
+    if (thrown instanceof IOException) {
+      throw (IOException) thrown;
+    } else if (thrown instanceof RuntimeException) {
+      throw (RuntimeException) thrown;
+    } else if (thrown instanceof Error) {
+      throw (Error) thrown;
+    }
+  }
+}
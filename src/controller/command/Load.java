@@ -3,6 +3,7 @@ package controller.command;
 import controller.ImageManipulationCommand;
 import utility.ImageUtility;
 import java.io.IOException;
+import model.Image;
 import model.ImageManipulatorModel;
 
 /**
@@ -28,10 +29,19 @@ public class Load implements ImageManipulationCommand {
   public void execute(ImageManipulatorModel m) throws IOException {
     String extension = imagePath.substring(
             imagePath.lastIndexOf(".") + 1).toLowerCase();
-    if (extension.equals("ppm")) {
-      m.addRawImageToHashMap(imageName, ImageUtility.loadPPMImage(imagePath));
+    if (extension.equals("pix")) {
+      m.addImageToHashMap(imageName, ImageUtility.loadPixImage(imagePath));
+    } else if (extension.equals("hwt")) {
+      m.addImageToHashMap(imageName, ImageUtility.loadWaveletImage(imagePath));
     } else {
-      m.addRawImageToHashMap(imageName, ImageUtility.loadImage(imagePath));
+      // Decoded files can keep a sidecar cache that loads without decoding.
+      Image image = ImageUtility.loadSidecar(imagePath);
+      if (image == null) {
+        image = extension.equals("ppm") ? ImageUtility.loadPPMImage(imagePath)
+            : ImageUtility.loadImage(imagePath);
+        ImageUtility.saveSidecar(image, imagePath);
+      }
+      m.addImageToHashMap(imageName, image);
     }
   }
 }
@@ -3,6 +3,7 @@ package controller.command;
 import controller.ImageManipulationCommand;
 import utility.ImageUtility;
 import java.io.IOException;
+import model.Image;
 import model.ImageManipulatorModel;
 
 /**
@@ -29,17 +30,23 @@ public class Save implements ImageManipulationCommand {
   public void execute(ImageManipulatorModel m) throws IOException {
     String extension = imagePath.substring(
             imagePath.lastIndexOf(".") + 1).toLowerCase();
-    String[] rawImage = m.getRawImageFromHashMap(imageName);
-    if (rawImage != null) {
+    Image image = m.getImageFromHashMap(imageName);
+    if (image != null) {
       switch (extension) {
         case "ppm":
-          ImageUtility.saveImageAsPPM(rawImage, imagePath);
+          ImageUtility.saveImageAsPPM(image, imagePath);
+          break;
+        case "hwt":
+          ImageUtility.saveImageAsWavelet(image, imagePath);
+          break;
+        case "pix":
+          ImageUtility.saveImageAsPix(image, imagePath);
           break;
         case "jpg":
         case "jpeg":
         case "bmp":
         case "png":
-          ImageUtility.saveImageWithFormat(rawImage, imagePath, extension.toUpperCase());
+          ImageUtility.saveImageWithFormat(image, imagePath, extension.toUpperCase());
           break;
         default:
           throw new IllegalArgumentException("Unsupported file format");
@@ -0,0 +1,49 @@
+package controller.command;
+
+import controller.AdvancedImageManipulationCommand;
+import java.io.IOException;
+import model.AdvancedImageManipulatorModel;
+import model.RowSource;
+import utility.ImageUtility;
+
+/**
+ * A command class for applying an operation to an image file too large to be loaded, writing
+ * the result to another file. The image is read, processed and written a band of rows at a
+ * time, so it is never held in memory as a whole. Implements the
+ * AdvancedImageManipulationCommand interface to execute the streamed operation.
+ */
+public class Stream implements AdvancedImageManipulationCommand {
+
+  private final String inputPath; // The path of the image file to read.
+  private final String outputPath; // The path of the image file to write.
+  private final String operation; // The operation and its parameters, such as "brighten 10".
+
+  /**
+   * Constructs a Stream command with the files to read and write, and the operation to apply.
+   *
+   * @param inputPath  The path of the image file to read.
+   * @param outputPath The path of the image file to write, a ppm or png file.
+   * @param operation  The operation and its parameters, such as "brighten 10" or "blur".
+   */
+  public Stream(String inputPath, String outputPath, String operation) {
+    this.inputPath = inputPath;
+    this.outputPath = outputPath;
+    this.operation = operation;
+  }
+
+  @Override
+  public void execute(AdvancedImageManipulatorModel model) throws IOException {
+    RowSource input = ImageUtility.openRowSource(inputPath);
+    RowSource result;
+    try {
+      result = model.streamOperation(operation, input);
+    } catch (RuntimeException e) {
+      input.close();
+      throw e;
+    }
+    // Closing the result closes the input it reads from.
+    try (RowSource rows = result) {
+      ImageUtility.saveRows(rows, outputPath);
+    }
+  }
+}
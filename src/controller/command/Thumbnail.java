@@ -0,0 +1,34 @@
+package controller.command;
+
+import controller.AdvancedImageManipulationCommand;
+import model.AdvancedImageManipulatorModel;
+
+/**
+ * A command class for creating a reduced version of an image. Implements the
+ * AdvancedImageManipulationCommand interface to execute the thumbnail operation.
+ */
+public class Thumbnail implements AdvancedImageManipulationCommand {
+
+  private final String srcImageName; // Source image filename.
+  private final String destImageName; // Destination image filename.
+  private final int scale; // Reduction factor
+
+  /**
+   * Constructs a Thumbnail command with source and destination image filenames, along with the
+   * reduction factor.
+   *
+   * @param scale         The reduction factor, a power of two such as 2, 4 or 8.
+   * @param srcImageName  The filename of the source image.
+   * @param destImageName The filename for the reduced image.
+   */
+  public Thumbnail(int scale, String srcImageName, String destImageName) {
+    this.srcImageName = srcImageName;
+    this.destImageName = destImageName;
+    this.scale = scale;
+  }
+
+  @Override
+  public void execute(AdvancedImageManipulatorModel model) throws IllegalArgumentException {
+    model.thumbnail(scale, srcImageName, destImageName);
+  }
+}
@@ -14,25 +14,28 @@ public abstract class AbstractImageHistogram {
 
   /**
    * Constructs an AbstractImageHistogram object and generates the histogram values based on the
-   * RGB values of the pixels in the provided source image.
+   * RGB values of the pixels in the provided source image. Images keep their histogram once it is
+   * known, so only the first histogram of an image scans its pixels.
    *
    * @param srcImg The source image for which the histogram is generated.
    */
   protected AbstractImageHistogram(Image srcImg) {
-    // Initialize the histogramValues array with three color channels and 256 intensity levels.
-    this.histogramValues = new int[3][256];
-
-    // Loop through each pixel in the source image to populate the histogramValues array.
-    for (int y = 0; y < srcImg.getHeight(); y++) {
-      for (int x = 0; x < srcImg.getWidth(); x++) {
-        Pixel currentPixel = srcImg.getPixelRGB(x, y);
+    // Copy the counts, subclasses are free to change their own values.
+    this.histogramValues = ChannelHistogram.copyOf(srcImg.getHistogram());
+  }
 
-        // Increment the histogram count for the red, green, and blue channels.
-        histogramValues[0][currentPixel.getRed()]++;
-        histogramValues[1][currentPixel.getGreen()]++;
-        histogramValues[2][currentPixel.getBlue()]++;
-      }
-    }
+  /**
+   * Constructs an AbstractImageHistogram object from a regular sample of the pixels of the source
+   * image, taking every stride-th pixel of every stride-th row. This is much faster on large
+   * images and close enough for previews.
+   *
+   * @param srcImg The source image for which the histogram is generated.
+   * @param stride The distance between sampled pixels, 1 to count every pixel.
+   * @throws IllegalArgumentException if the stride is less than 1.
+   */
+  protected AbstractImageHistogram(Image srcImg, int stride) {
+    this.histogramValues = stride == 1 ? ChannelHistogram.copyOf(srcImg.getHistogram())
+        : ChannelHistogram.compute(srcImg, stride);
   }
 
   /**
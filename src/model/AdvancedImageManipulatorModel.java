@@ -65,5 +65,33 @@ public interface AdvancedImageManipulatorModel extends ImageManipulatorModel {
   public void adjustLevels(int b, int m, int w, String srcImageName, String destImageName)
       throws IllegalArgumentException;
 
-}
+  /**
+   * Creates a reduced version of the specified image, such as a thumbnail or a quick preview, and
+   * saves it to the destination image. Each pixel of the result is the average of a square block
+   * of the source. For a compressed image only the coarse levels of its wavelet coefficients are
+   * decoded.
+   *
+   * @param scale         The reduction factor, a power of two such as 2, 4 or 8.
+   * @param srcImageName  The name of the source image.
+   * @param destImageName The name of the destination image.
+   * @throws IllegalArgumentException when the scale is not a power of two.
+   */
+  void thumbnail(int scale, String srcImageName, String destImageName)
+      throws IllegalArgumentException;
 
+  /**
+   * Applies an operation to an image read a band of rows at a time, for images too large to be
+   * held in memory. The result is computed as its rows are read, and is the same as that of the
+   * operation on the whole image. The operations that can be streamed are brighten, blur,
+   * sharpen, sepia, the greyscale components and levels-adjust, given with their parameters as
+   * in a command, such as "brighten 10" or "levels-adjust 20 100 255".
+   *
+   * @param operation The operation and its parameters.
+   * @param source    The rows of the image.
+   * @return The rows of the result.
+   * @throws IllegalArgumentException when the operation cannot be streamed or its parameters are
+   *                                  invalid.
+   */
+  RowSource streamOperation(String operation, RowSource source) throws IllegalArgumentException;
+
+}
@@ -1,7 +1,11 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.UnaryOperator;
 
 /**
  * Implementation of the AdvancedImageManipulatorModel interface. Extends the
@@ -10,18 +14,49 @@ import java.util.List;
 public class AdvancedImageManipulatorModelImpl extends ImageManipulatorModelImpl
         implements AdvancedImageManipulatorModel {
 
+  /**
+   * The last histogram chart drawn for each image, together with the counts it was drawn from.
+   * Entries go away with their image.
+   */
+  private final Map<Image, HistogramChart> histogramCharts =
+          Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * The last split view preview, reused while the same operation is previewed on the same image.
+   */
+  private volatile SplitPreview splitPreview;
+
+  // Keeps the choice of the preview and its update together when commands run on several threads.
+  private final Object previewLock = new Object();
+
+  /**
+   * Constructs a model with no images, with the album and cache budgets set by the
+   * {@code imea.album.bytes} and {@code imea.cache.bytes} system properties.
+   */
+  public AdvancedImageManipulatorModelImpl() {
+    super();
+  }
+
+  /**
+   * Constructs a model with no images and the given memory budgets.
+   *
+   * @param albumBytes The bytes of pixels the album keeps in memory before spilling to disk.
+   * @param cacheBytes The bytes of operation results kept for reuse, 0 to keep none.
+   * @throws IllegalArgumentException if a budget is negative.
+   */
+  public AdvancedImageManipulatorModelImpl(long albumBytes, long cacheBytes) {
+    super(albumBytes, cacheBytes);
+  }
+
   @Override
   public void compress(double percentage, String srcImageName, String destImageName)
           throws IllegalArgumentException {
     if (percentage < 0 || percentage > 100) {
       throw new IllegalArgumentException("Percentage must not be negative.");
     }
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
-    }
     ImageCompression ic = new ImageCompressionImpl();
-    this.addImageToHashMap(destImageName, ic.compress(srcImg, percentage));
+    addCachedResult(srcImageName, "compress " + percentage,
+        srcImg -> ic.compress(srcImg, percentage), destImageName);
   }
 
   @Override
@@ -51,43 +86,58 @@ public class AdvancedImageManipulatorModelImpl extends ImageManipulatorModelImpl
       return;
     }
 
-    int splitWidth = getCropWidth(widthPercentage, srcImg.getWidth());
-    Image splittedImage = getCroppedImage(splitWidth, srcImg);
+    ImageFilter filter;
     switch (operation) {
       case "blur":
-        KernelFilter blurFilter = new BlurKernelFilter();
-        splittedImage = blurFilter.applyFilterToImage(splittedImage);
+        filter = new BlurKernelFilter();
         break;
       case "sharpen":
-        ImageFilter sharpenFilter = new SharpenKernelFilter();
-        splittedImage = sharpenFilter.applyFilterToImage(splittedImage);
+        filter = new SharpenKernelFilter();
         break;
       case "sepia":
-        ImageFilter sepiaFilter = new SepiaColorTransformationFilter();
-        splittedImage = sepiaFilter.applyFilterToImage(splittedImage);
-        break;
-      case "red-component":
-      case "green-component":
-      case "blue-component":
-      case "value-component":
-      case "luma-component":
-      case "intensity-component":
-        ImageFilter greyScaleFilter = new GreyScaleFilter(operation);
-        splittedImage = greyScaleFilter.applyFilterToImage(splittedImage);
+        filter = new SepiaColorTransformationFilter();
         break;
       case "color-correct":
-        colorCorrect(srcImageName, "partialSplit");
-        splittedImage = checkAndGetTheImage("partialSplit");
+        filter = new ColorCorrectionWithHistogram(srcImg).getCorrection();
         break;
       case "levels-adjust":
-        adjustLevels(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]),
-                Integer.parseInt(tokens[3]), srcImageName, "partialSplit");
-        splittedImage = checkAndGetTheImage("partialSplit");
+        int b = Integer.parseInt(tokens[1]);
+        int m = Integer.parseInt(tokens[2]);
+        int w = Integer.parseInt(tokens[3]);
+        checkLevels(b, m, w);
+        filter = ChannelLookupTable.levels(b, m, w);
+        operation = operation + " " + b + " " + m + " " + w;
         break;
       default:
+        filter = new GreyScaleFilter(operation);
         break;
     }
-    addImageToHashMap(destImageName, getConcatenatedImage(splitWidth, splittedImage, srcImg));
+
+    // Moving the split line of the last preview only redoes the columns it passed over.
+    synchronized (previewLock) {
+      SplitPreview preview = splitPreview;
+      if (preview == null || !preview.matches(srcImg, operation)
+              || lookupImage(destImageName) != preview.getShown()) {
+        preview = new SplitPreview(srcImg, operation, filter);
+        splitPreview = preview;
+      }
+      int splitWidth = getCropWidth(widthPercentage, srcImg.getWidth());
+      addImageToHashMap(destImageName, preview.show(splitWidth));
+    }
+  }
+
+  /**
+   * Computes the result of an operation on a whole image. When it is the operation of the last
+   * split view preview on the same image, as when a preview is retained, only the columns the
+   * preview has not shown yet are computed.
+   */
+  @Override
+  protected Image computeCached(Image srcImg, String operation, UnaryOperator<Image> compute) {
+    SplitPreview preview = splitPreview;
+    if (operation != null && preview != null && preview.matches(srcImg, operation)) {
+      return super.computeCached(srcImg, operation, img -> preview.finish());
+    }
+    return super.computeCached(srcImg, operation, compute);
   }
 
   /**
@@ -102,122 +152,135 @@ public class AdvancedImageManipulatorModelImpl extends ImageManipulatorModelImpl
     return (int) v;
   }
 
-  /**
-   * Retrieves a cropped portion of the source image with the specified crop width.
-   *
-   * @param cropWidth The width of the cropped portion.
-   * @param srcImage  The source image.
-   * @return An Image object representing the cropped portion.
-   */
-  private Image getCroppedImage(int cropWidth, Image srcImage) {
-    Image croppedImage = new Image(cropWidth, srcImage.getHeight());
-    for (int y = 0; y < srcImage.getHeight(); y++) {
-      for (int x = 0; x < cropWidth; x++) {
-        croppedImage.setPixelRGB(x, y,
-                new Pixel(srcImage.getPixelRGB(x, y).getRed(),
-                        srcImage.getPixelRGB(x, y).getGreen(),
-                        srcImage.getPixelRGB(x, y).getBlue()));
-      }
+  @Override
+  public void generateHistogram(String srcImageName, String destImageName) {
+    Image srcImg = checkAndGetTheImage(srcImageName);
+    if (srcImg == null) {
+      return;
     }
-    return croppedImage;
+    // Redraw the chart only when the counts of the image changed since it was last drawn.
+    int[][] histogram = srcImg.getHistogram();
+    HistogramChart chart = histogramCharts.get(srcImg);
+    if (chart == null || chart.histogram != histogram) {
+      chart = new HistogramChart(histogram,
+              new SimpleHistogramVisualization(srcImg).renderHistogram());
+      histogramCharts.put(srcImg, chart);
+    }
+    addImageToHashMap(destImageName, chart.image);
   }
 
-
   /**
-   * Concatenates a modified image with a source image based on the specified crop width.
-   *
-   * @param cropWidth   The width at which the images are concatenated.
-   * @param modifiedImg The modified image to be concatenated.
-   * @param srcImage    The source image.
-   * @return An Image object representing the concatenated image.
+   * A drawn histogram chart and the counts it shows.
    */
-  private Image getConcatenatedImage(int cropWidth, Image modifiedImg, Image srcImage) {
-    Image concatenatedImage = new Image(srcImage.getWidth(), srcImage.getHeight());
-    for (int y = 0; y < srcImage.getHeight(); y++) {
-      for (int x = 0; x < srcImage.getWidth(); x++) {
-        if (x < cropWidth) {
-          concatenatedImage.setPixelRGB(x, y, modifiedImg.getPixelRGB(x, y));
-        } else {
-          concatenatedImage.setPixelRGB(x, y, srcImage.getPixelRGB(x, y));
-        }
-      }
-    }
-    return concatenatedImage;
-  }
+  private static class HistogramChart {
+    private final int[][] histogram;
+    private final Image image;
 
-  @Override
-  public void generateHistogram(String srcImageName, String destImageName) {
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
+    private HistogramChart(int[][] histogram, Image image) {
+      this.histogram = histogram;
+      this.image = image;
     }
-    SimpleHistogramVisualization histVis = new SimpleHistogramVisualization(srcImg);
-    addRawImageToHashMap(destImageName, histVis.generateHistogram());
   }
 
   @Override
   public void colorCorrect(String srcImageName, String destImageName) {
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
-    }
-    AbstractImageHistogram colorCorrectCls = new ColorCorrectionWithHistogram(srcImg);
-    addImageToHashMap(destImageName,
-            ((ColorCorrectionWithHistogram) colorCorrectCls).colorCorrect(srcImg));
+    addCachedResult(srcImageName, "color-correct",
+        srcImg -> new ColorCorrectionWithHistogram(srcImg).colorCorrect(srcImg), destImageName);
   }
 
   @Override
   public void adjustLevels(int b, int m, int w, String srcImageName, String destImageName)
           throws IllegalArgumentException {
-    if ((b < 0 || b > 255) || (m < 0 || m > 255) || (w < 0 || w > 255) || !(b < m && m < w)) {
-      throw new IllegalArgumentException("Invalid b m w values");
-    }
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
+    checkLevels(b, m, w);
+    addPointOperation(srcImageName, ChannelLookupTable.levels(b, m, w),
+            "levels-adjust " + b + " " + m + " " + w, destImageName);
+  }
+
+  @Override
+  public RowSource streamOperation(String operation, RowSource source)
+          throws IllegalArgumentException {
+    String[] tokens = operation.trim().split("\\s+");
+    ImageFilter filter;
+    switch (tokens[0].toLowerCase()) {
+      case "brighten":
+        checkParameterCount(tokens, 1);
+        filter = ChannelLookupTable.brighten(Integer.parseInt(tokens[1]));
+        break;
+      case "blur":
+        checkParameterCount(tokens, 0);
+        filter = new BlurKernelFilter();
+        break;
+      case "sharpen":
+        checkParameterCount(tokens, 0);
+        filter = new SharpenKernelFilter();
+        break;
+      case "sepia":
+        checkParameterCount(tokens, 0);
+        filter = new SepiaColorTransformationFilter();
+        break;
+      case "levels-adjust":
+        checkParameterCount(tokens, 3);
+        int b = Integer.parseInt(tokens[1]);
+        int m = Integer.parseInt(tokens[2]);
+        int w = Integer.parseInt(tokens[3]);
+        checkLevels(b, m, w);
+        filter = ChannelLookupTable.levels(b, m, w);
+        break;
+      case "red-component":
+      case "green-component":
+      case "blue-component":
+      case "value-component":
+      case "luma-component":
+      case "intensity-component":
+        checkParameterCount(tokens, 0);
+        filter = new GreyScaleFilter(tokens[0].toLowerCase());
+        break;
+      default:
+        throw new IllegalArgumentException("Operation cannot be streamed: " + tokens[0]);
     }
-    Image adjustedLevelsImage = new Image(srcImg.getWidth(), srcImg.getHeight());
-    double squareB = Math.pow(b, 2);
-    double squareM = (int) Math.pow(m, 2);
-    double squareW = (int) Math.pow(w, 2);
-
-    double a = (squareB * (m - w)) - (b * (squareM - squareW)) + (w * squareM) - (m * squareW);
-    double aA = (-b * (128 - 255)) + (128 * w) - (255 * m);
-    double bA = (squareB * (128 - 255)) + (255 * squareM) - (128 * squareW);
-    double cA = (squareB * ((255 * m) - (128 * w))) - (b * ((255 * squareM) - (128 * squareW)));
-    double aCoefficient = (aA / a);
-    double bCoefficient = (bA / a);
-    double cCoefficient = (cA / a);
-
-    for (int y = 0; y < srcImg.getHeight(); y++) {
-      for (int x = 0; x < srcImg.getWidth(); x++) {
-        Pixel currentPixel = srcImg.getPixelRGB(x, y);
-        int red = currentPixel.getRed();
-        int green = currentPixel.getGreen();
-        int blue = currentPixel.getBlue();
-        red = adjustLevel(red, aCoefficient, bCoefficient, cCoefficient);
-        green = adjustLevel(green, aCoefficient, bCoefficient, cCoefficient);
-        blue = adjustLevel(blue, aCoefficient, bCoefficient, cCoefficient);
-        adjustedLevelsImage.setPixelRGB(x, y, new Pixel(red, green, blue));
-      }
+    return new FilteredRowSource(source, filter);
+  }
+
+  /**
+   * Checks that an operation is followed by the given number of parameters.
+   *
+   * @param tokens     The operation and its parameters.
+   * @param parameters The number of parameters the operation takes.
+   * @throws IllegalArgumentException if the number of parameters is different.
+   */
+  private static void checkParameterCount(String[] tokens, int parameters) {
+    if (tokens.length != parameters + 1) {
+      throw new IllegalArgumentException(tokens[0] + " takes " + parameters + " parameters.");
     }
-    addImageToHashMap(destImageName, adjustedLevelsImage);
   }
 
   /**
-   * Calculates the adjusted values by fitting them in the quadratic equation.
+   * Checks that black, mid and white points are increasing values within 0-255.
    *
-   * @param channelValue current value of the channel, acts as x in quadratic equation
-   * @param aCoefficient coefficient a of the quadratic equation
-   * @param bCoefficient coefficient b of the quadratic equation
-   * @param cCoefficient coefficient c of the quadratic equation
-   * @return adjusted value for each pixel
+   * @param b The black point.
+   * @param m The mid point.
+   * @param w The white point.
+   * @throws IllegalArgumentException if the points are invalid.
    */
-  private int adjustLevel(int channelValue, double aCoefficient,
-                          double bCoefficient, double cCoefficient) {
-    int adjustedValue = (int) ((aCoefficient * Math.pow(channelValue, 2)) + (bCoefficient
-            * channelValue) + cCoefficient);
-    return Math.max(0, Math.min(255, adjustedValue));
+  private static void checkLevels(int b, int m, int w) {
+    if ((b < 0 || b > 255) || (m < 0 || m > 255) || (w < 0 || w > 255) || !(b < m && m < w)) {
+      throw new IllegalArgumentException("Invalid b m w values");
+    }
+  }
+
+  @Override
+  public void thumbnail(int scale, String srcImageName, String destImageName)
+          throws IllegalArgumentException {
+    if (scale < 1 || Integer.bitCount(scale) != 1) {
+      throw new IllegalArgumentException("Scale must be a power of two.");
+    }
+    addCachedResult(srcImageName, "thumbnail " + scale, srcImg -> {
+      if (srcImg instanceof CompressedImage) {
+        ImageCompression ic = new ImageCompressionImpl();
+        return ic.reconstruct(((CompressedImage) srcImg).getCoefficients(), scale);
+      }
+      return ImageCompressionImpl.downscale(srcImg, scale);
+    }, destImageName);
   }
 
 }
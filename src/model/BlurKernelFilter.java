@@ -6,18 +6,15 @@ package model;
 public class BlurKernelFilter extends KernelFilter {
 
   /**
-   * The Gaussian blur filter kernel represented as a 3x3 matrix.
+   * One dimension of the 3x3 Gaussian blur kernel. The full kernel is its outer product with
+   * itself, {{1/16, 1/8, 1/16}, {1/8, 1/4, 1/8}, {1/16, 1/8, 1/16}}, and runs as two 1D passes.
    */
-  private static final double[][] gaussianFilter = {
-          {1.0 / 16, 1.0 / 8, 1.0 / 16},
-          {1.0 / 8, 1.0 / 4, 1.0 / 8},
-          {1.0 / 16, 1.0 / 8, 1.0 / 16}
-  };
+  private static final double[] gaussianFilter = {1.0 / 4, 1.0 / 2, 1.0 / 4};
 
   /**
    * Constructs a `BlurKernelFilter` with the Gaussian blur filter kernel.
    */
   public BlurKernelFilter() {
-    super(gaussianFilter);
+    super(gaussianFilter, gaussianFilter);
   }
 }
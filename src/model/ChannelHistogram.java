@@ -0,0 +1,116 @@
+package model;
+
+/**
+ * Counts how often each value 0-255 occurs in the red, green and blue channels of packed RGB
+ * pixels. Counts are stored as {@code int[3][256]}, the first index being the channel (0 for red,
+ * 1 for green, 2 for blue) and the second the channel value.
+ */
+public final class ChannelHistogram {
+
+  private ChannelHistogram() {
+  }
+
+  /**
+   * Counts the channel values of every pixel of an image. Strips of rows are counted on several
+   * cores into their own counts, which are added up once a strip is done.
+   *
+   * @param img The image.
+   * @return The counts of each channel.
+   */
+  public static int[][] compute(Image img) {
+    return compute(img, 1);
+  }
+
+  /**
+   * Counts the channel values of a regular sample of the pixels of an image, taking every
+   * stride-th pixel of every stride-th row. The counts approximate those of the whole image
+   * divided by {@code stride * stride}, which is enough to draw a preview or find peaks.
+   *
+   * @param img    The image.
+   * @param stride The distance between sampled pixels, 1 to count every pixel.
+   * @return The counts of each channel over the sampled pixels.
+   * @throws IllegalArgumentException if the stride is less than 1.
+   */
+  public static int[][] compute(Image img, int stride) {
+    if (stride < 1) {
+      throw new IllegalArgumentException("Stride must be at least 1.");
+    }
+    int width = img.getWidth();
+    int[] pixels = img.getPixelData();
+    int[][] total = new int[3][256];
+    int sampledRows = (img.getHeight() + stride - 1) / stride;
+    int sampledWidth = (width + stride - 1) / stride;
+    TileScheduler.forEachStrip(sampledWidth, sampledRows, (start, end) -> {
+      int[][] bins = new int[3][256];
+      for (int row = start; row < end; row++) {
+        int offset = row * stride * width;
+        if (stride == 1) {
+          count(pixels, offset, offset + width, bins);
+        } else {
+          countSampled(pixels, offset, offset + width, stride, bins);
+        }
+      }
+      merge(total, bins);
+    });
+    return total;
+  }
+
+  /**
+   * Adds the channel values of a range of packed RGB values to the given counts.
+   *
+   * @param pixels The packed values.
+   * @param from   The index of the first value.
+   * @param to     The index after the last value.
+   * @param bins   The counts to add to.
+   */
+  public static void count(int[] pixels, int from, int to, int[][] bins) {
+    int[] red = bins[0];
+    int[] green = bins[1];
+    int[] blue = bins[2];
+    for (int i = from; i < to; i++) {
+      int rgb = pixels[i];
+      red[(rgb >> 16) & 0xFF]++;
+      green[(rgb >> 8) & 0xFF]++;
+      blue[rgb & 0xFF]++;
+    }
+  }
+
+  private static void countSampled(int[] pixels, int from, int to, int stride, int[][] bins) {
+    int[] red = bins[0];
+    int[] green = bins[1];
+    int[] blue = bins[2];
+    for (int i = from; i < to; i += stride) {
+      int rgb = pixels[i];
+      red[(rgb >> 16) & 0xFF]++;
+      green[(rgb >> 8) & 0xFF]++;
+      blue[rgb & 0xFF]++;
+    }
+  }
+
+  /**
+   * Adds one set of counts to another. Counts gathered separately for parts of an image can be
+   * merged this way from several threads.
+   *
+   * @param total The counts to add to.
+   * @param part  The counts to add.
+   */
+  public static void merge(int[][] total, int[][] part) {
+    synchronized (total) {
+      for (int c = 0; c < 3; c++) {
+        for (int v = 0; v < 256; v++) {
+          total[c][v] += part[c][v];
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of the given counts.
+   *
+   * @param bins The counts to copy.
+   * @return The copy.
+   */
+  public static int[][] copyOf(int[][] bins) {
+    return new int[][]{bins[0].clone(), bins[1].clone(), bins[2].clone()};
+  }
+}
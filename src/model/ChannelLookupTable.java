@@ -0,0 +1,287 @@
+package model;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A point operation that maps each channel through its own 256 entry table. Any per-channel
+ * mapping of 0-255 onto 0-255 can be compiled into a table once and then applied with one table
+ * lookup per channel, whatever it costs to compute a single entry. Two tables applied one after
+ * the other combine into a single table.
+ */
+public class ChannelLookupTable implements PointOperation {
+
+  private final int[] redTable;
+  private final int[] greenTable;
+  private final int[] blueTable;
+
+  /**
+   * Constructs a lookup table with a separate table per channel.
+   *
+   * @param redTable   The 256 output values for the red channel.
+   * @param greenTable The 256 output values for the green channel.
+   * @param blueTable  The 256 output values for the blue channel.
+   * @throws IllegalArgumentException if a table does not have 256 entries between 0 and 255.
+   */
+  public ChannelLookupTable(int[] redTable, int[] greenTable, int[] blueTable) {
+    this.redTable = checkTable(redTable);
+    this.greenTable = checkTable(greenTable);
+    this.blueTable = checkTable(blueTable);
+  }
+
+  /**
+   * Compiles the same curve for all three channels into a lookup table. Results outside 0-255
+   * are clamped.
+   *
+   * @param curve The curve, evaluated once for each value from 0 to 255.
+   * @return The lookup table.
+   */
+  public static ChannelLookupTable of(IntUnaryOperator curve) {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = clampValue(curve.applyAsInt(i));
+    }
+    return new ChannelLookupTable(table, table, table);
+  }
+
+  /**
+   * Creates a table that adds the same increment to every channel.
+   *
+   * @param increment The value to add, negative to darken.
+   * @return The lookup table.
+   */
+  public static ChannelLookupTable brighten(int increment) {
+    return offsets(increment, increment, increment);
+  }
+
+  /**
+   * Creates a table that adds a separate offset to each channel.
+   *
+   * @param redOffset   The value added to the red channel.
+   * @param greenOffset The value added to the green channel.
+   * @param blueOffset  The value added to the blue channel.
+   * @return The lookup table.
+   */
+  public static ChannelLookupTable offsets(int redOffset, int greenOffset, int blueOffset) {
+    return new ChannelLookupTable(offsetTable(redOffset), offsetTable(greenOffset),
+        offsetTable(blueOffset));
+  }
+
+  /**
+   * Creates the levels adjustment table that maps black, mid and white points b, m and w onto
+   * 0, 128 and 255 by fitting a quadratic curve through them.
+   *
+   * @param b The black point.
+   * @param m The mid point.
+   * @param w The white point.
+   * @return The lookup table.
+   */
+  public static ChannelLookupTable levels(int b, int m, int w) {
+    double squareB = Math.pow(b, 2);
+    double squareM = (int) Math.pow(m, 2);
+    double squareW = (int) Math.pow(w, 2);
+
+    double a = (squareB * (m - w)) - (b * (squareM - squareW)) + (w * squareM) - (m * squareW);
+    double aA = (-b * (128 - 255)) + (128 * w) - (255 * m);
+    double bA = (squareB * (128 - 255)) + (255 * squareM) - (128 * squareW);
+    double cA = (squareB * ((255 * m) - (128 * w))) - (b * ((255 * squareM) - (128 * squareW)));
+    double aCoefficient = (aA / a);
+    double bCoefficient = (bA / a);
+    double cCoefficient = (cA / a);
+
+    return of(channelValue -> (int) ((aCoefficient * Math.pow(channelValue, 2)) + (bCoefficient
+        * channelValue) + cCoefficient));
+  }
+
+  /**
+   * Creates a gamma correction table, mapping v onto 255 * (v / 255)^(1 / gamma) rounded to the
+   * nearest value. A gamma above 1 brightens the mid tones, below 1 darkens them.
+   *
+   * @param gamma The gamma value.
+   * @return The lookup table.
+   * @throws IllegalArgumentException if gamma is not positive.
+   */
+  public static ChannelLookupTable gamma(double gamma) {
+    if (!(gamma > 0)) {
+      throw new IllegalArgumentException("Gamma must be positive.");
+    }
+    return of(v -> (int) Math.round(255 * Math.pow(v / 255.0, 1 / gamma)));
+  }
+
+  /**
+   * Creates a tone curve table that interpolates linearly between control points. Values below
+   * the first or above the last control point map onto the output of that point.
+   *
+   * @param inputs  The input values of the control points, strictly increasing within 0-255.
+   * @param outputs The output values of the control points, within 0-255.
+   * @return The lookup table.
+   * @throws IllegalArgumentException if the control points are invalid.
+   */
+  public static ChannelLookupTable toneCurve(int[] inputs, int[] outputs) {
+    if (inputs.length == 0 || inputs.length != outputs.length) {
+      throw new IllegalArgumentException("Invalid tone curve control points.");
+    }
+    for (int i = 0; i < inputs.length; i++) {
+      if (inputs[i] < 0 || inputs[i] > 255 || outputs[i] < 0 || outputs[i] > 255
+          || (i > 0 && inputs[i] <= inputs[i - 1])) {
+        throw new IllegalArgumentException("Invalid tone curve control points.");
+      }
+    }
+    int[] table = new int[256];
+    int segment = 0;
+    for (int v = 0; v < 256; v++) {
+      while (segment < inputs.length - 1 && v > inputs[segment + 1]) {
+        segment++;
+      }
+      if (v <= inputs[0]) {
+        table[v] = outputs[0];
+      } else if (segment == inputs.length - 1) {
+        table[v] = outputs[segment];
+      } else {
+        int x0 = inputs[segment];
+        int x1 = inputs[segment + 1];
+        table[v] = (int) Math.round(outputs[segment]
+            + (double) (outputs[segment + 1] - outputs[segment]) * (v - x0) / (x1 - x0));
+      }
+    }
+    return new ChannelLookupTable(table, table, table);
+  }
+
+  @Override
+  public int applyToPixel(int rgb) {
+    return (redTable[(rgb >> 16) & 0xFF] << 16) | (greenTable[(rgb >> 8) & 0xFF] << 8)
+        | blueTable[rgb & 0xFF];
+  }
+
+  @Override
+  public void applyToPixels(int[] pixels, int from, int to) {
+    int[] red = redTable;
+    int[] green = greenTable;
+    int[] blue = blueTable;
+    for (int i = from; i < to; i++) {
+      int rgb = pixels[i];
+      pixels[i] = (red[(rgb >> 16) & 0xFF] << 16) | (green[(rgb >> 8) & 0xFF] << 8)
+          | blue[rgb & 0xFF];
+    }
+  }
+
+  /**
+   * Applies the table to the input image. When the histogram of the input is already known, the
+   * histogram of the result follows from it by moving each count to the value its table entry
+   * maps onto, and the result pixels are not counted.
+   *
+   * @param sourceImg The input image to which the table is applied.
+   * @return A new image with the table applied.
+   */
+  @Override
+  public Image applyFilterToImage(Image sourceImg) {
+    int[][] sourceHistogram = sourceImg.getKnownHistogram();
+    if (sourceHistogram == null) {
+      return PointOperation.super.applyFilterToImage(sourceImg);
+    }
+    Image result = new Image(sourceImg.getWidth(), sourceImg.getHeight());
+    TileScheduler.forEachStrip(sourceImg.getWidth(), sourceImg.getHeight(),
+        (yStart, yEnd) -> applyFilterToRows(sourceImg, result, yStart, yEnd));
+    result.setHistogram(mapHistogram(sourceHistogram));
+    return result;
+  }
+
+  /**
+   * Computes the histogram of an image after this table is applied to it.
+   *
+   * @param histogram The counts of the channel values of the input image.
+   * @return The counts of the channel values of the output image.
+   */
+  public int[][] mapHistogram(int[][] histogram) {
+    int[][] tables = {redTable, greenTable, blueTable};
+    int[][] mapped = new int[3][256];
+    for (int c = 0; c < 3; c++) {
+      for (int v = 0; v < 256; v++) {
+        mapped[c][tables[c][v]] += histogram[c][v];
+      }
+    }
+    return mapped;
+  }
+
+  /**
+   * Returns a table applying this table and then the given one. When the given operation is a
+   * table as well, the two are combined into a single table.
+   *
+   * @param after The operation to apply to the output of this one.
+   * @return The chained operation.
+   */
+  @Override
+  public PointOperation andThen(PointOperation after) {
+    if (after instanceof ChannelLookupTable) {
+      return compose((ChannelLookupTable) after);
+    }
+    return PointOperation.super.andThen(after);
+  }
+
+  /**
+   * Combines this table with one applied after it.
+   *
+   * @param after The table applied to the output of this one.
+   * @return A single table giving the same results as both tables in a row.
+   */
+  public ChannelLookupTable compose(ChannelLookupTable after) {
+    int[] red = new int[256];
+    int[] green = new int[256];
+    int[] blue = new int[256];
+    for (int i = 0; i < 256; i++) {
+      red[i] = after.redTable[redTable[i]];
+      green[i] = after.greenTable[greenTable[i]];
+      blue[i] = after.blueTable[blueTable[i]];
+    }
+    return new ChannelLookupTable(red, green, blue);
+  }
+
+  /**
+   * Returns the output value of a channel for an input value.
+   *
+   * @param channel The channel, 0 for red, 1 for green and 2 for blue.
+   * @param value   The input value (0-255).
+   * @return The output value (0-255).
+   */
+  public int lookup(int channel, int value) {
+    switch (channel) {
+      case 0:
+        return redTable[value];
+      case 1:
+        return greenTable[value];
+      case 2:
+        return blueTable[value];
+      default:
+        throw new IllegalArgumentException("Invalid channel " + channel);
+    }
+  }
+
+  private static int[] offsetTable(int offset) {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = clampValue(i + offset);
+    }
+    return table;
+  }
+
+  private static int[] checkTable(int[] table) {
+    if (table == null || table.length != 256) {
+      throw new IllegalArgumentException("A lookup table must have 256 entries.");
+    }
+    for (int value : table) {
+      if (value < 0 || value > 255) {
+        throw new IllegalArgumentException("Lookup table values must be between 0 and 255.");
+      }
+    }
+    return table.clone();
+  }
+
+  /**
+   * Clamps a value within the range [0, 255].
+   *
+   * @param value The value to be clamped.
+   * @return The clamped value.
+   */
+  private static int clampValue(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
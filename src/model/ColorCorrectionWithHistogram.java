@@ -15,6 +15,17 @@ public class ColorCorrectionWithHistogram extends AbstractImageHistogram {
     super(srcImg);
   }
 
+  /**
+   * Constructs a ColorCorrectionWithHistogram object that finds the channel peaks from a regular
+   * sample of the pixels of the source image.
+   *
+   * @param srcImg The source image for color correction.
+   * @param stride The distance between sampled pixels, 1 to count every pixel.
+   */
+  public ColorCorrectionWithHistogram(Image srcImg, int stride) {
+    super(srcImg, stride);
+  }
+
   /**
    * Performs color correction on the input image based on histogram analysis.
    *
@@ -22,32 +33,25 @@ public class ColorCorrectionWithHistogram extends AbstractImageHistogram {
    * @return A new Image object representing the color-corrected image.
    */
   public Image colorCorrect(Image srcImg) {
-    Image colorCorrectedImage = new Image(srcImg.getWidth(), srcImg.getHeight());
+    return getCorrection().applyFilterToImage(srcImg);
+  }
+
+  /**
+   * Returns the correction found from the histogram, as a table that can be applied to any part
+   * of the image.
+   *
+   * @return The lookup table shifting each channel so that its peak lands on the average peak.
+   */
+  public ChannelLookupTable getCorrection() {
     int redPeak = calculateMeaningfulPeak(this.histogramValues[0]);
     int greenPeak = calculateMeaningfulPeak(this.histogramValues[1]);
     int bluePeak = calculateMeaningfulPeak(this.histogramValues[2]);
 
     int averagePeak = (redPeak + greenPeak + bluePeak) / 3;
 
-    for (int y = 0; y < srcImg.getHeight(); y++) {
-      for (int x = 0; x < srcImg.getWidth(); x++) {
-        Pixel currentPixel = srcImg.getPixelRGB(x, y);
-        int red = currentPixel.getRed();
-        int green = currentPixel.getGreen();
-        int blue = currentPixel.getBlue();
-
-        int redOffset = averagePeak - redPeak;
-        int greenOffset = averagePeak - greenPeak;
-        int blueOffset = averagePeak - bluePeak;
-
-        red = Math.max(0, Math.min(255, red + redOffset));
-        green = Math.max(0, Math.min(255, green + greenOffset));
-        blue = Math.max(0, Math.min(255, blue + blueOffset));
-
-        colorCorrectedImage.setPixelRGB(x, y, new Pixel(red, green, blue));
-      }
-    }
-    return colorCorrectedImage;
+    // Shift each channel so that its peak lands on the average peak.
+    return ChannelLookupTable.offsets(averagePeak - redPeak, averagePeak - greenPeak,
+        averagePeak - bluePeak);
   }
 
   /**
@@ -4,7 +4,7 @@ package model;
  * An abstract class representing a color transformation filter for image processing. This filter
  * applies a specified color transformation matrix to each pixel in an image.
  */
-public abstract class ColorTransformationFilter implements ImageFilter {
+public abstract class ColorTransformationFilter implements PointOperation {
 
   /**
    * The color transformation matrix used by this filter to transform pixel colors.
@@ -21,34 +21,26 @@ public abstract class ColorTransformationFilter implements ImageFilter {
   }
 
   /**
-   * Applies the color transformation filter to the input image.
+   * Applies the color transformation matrix to a single packed RGB value.
    *
-   * @param srcImg The source image to which the filter will be applied.
-   * @return A new image with the filter applied.
+   * @param rgb The packed value of the source pixel.
+   * @return The packed value of the transformed pixel.
    */
   @Override
-  public Image applyFilterToImage(Image srcImg) {
-    Image imageWithAppliedFilter = new Image(srcImg.getWidth(), srcImg.getHeight());
-    for (int y = 0; y < srcImg.getHeight(); y++) {
-      for (int x = 0; x < srcImg.getWidth(); x++) {
-        Pixel currentPixel = srcImg.getPixelRGB(x, y);
-        int currentRed = currentPixel.getRed();
-        int currentGreen = currentPixel.getGreen();
-        int currentBlue = currentPixel.getBlue();
-        int newRed = (int) (colorTransformation[0][0] * currentRed
-            + colorTransformation[0][1] * currentGreen
-            + colorTransformation[0][2] * currentBlue);
-        int newGreen = (int) (colorTransformation[1][0] * currentRed
-            + colorTransformation[1][1] * currentGreen
-            + colorTransformation[1][2] * currentBlue);
-        int newBlue = (int) (colorTransformation[2][0] * currentRed
-            + colorTransformation[2][1] * currentGreen
-            + colorTransformation[2][2] * currentBlue);
-        imageWithAppliedFilter.setPixelRGB(x, y,
-            new Pixel(clampValue(newRed), clampValue(newGreen), clampValue(newBlue)));
-      }
-    }
-    return imageWithAppliedFilter;
+  public int applyToPixel(int rgb) {
+    int currentRed = Image.red(rgb);
+    int currentGreen = Image.green(rgb);
+    int currentBlue = Image.blue(rgb);
+    int newRed = (int) (colorTransformation[0][0] * currentRed
+        + colorTransformation[0][1] * currentGreen
+        + colorTransformation[0][2] * currentBlue);
+    int newGreen = (int) (colorTransformation[1][0] * currentRed
+        + colorTransformation[1][1] * currentGreen
+        + colorTransformation[1][2] * currentBlue);
+    int newBlue = (int) (colorTransformation[2][0] * currentRed
+        + colorTransformation[2][1] * currentGreen
+        + colorTransformation[2][2] * currentBlue);
+    return Image.packRGB(clampValue(newRed), clampValue(newGreen), clampValue(newBlue));
   }
 
   /**
@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * An image produced by wavelet compression, which also carries the coefficients it was
+ * reconstructed from. This lets the image be saved in its compact wavelet form without
+ * transforming it again. The pixels must not be changed, or they no longer match the
+ * coefficients.
+ */
+public class CompressedImage extends Image {
+
+  private final WaveletCoefficients coefficients;
+
+  /**
+   * Constructs a compressed image.
+   *
+   * @param pixelRGBData Row-major packed RGB data reconstructed from the coefficients.
+   * @param coefficients The wavelet coefficients of the image.
+   */
+  public CompressedImage(int[] pixelRGBData, WaveletCoefficients coefficients) {
+    super(coefficients.getWidth(), coefficients.getHeight(), pixelRGBData);
+    this.coefficients = coefficients;
+  }
+
+  /**
+   * Get the wavelet coefficients the image was reconstructed from.
+   *
+   * @return The coefficients.
+   */
+  public WaveletCoefficients getCoefficients() {
+    return coefficients;
+  }
+}
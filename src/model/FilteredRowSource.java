@@ -0,0 +1,134 @@
+package model;
+
+import java.io.IOException;
+
+/**
+ * The rows of an image with a filter applied, computed a band of rows at a time as they are
+ * read. Each band is read from the underlying source together with the rows of its halo, the
+ * rows above and below it the filter reads, and the halo rows are kept for the next band, so
+ * every source row is read once. Only one band of the source and one band of the result are
+ * held in memory, however large the image is.
+ *
+ * <p>The rows of a band are filtered on several cores. The result is the same as applying the
+ * filter to the whole image.
+ */
+public class FilteredRowSource implements RowSource {
+
+  /**
+   * Memory taken by the source and result bands together when the band size is not given.
+   */
+  private static final long DEFAULT_BAND_BYTES = 1 << 24;
+
+  private final RowSource source;
+  private final ImageFilter filter;
+  private final int bandRows;
+  private final int halo;
+
+  // The band of source rows held, starting at image row inputTop, and the result of its rows.
+  private Image input;
+  private Image output;
+  private int inputTop;
+
+  // The image rows computed so far, and the next one to be read.
+  private int computedEnd;
+  private int next;
+
+  /**
+   * Applies a filter to the rows of a source, in bands of about 16 MB.
+   *
+   * @param source The rows to filter.
+   * @param filter The filter to apply.
+   */
+  public FilteredRowSource(RowSource source, ImageFilter filter) {
+    this(source, filter, (int) Math.max(1,
+        DEFAULT_BAND_BYTES / (2L * Integer.BYTES * Math.max(1, source.getWidth()))));
+  }
+
+  /**
+   * Applies a filter to the rows of a source, in bands of the given number of rows.
+   *
+   * @param source   The rows to filter.
+   * @param filter   The filter to apply.
+   * @param bandRows The number of rows computed at a time.
+   * @throws IllegalArgumentException if bandRows is less than one.
+   */
+  public FilteredRowSource(RowSource source, ImageFilter filter, int bandRows) {
+    if (bandRows < 1) {
+      throw new IllegalArgumentException("A band must have at least one row.");
+    }
+    this.source = source;
+    this.filter = filter;
+    this.bandRows = bandRows;
+    this.halo = filter.getHalo();
+  }
+
+  @Override
+  public int getWidth() {
+    return source.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return source.getHeight();
+  }
+
+  @Override
+  public void readRows(Image dest, int yStart, int yEnd) throws IOException {
+    int width = getWidth();
+    if (dest.getWidth() != width) {
+      throw new IllegalArgumentException("Rows must be read into an image of the same width.");
+    }
+    if (yEnd - yStart > getHeight() - next) {
+      throw new IllegalArgumentException("Cannot read past the last row.");
+    }
+    for (int y = yStart; y < yEnd; ) {
+      if (next == computedEnd) {
+        computeBand();
+      }
+      int rows = Math.min(yEnd - y, computedEnd - next);
+      System.arraycopy(output.getPixelData(), output.rowOffset(next - inputTop),
+          dest.getPixelData(), dest.rowOffset(y), rows * width);
+      next += rows;
+      y += rows;
+    }
+    dest.markModified();
+  }
+
+  @Override
+  public void close() throws IOException {
+    source.close();
+  }
+
+  /**
+   * Reads the source rows of the next band and its halo, and filters the band.
+   */
+  private void computeBand() throws IOException {
+    int width = getWidth();
+    int bandStart = computedEnd;
+    int bandEnd = Math.min(getHeight(), bandStart + bandRows);
+    int top = Math.max(0, bandStart - halo);
+    int bottom = Math.min(getHeight(), bandEnd + halo);
+
+    Image nextInput = input != null && input.getHeight() == bottom - top
+        ? input : new Image(width, bottom - top);
+    // The rows read for the previous band that this band reads again.
+    int kept = input == null ? 0 : Math.max(0, inputTop + input.getHeight() - top);
+    if (kept > 0) {
+      System.arraycopy(input.getPixelData(), input.rowOffset(top - inputTop),
+          nextInput.getPixelData(), 0, kept * width);
+    }
+    source.readRows(nextInput, kept, bottom - top);
+    if (nextInput != input) {
+      output = new Image(width, bottom - top);
+    }
+    input = nextInput;
+    inputTop = top;
+
+    Image in = input;
+    Image out = output;
+    int offset = bandStart - top;
+    TileScheduler.forEachStrip(width, bandEnd - bandStart, halo,
+        (yStart, yEnd) -> filter.applyFilterToRows(in, out, yStart + offset, yEnd + offset));
+    computedEnd = bandEnd;
+  }
+}
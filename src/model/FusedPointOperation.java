@@ -0,0 +1,93 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of point operations run in a single pass. Each block of pixels is copied once and then
+ * passed through every stage while it is still in cache, so no intermediate image is allocated.
+ * Stages keep their own rounding and clamping, which makes the result identical to running the
+ * operations one after the other. Neighbouring lookup tables are combined into a single table.
+ */
+public class FusedPointOperation implements PointOperation {
+
+  /**
+   * The stages of the chain, in the order they are applied.
+   */
+  private final PointOperation[] stages;
+
+  /**
+   * Constructs a chain from its stages.
+   *
+   * @param stages The stages, in the order they are applied.
+   */
+  private FusedPointOperation(PointOperation[] stages) {
+    this.stages = stages;
+  }
+
+  /**
+   * Chains two operations, flattening operations that are chains themselves.
+   *
+   * @param first  The operation applied first.
+   * @param second The operation applied to the output of the first.
+   * @return The chained operation.
+   */
+  static PointOperation of(PointOperation first, PointOperation second) {
+    List<PointOperation> stages = new ArrayList<>();
+    addStages(stages, first);
+    addStages(stages, second);
+    return new FusedPointOperation(stages.toArray(new PointOperation[0]));
+  }
+
+  private static void addStages(List<PointOperation> stages, PointOperation operation) {
+    if (operation instanceof FusedPointOperation) {
+      for (PointOperation stage : ((FusedPointOperation) operation).stages) {
+        addStages(stages, stage);
+      }
+    } else if (operation instanceof ChannelLookupTable && !stages.isEmpty()
+        && stages.get(stages.size() - 1) instanceof ChannelLookupTable) {
+      // Neighbouring lookup tables combine into one table.
+      ChannelLookupTable previous = (ChannelLookupTable) stages.remove(stages.size() - 1);
+      stages.add(previous.compose((ChannelLookupTable) operation));
+    } else {
+      stages.add(operation);
+    }
+  }
+
+  /**
+   * Returns the number of stages of the chain.
+   *
+   * @return The number of stages.
+   */
+  public int getStageCount() {
+    return stages.length;
+  }
+
+  @Override
+  public int applyToPixel(int rgb) {
+    for (PointOperation stage : stages) {
+      rgb = stage.applyToPixel(rgb);
+    }
+    return rgb;
+  }
+
+  @Override
+  public void applyToPixels(int[] pixels, int from, int to) {
+    for (PointOperation stage : stages) {
+      stage.applyToPixels(pixels, from, to);
+    }
+  }
+
+  @Override
+  public void applyFilterToRows(Image sourceImg, Image destImg, int yStart, int yEnd) {
+    int width = sourceImg.getWidth();
+    int[] src = sourceImg.getPixelData();
+    int[] dest = destImg.getPixelData();
+    for (int y = yStart; y < yEnd; y++) {
+      // Work a row at a time so the row stays in cache across all stages.
+      int offset = y * width;
+      System.arraycopy(src, offset, dest, offset, width);
+      applyToPixels(dest, offset, offset + width);
+    }
+  }
+}
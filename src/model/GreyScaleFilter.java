@@ -4,64 +4,87 @@ package model;
  * The GreyScaleFilter class implements the ImageFilter interface to create a greyscale version of
  * an image based on a specified color component.
  */
-public class GreyScaleFilter implements ImageFilter {
+public class GreyScaleFilter implements PointOperation {
 
-  private final String component;
+  private static final int RED = 0;
+  private static final int GREEN = 1;
+  private static final int BLUE = 2;
+  private static final int VALUE = 3;
+  private static final int LUMA = 4;
+  private static final int INTENSITY = 5;
+
+  // The selected component, resolved once from its name.
+  private final int component;
 
   /**
    * Constructs a new GreyScaleFilter with the specified color component.
    *
    * @param componentName The name of the color component to be used for creating the greyscale
    *                      image.
+   * @throws IllegalArgumentException if the component name is not supported.
    */
   public GreyScaleFilter(String componentName) {
-    this.component = componentName;
+    switch (componentName) {
+      case "red-component":
+        this.component = RED;
+        break;
+      case "green-component":
+        this.component = GREEN;
+        break;
+      case "blue-component":
+        this.component = BLUE;
+        break;
+      case "value-component":
+        this.component = VALUE;
+        break;
+      case "luma-component":
+        this.component = LUMA;
+        break;
+      case "intensity-component":
+        this.component = INTENSITY;
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid Component Type"
+            + " for creating a greyscale image");
+    }
   }
 
+  /**
+   * Converts a single packed RGB value based on the selected component.
+   *
+   * @param rgb The packed value of the source pixel.
+   * @return The packed value of the converted pixel.
+   */
   @Override
-  public Image applyFilterToImage(Image srcImg) {
-    Image resultImg = new Image(srcImg.getWidth(), srcImg.getHeight());
-
-    for (int y = 0; y < srcImg.getHeight(); y++) {
-      for (int x = 0; x < srcImg.getWidth(); x++) {
-        int grey;
-        Pixel currentPixel = srcImg.getPixelRGB(x, y);
-
-        // Convert the pixel to greyscale based on the selected component.
-        switch (this.component) {
-          case "red-component":
-            resultImg.setPixelRGB(x, y, new Pixel(currentPixel.getRed(), 0, 0));
-            break;
+  public int applyToPixel(int rgb) {
+    int red = Image.red(rgb);
+    int green = Image.green(rgb);
+    int blue = Image.blue(rgb);
+    int grey;
 
-          case "green-component":
-            resultImg.setPixelRGB(x, y, new Pixel(0, currentPixel.getGreen(), 0));
-            break;
+    // Convert the pixel to greyscale based on the selected component.
+    switch (this.component) {
+      case RED:
+        return rgb & 0xFF0000;
 
-          case "blue-component":
-            resultImg.setPixelRGB(x, y, new Pixel(0, 0, currentPixel.getBlue()));
-            break;
+      case GREEN:
+        return rgb & 0x00FF00;
 
-          case "value-component":
-            grey = currentPixel.getValueComponent();
-            resultImg.setPixelRGB(x, y, new Pixel(grey, grey, grey));
-            break;
+      case BLUE:
+        return rgb & 0x0000FF;
 
-          case "luma-component":
-            grey = currentPixel.getLumaComponent();
-            resultImg.setPixelRGB(x, y, new Pixel(grey, grey, grey));
-            break;
+      case VALUE:
+        grey = Pixel.valueComponent(red, green, blue);
+        break;
 
-          case "intensity-component":
-            grey = currentPixel.getIntensityComponent();
-            resultImg.setPixelRGB(x, y, new Pixel(grey, grey, grey));
-            break;
+      case LUMA:
+        grey = Pixel.lumaComponent(red, green, blue);
+        break;
 
-          default:
-            throw new IllegalArgumentException("Invalid Component Type"
-                + " for creating a greyscale image");
-        }
-      }
+      default:
+        grey = Pixel.intensityComponent(red, green, blue);
+        break;
     }
-    return resultImg;
+    return Image.packRGB(grey, grey, grey);
   }
 }
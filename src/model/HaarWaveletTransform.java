@@ -0,0 +1,201 @@
+package model;
+
+/**
+ * The 2D Haar wavelet transform used for image compression, working in place on a flat square
+ * buffer of doubles stored row by row. Each pass replaces pairs of values by their scaled sum
+ * and difference along a whole row or column of the buffer, and every level narrows the set of
+ * rows and columns that are transformed. Row passes reuse one scratch row, column passes work on
+ * blocks of neighbouring columns so that they read the buffer a row segment at a time. Both run
+ * on several cores through the {@link TileScheduler}.
+ */
+public class HaarWaveletTransform {
+
+  /**
+   * Number of neighbouring columns transformed together in a column pass.
+   */
+  private static final int COLUMN_BLOCK = 32;
+
+  private static final double SQRT_2 = Math.sqrt(2);
+
+  /**
+   * The width and height of the buffers, a power of two.
+   */
+  private final int size;
+
+  /**
+   * Constructs a transform for square buffers of the given size.
+   *
+   * @param size The width and height of the buffers, a power of two.
+   * @throws IllegalArgumentException if the size is not a power of two.
+   */
+  public HaarWaveletTransform(int size) {
+    if (size < 1 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Transform size must be a power of two.");
+    }
+    if ((long) size * size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image is too large to transform.");
+    }
+    this.size = size;
+  }
+
+  /**
+   * Returns the size of the square buffer needed to hold an image of the given dimensions.
+   *
+   * @param width  The width of the image.
+   * @param height The height of the image.
+   * @return The smallest power of two not less than either dimension.
+   */
+  public static int paddedSize(int width, int height) {
+    int maxSize = Math.max(width, height);
+    if (maxSize > 1 << 30) {
+      throw new IllegalArgumentException("Image is too large to transform.");
+    }
+    int newSize = 1;
+    while (newSize < maxSize) {
+      newSize *= 2;
+    }
+    return newSize;
+  }
+
+  /**
+   * Returns the width and height of the buffers.
+   *
+   * @return The size of the transform.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of levels of a full transform.
+   *
+   * @return The base two logarithm of the size.
+   */
+  public int getLevels() {
+    return Integer.numberOfTrailingZeros(size);
+  }
+
+  /**
+   * Runs the full forward transform in place.
+   *
+   * @param data The buffer, {@code size * size} values stored row by row.
+   */
+  public void forward(double[] data) {
+    checkBuffer(data);
+    for (int c = size; c > 1; c /= 2) {
+      transformColumns(data, c, false);
+      transformRows(data, c, false);
+    }
+  }
+
+  /**
+   * Runs the full inverse transform in place.
+   *
+   * @param data The buffer, {@code size * size} values stored row by row.
+   */
+  public void inverse(double[] data) {
+    inverse(data, getLevels());
+  }
+
+  /**
+   * Runs the given number of the inverse levels in place, starting from the coarsest one.
+   *
+   * @param data   The buffer, {@code size * size} values stored row by row.
+   * @param levels The number of levels to run, between 0 and {@link #getLevels()}.
+   */
+  public void inverse(double[] data, int levels) {
+    checkBuffer(data);
+    if (levels < 0 || levels > getLevels()) {
+      throw new IllegalArgumentException("Invalid number of levels: " + levels);
+    }
+    for (int c = 2, level = 0; level < levels; c *= 2, level++) {
+      transformRows(data, c, true);
+      transformColumns(data, c, true);
+    }
+  }
+
+  /**
+   * Transforms the first c rows along their whole length.
+   *
+   * @param data    The buffer.
+   * @param c       The number of rows to transform.
+   * @param inverse True for the inverse transform.
+   */
+  private void transformRows(double[] data, int c, boolean inverse) {
+    TileScheduler.forEachStrip(size, c, (rowStart, rowEnd) -> {
+      double[] scratch = new double[size];
+      int half = size / 2;
+      for (int row = rowStart; row < rowEnd; row++) {
+        int offset = row * size;
+        for (int k = 0; k < half; k++) {
+          if (inverse) {
+            double avg = data[offset + k];
+            double diff = data[offset + half + k];
+            scratch[2 * k] = (avg + diff) / SQRT_2;
+            scratch[2 * k + 1] = (avg - diff) / SQRT_2;
+          } else {
+            double a = data[offset + 2 * k];
+            double b = data[offset + 2 * k + 1];
+            scratch[k] = (a + b) / SQRT_2;
+            scratch[half + k] = (a - b) / SQRT_2;
+          }
+        }
+        System.arraycopy(scratch, 0, data, offset, size);
+      }
+    });
+  }
+
+  /**
+   * Transforms the first c columns along their whole length, a block of columns at a time.
+   *
+   * @param data    The buffer.
+   * @param c       The number of columns to transform.
+   * @param inverse True for the inverse transform.
+   */
+  private void transformColumns(double[] data, int c, boolean inverse) {
+    int blocks = (c + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+    int blockWidth = size * Math.min(c, COLUMN_BLOCK);
+    TileScheduler.forEachStrip(blockWidth, blocks, (blockStart, blockEnd) -> {
+      double[] scratch = new double[size * COLUMN_BLOCK];
+      int half = size / 2;
+      for (int block = blockStart; block < blockEnd; block++) {
+        int columnStart = block * COLUMN_BLOCK;
+        int columns = Math.min(COLUMN_BLOCK, c - columnStart);
+        for (int k = 0; k < half; k++) {
+          if (inverse) {
+            int avgRow = k * size + columnStart;
+            int diffRow = (half + k) * size + columnStart;
+            int evenOut = 2 * k * columns;
+            int oddOut = (2 * k + 1) * columns;
+            for (int j = 0; j < columns; j++) {
+              double avg = data[avgRow + j];
+              double diff = data[diffRow + j];
+              scratch[evenOut + j] = (avg + diff) / SQRT_2;
+              scratch[oddOut + j] = (avg - diff) / SQRT_2;
+            }
+          } else {
+            int evenRow = 2 * k * size + columnStart;
+            int oddRow = (2 * k + 1) * size + columnStart;
+            int avgOut = k * columns;
+            int diffOut = (half + k) * columns;
+            for (int j = 0; j < columns; j++) {
+              double a = data[evenRow + j];
+              double b = data[oddRow + j];
+              scratch[avgOut + j] = (a + b) / SQRT_2;
+              scratch[diffOut + j] = (a - b) / SQRT_2;
+            }
+          }
+        }
+        for (int row = 0; row < size; row++) {
+          System.arraycopy(scratch, row * columns, data, row * size + columnStart, columns);
+        }
+      }
+    });
+  }
+
+  private void checkBuffer(double[] data) {
+    if (data.length != size * size) {
+      throw new IllegalArgumentException("Buffer does not match the transform size.");
+    }
+  }
+}
@@ -1,7 +1,11 @@
 package model;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * A class representing an image with pixel data.
+ * A class representing an image with pixel data. Pixels are stored in a single row-major
+ * {@code int[]} buffer, one packed {@code 0x00RRGGBB} value per pixel, so filters can walk the
+ * image a row at a time without allocating a {@link Pixel} per pixel.
  */
 public class Image {
 
@@ -16,9 +20,24 @@ public class Image {
   private final int height;
 
   /**
-   * A 2D array containing pixel data in RGB format.
+   * Row-major packed RGB data, the pixel at (x, y) lives at index {@code y * width + x}.
+   */
+  private final int[] pixelRGBData;
+
+  /**
+   * Source of version numbers, shared by all images so that no two contents share a number.
+   */
+  private static final AtomicLong VERSIONS = new AtomicLong();
+
+  /**
+   * Counts of the channel values, kept once known and dropped when a pixel is written.
    */
-  private final Pixel[][] pixelRGBData;
+  private volatile int[][] histogram;
+
+  /**
+   * The version of the pixels, 0 until it is asked for and again after a pixel is written.
+   */
+  private volatile long version;
 
   /**
    * Constructs an image with the specified width and height.
@@ -27,9 +46,25 @@ public class Image {
    * @param height The height of the image.
    */
   public Image(int width, int height) {
+    this(width, height, new int[width * height]);
+  }
+
+  /**
+   * Constructs an image of the specified size backed by the given packed RGB buffer. The buffer is
+   * used as is, not copied.
+   *
+   * @param width        The width of the image.
+   * @param height       The height of the image.
+   * @param pixelRGBData Row-major packed RGB data of length {@code width * height}.
+   * @throws IllegalArgumentException if the buffer length does not match the dimensions.
+   */
+  public Image(int width, int height, int[] pixelRGBData) {
+    if (width < 0 || height < 0 || pixelRGBData.length != width * height) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
     this.width = width;
     this.height = height;
-    this.pixelRGBData = new Pixel[width][height];
+    this.pixelRGBData = pixelRGBData;
   }
 
   /**
@@ -51,14 +86,16 @@ public class Image {
   }
 
   /**
-   * Get the pixel at the specified coordinates in RGB format.
+   * Get the pixel at the specified coordinates in RGB format. The returned pixel is a copy, changes
+   * made to it are not reflected in the image.
    *
    * @param x The X-coordinate of the pixel.
    * @param y The Y-coordinate of the pixel.
    * @return The pixel at the specified coordinates.
    */
   public Pixel getPixelRGB(int x, int y) {
-    return pixelRGBData[x][y];
+    int rgb = getRGB(x, y);
+    return new Pixel(red(rgb), green(rgb), blue(rgb));
   }
 
   /**
@@ -69,6 +106,200 @@ public class Image {
    * @param tempPixel The pixel to set at the specified coordinates.
    */
   public void setPixelRGB(int x, int y, Pixel tempPixel) {
-    pixelRGBData[x][y] = tempPixel;
+    setRGB(x, y, packRGB(tempPixel.getRed(), tempPixel.getGreen(), tempPixel.getBlue()));
+  }
+
+  /**
+   * Get the packed RGB value of the pixel at the specified coordinates.
+   *
+   * @param x The X-coordinate of the pixel.
+   * @param y The Y-coordinate of the pixel.
+   * @return The pixel as a packed {@code 0x00RRGGBB} value.
+   */
+  public int getRGB(int x, int y) {
+    return pixelRGBData[indexOf(x, y)];
+  }
+
+  /**
+   * Set the pixel at the specified coordinates to the given packed RGB value.
+   *
+   * @param x   The X-coordinate of the pixel.
+   * @param y   The Y-coordinate of the pixel.
+   * @param rgb The pixel as a packed {@code 0x00RRGGBB} value.
+   */
+  public void setRGB(int x, int y, int rgb) {
+    pixelRGBData[indexOf(x, y)] = rgb;
+    markModified();
+  }
+
+  /**
+   * Copies one row of packed RGB values into the given buffer.
+   *
+   * @param y    The row to copy.
+   * @param dest The buffer to copy into, a new one is allocated when null or too short.
+   * @return The buffer holding the row, starting at index 0.
+   */
+  public int[] getRow(int y, int[] dest) {
+    if (dest == null || dest.length < width) {
+      dest = new int[width];
+    }
+    System.arraycopy(pixelRGBData, rowOffset(y), dest, 0, width);
+    return dest;
+  }
+
+  /**
+   * Overwrites one row with packed RGB values taken from the given buffer.
+   *
+   * @param y      The row to overwrite.
+   * @param src    The buffer holding the new values.
+   * @param offset The index in src of the value for the first pixel of the row.
+   */
+  public void setRow(int y, int[] src, int offset) {
+    System.arraycopy(src, offset, pixelRGBData, rowOffset(y), width);
+    markModified();
+  }
+
+  /**
+   * Index of the first pixel of the given row in the buffer returned by {@link #getPixelData()}.
+   *
+   * @param y The row.
+   * @return The offset of the row.
+   */
+  public int rowOffset(int y) {
+    if (y < 0 || y >= height) {
+      throw new IndexOutOfBoundsException("Row " + y + " is outside the image.");
+    }
+    return y * width;
+  }
+
+  /**
+   * Returns the backing row-major packed RGB buffer. Writes to the returned array are writes to
+   * the image, call {@link #markModified()} after writing to an image that may have been read.
+   *
+   * @return The pixel buffer of this image.
+   */
+  public int[] getPixelData() {
+    return pixelRGBData;
+  }
+
+  /**
+   * Drops what is known about the pixels of the image, after they were written directly through
+   * the buffer returned by {@link #getPixelData()}.
+   */
+  public void markModified() {
+    histogram = null;
+    version = 0;
+  }
+
+  /**
+   * Returns a number identifying the current pixels of this image. No other image and no other
+   * state of this image has the same number, so results computed from the image can be looked up
+   * by it. Writing a pixel gives the image a new number.
+   *
+   * @return The version of the pixels.
+   */
+  public long getVersion() {
+    long current = version;
+    if (current == 0) {
+      synchronized (this) {
+        current = version;
+        if (current == 0) {
+          current = VERSIONS.incrementAndGet();
+          version = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Returns the counts of the values of each channel over all pixels. They are counted the first
+   * time they are needed, unless the operation that produced the image already knew them.
+   *
+   * @return The counts, indexed by channel (0 for red, 1 for green, 2 for blue) and then by value.
+   *     The arrays must not be modified.
+   */
+  public int[][] getHistogram() {
+    int[][] bins = histogram;
+    if (bins == null) {
+      bins = ChannelHistogram.compute(this);
+      histogram = bins;
+    }
+    return bins;
+  }
+
+  /**
+   * Returns the counts of the channel values if they are already known, without counting them.
+   *
+   * @return The counts, or null if they are not known.
+   */
+  int[][] getKnownHistogram() {
+    return histogram;
+  }
+
+  /**
+   * Records the counts of the channel values, for operations that find them while producing the
+   * image.
+   *
+   * @param bins The counts, which must match the pixels.
+   */
+  void setHistogram(int[][] bins) {
+    histogram = bins;
+  }
+
+  /**
+   * Packs the given channel values into a single {@code 0x00RRGGBB} value.
+   *
+   * @param red   The red component value (0-255).
+   * @param green The green component value (0-255).
+   * @param blue  The blue component value (0-255).
+   * @return The packed value.
+   */
+  public static int packRGB(int red, int green, int blue) {
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * Extracts the red component of a packed RGB value.
+   *
+   * @param rgb The packed value.
+   * @return The red component value (0-255).
+   */
+  public static int red(int rgb) {
+    return (rgb >> 16) & 0xFF;
+  }
+
+  /**
+   * Extracts the green component of a packed RGB value.
+   *
+   * @param rgb The packed value.
+   * @return The green component value (0-255).
+   */
+  public static int green(int rgb) {
+    return (rgb >> 8) & 0xFF;
+  }
+
+  /**
+   * Extracts the blue component of a packed RGB value.
+   *
+   * @param rgb The packed value.
+   * @return The blue component value (0-255).
+   */
+  public static int blue(int rgb) {
+    return rgb & 0xFF;
+  }
+
+  /**
+   * Converts coordinates to a buffer index, rejecting coordinates outside the image.
+   *
+   * @param x The X-coordinate of the pixel.
+   * @param y The Y-coordinate of the pixel.
+   * @return The index of the pixel in the buffer.
+   */
+  private int indexOf(int x, int y) {
+    if (x < 0 || x >= width || y < 0 || y >= height) {
+      throw new IndexOutOfBoundsException("Pixel (" + x + ", " + y + ") is outside the image.");
+    }
+    return y * width + x;
   }
 }
@@ -0,0 +1,413 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * The named images of a model, kept within a memory budget. When the pixels of the images held in
+ * memory take more than the budget, the least recently used images are written to temporary
+ * files, three bytes per pixel, and dropped from memory. They are read back through a memory
+ * mapping the next time they are asked for.
+ *
+ * <p>The budget defaults to half of the maximum heap and can be set with the
+ * {@code imea.album.bytes} system property. Images are expected not to change once stored, since
+ * a spilled image comes back as the pixels it had when it was written out. Compressed images are
+ * never spilled, so they keep their wavelet coefficients.
+ *
+ * <p>An image stored under several names takes its memory once, so it is counted once and all its
+ * names are spilled together to a single file. Spilling or removing an image only frees memory if
+ * nothing else holds it, so whoever else keeps images can be told when the album lets go of one,
+ * see {@link #setReleaseListener(Consumer)}.
+ */
+public class ImageAlbum {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final long memoryBudget;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // The number of names each image in memory is held under.
+  private final Map<Image, Integer> residentNames = new IdentityHashMap<>();
+  private Consumer<Image> releaseListener = image -> { };
+  private long residentBytes;
+  private long spillCount;
+  private Path spillDirectory;
+
+  /**
+   * Constructs an album with the budget set by the {@code imea.album.bytes} system property.
+   */
+  public ImageAlbum() {
+    this(initialBudget());
+  }
+
+  /**
+   * Constructs an album keeping at most the given number of bytes of pixels in memory.
+   *
+   * @param memoryBudget The budget in bytes.
+   * @throws IllegalArgumentException if the budget is negative.
+   */
+  public ImageAlbum(long memoryBudget) {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("Memory budget must not be negative.");
+    }
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Sets what is told about each image the album no longer holds in memory, because it was
+   * spilled or removed under its last name, so that it can drop its own references to the image
+   * and let the memory be freed.
+   *
+   * @param listener Called with each image let go of, while the album is locked.
+   */
+  public synchronized void setReleaseListener(Consumer<Image> listener) {
+    releaseListener = listener;
+  }
+
+  /**
+   * Stores an image under a name, replacing any image stored under it.
+   *
+   * @param name  The name.
+   * @param image The image.
+   */
+  public synchronized void put(String name, Image image) {
+    Entry entry = new Entry(image);
+    // Counted before the old entry goes, so an image stored again under its name is not let go.
+    addResident(image, entry.bytes);
+    remove(name);
+    entries.put(name, entry);
+    spillToBudget(image);
+  }
+
+  /**
+   * Returns the image stored under a name, reading it back into memory if it was spilled.
+   *
+   * @param name The name.
+   * @return The image, or null if there is no image with that name.
+   * @throws CancellationException if the thread was interrupted while reading the image back.
+   */
+  public synchronized Image get(String name) {
+    Entry entry = entries.get(name);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.image == null) {
+      Image image = readSpilled(entry);
+      entry.spill.version = image.getVersion();
+      // The other names spilled with the image share it again.
+      for (Entry other : entries.values()) {
+        if (other.spill == entry.spill && other.image == null) {
+          other.image = image;
+          addResident(image, entry.bytes);
+        }
+      }
+      spillToBudget(image);
+    }
+    return entry.image;
+  }
+
+  /**
+   * Tells whether an image is stored under a name.
+   *
+   * @param name The name.
+   * @return True if there is an image with that name.
+   */
+  public synchronized boolean contains(String name) {
+    return entries.containsKey(name);
+  }
+
+  /**
+   * Returns the number of pixels of an image without reading it back if it was spilled.
+   *
+   * @param name The name.
+   * @return The width times the height, or 0 if there is no image with that name.
+   */
+  public synchronized long getPixelCount(String name) {
+    Entry entry = entries.get(name);
+    return entry == null ? 0 : (long) entry.width * entry.height;
+  }
+
+  /**
+   * Removes the image stored under a name, deleting its spill file if it has one.
+   *
+   * @param name The name.
+   * @return True if there was an image with that name.
+   */
+  public synchronized boolean remove(String name) {
+    Entry entry = entries.remove(name);
+    if (entry == null) {
+      return false;
+    }
+    if (entry.image != null) {
+      removeResident(entry.image, entry.bytes);
+    }
+    releaseSpillFile(entry);
+    return true;
+  }
+
+  /**
+   * Returns the number of images stored.
+   *
+   * @return The number of images.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Tells whether the image stored under a name is the given image, without reading it back if
+   * it was spilled.
+   *
+   * @param name  The name.
+   * @param image The image.
+   * @return True if that very image is in memory under the name.
+   */
+  public synchronized boolean holds(String name, Image image) {
+    Entry entry = entries.get(name);
+    return entry != null && entry.image == image;
+  }
+
+  /**
+   * Returns the number of bytes of pixels held in memory, counting each image once.
+   *
+   * @return The resident size in bytes.
+   */
+  public synchronized long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /**
+   * Returns how many times an image was written out to stay within the budget.
+   *
+   * @return The number of spills.
+   */
+  public synchronized long getSpillCount() {
+    return spillCount;
+  }
+
+  /**
+   * Returns the memory budget.
+   *
+   * @return The budget in bytes.
+   */
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Writes out the least recently used images until the resident images fit the budget.
+   *
+   * @param keep An image to keep in memory, the one just used.
+   */
+  private void spillToBudget(Image keep) {
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (residentBytes > memoryBudget && eldest.hasNext()) {
+      Entry entry = eldest.next();
+      Image image = entry.image;
+      if (image == null || image == keep || image instanceof CompressedImage) {
+        continue;
+      }
+      SpillFile spill;
+      try {
+        spill = spillFileOf(image);
+      } catch (IOException e) {
+        // Keep the image in memory if it cannot be written out.
+        continue;
+      }
+      // Every name of the image is spilled with it, or no memory would be freed.
+      for (Entry other : entries.values()) {
+        if (other.image == image) {
+          if (other.spill != spill) {
+            releaseSpillFile(other);
+            other.spill = spill;
+            spill.users++;
+          }
+          other.image = null;
+        }
+      }
+      residentNames.remove(image);
+      residentBytes -= entry.bytes;
+      spillCount++;
+      releaseListener.accept(image);
+    }
+  }
+
+  /**
+   * Returns a file holding the current pixels of an image. A file written before the image was
+   * last read back is reused if the image has not been written to since.
+   */
+  private SpillFile spillFileOf(Image image) throws IOException {
+    long version = image.getVersion();
+    for (Entry entry : entries.values()) {
+      if (entry.image == image && entry.spill != null && entry.spill.version == version) {
+        if (image.getKnownHistogram() != null) {
+          entry.spill.histogram = image.getKnownHistogram();
+        }
+        return entry.spill;
+      }
+    }
+    SpillFile spill = new SpillFile(writeSpilled(image));
+    spill.version = version;
+    spill.histogram = image.getKnownHistogram();
+    return spill;
+  }
+
+  /**
+   * Counts one more name of an image in memory.
+   */
+  private void addResident(Image image, long bytes) {
+    if (residentNames.merge(image, 1, Integer::sum) == 1) {
+      residentBytes += bytes;
+    }
+  }
+
+  /**
+   * Counts one name less of an image in memory, freeing its bytes with its last name.
+   */
+  private void removeResident(Image image, long bytes) {
+    int names = residentNames.get(image);
+    if (names == 1) {
+      residentNames.remove(image);
+      residentBytes -= bytes;
+      releaseListener.accept(image);
+    } else {
+      residentNames.put(image, names - 1);
+    }
+  }
+
+  /**
+   * Writes the pixels of an image to a new temporary file, three bytes per pixel.
+   */
+  private Path writeSpilled(Image image) throws IOException {
+    if (spillDirectory == null) {
+      spillDirectory = Files.createTempDirectory("imea-album");
+      spillDirectory.toFile().deleteOnExit();
+    }
+    Path file = Files.createTempFile(spillDirectory, "image", ".rgb");
+    file.toFile().deleteOnExit();
+    int[] pixels = image.getPixelData();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE * 3);
+      for (int i = 0; i < pixels.length; i++) {
+        int rgb = pixels[i];
+        buffer.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+        if (!buffer.hasRemaining()) {
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          buffer.clear();
+        }
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return file;
+  }
+
+  /**
+   * Reads the pixels of a spilled image back through a memory mapping of its file.
+   */
+  private static Image readSpilled(Entry entry) {
+    int[] pixels = new int[entry.width * entry.height];
+    try (FileChannel channel = FileChannel.open(entry.spill.path, StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = ((mapped.get() & 0xFF) << 16) | ((mapped.get() & 0xFF) << 8)
+            | (mapped.get() & 0xFF);
+      }
+    } catch (ClosedByInterruptException e) {
+      // The thread was interrupted, as a superseded preview is, and is left interrupted.
+      throw new CancellationException("Image processing was cancelled.");
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read back a spilled image.", e);
+    }
+    Image image = new Image(entry.width, entry.height, pixels);
+    image.setHistogram(entry.spill.histogram);
+    return image;
+  }
+
+  /**
+   * Lets go of the spill file of an entry, deleting it once no entry uses it.
+   */
+  private static void releaseSpillFile(Entry entry) {
+    SpillFile spill = entry.spill;
+    if (spill != null) {
+      entry.spill = null;
+      if (--spill.users == 0) {
+        try {
+          Files.deleteIfExists(spill.path);
+        } catch (IOException e) {
+          // The file is deleted on exit anyway.
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the budget from the {@code imea.album.bytes} system property.
+   *
+   * @return The configured budget, or half of the maximum heap.
+   */
+  private static long initialBudget() {
+    long fallback = Runtime.getRuntime().maxMemory() / 2;
+    try {
+      long budget = Long.parseLong(System.getProperty("imea.album.bytes",
+          String.valueOf(fallback)).trim());
+      return budget < 0 ? fallback : budget;
+    } catch (NumberFormatException e) {
+      return fallback;
+    }
+  }
+
+  /**
+   * A stored image, in memory or in its spill file or both.
+   */
+  private static class Entry {
+    private Image image;
+    private SpillFile spill;
+    private final int width;
+    private final int height;
+    private final long bytes;
+
+    Entry(Image image) {
+      this.image = image;
+      this.width = image.getWidth();
+      this.height = image.getHeight();
+      this.bytes = 4L * width * height;
+    }
+  }
+
+  /**
+   * A file holding the pixels of an image, shared by the names it was stored under when it was
+   * spilled. The histogram of the image is kept in memory.
+   */
+  private static class SpillFile {
+    private final Path path;
+    // The version of the pixels in the file, that of the image last read back from it.
+    private long version;
+    private int[][] histogram;
+    private int users;
+
+    SpillFile(Path path) {
+      this.path = path;
+    }
+  }
+}
@@ -13,4 +13,32 @@ public interface ImageCompression {
    * @return Compressed image after applying the Haar Wavelet Transform.
    */
   Image compress(Image srcImg, Double compressionPercentage);
+
+  /**
+   * Computes the Haar wavelet coefficients of an image without removing any of them.
+   *
+   * @param srcImg The image to transform.
+   * @return The coefficients of the image.
+   */
+  WaveletCoefficients transform(Image srcImg);
+
+  /**
+   * Reconstructs an image from its Haar wavelet coefficients.
+   *
+   * @param coefficients The coefficients, for example read from a file.
+   * @return The reconstructed image, carrying the coefficients.
+   */
+  CompressedImage reconstruct(WaveletCoefficients coefficients);
+
+  /**
+   * Reconstructs a reduced version of an image from its Haar wavelet coefficients by running
+   * only the coarse inverse levels. Each pixel of the result is the average of a square block
+   * of the full image.
+   *
+   * @param coefficients The coefficients of the image.
+   * @param scale        The reduction factor, a power of two such as 2, 4 or 8.
+   * @return The reduced image, {@code scale} times smaller in each dimension, rounded up.
+   * @throws IllegalArgumentException if the scale is not a power of two.
+   */
+  Image reconstruct(WaveletCoefficients coefficients, int scale);
 }
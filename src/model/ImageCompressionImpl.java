@@ -1,43 +1,177 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Arrays;
 
 /**
  * Implementation of the ImageCompression interface using Haar Wavelet Transform for compression.
+ * Each channel is padded to a power of two square held in a flat buffer and transformed in place
+ * by a {@link HaarWaveletTransform}.
  */
 public class ImageCompressionImpl implements ImageCompression {
 
+  /**
+   * The system property that makes compressors built with {@link #ImageCompressionImpl()}
+   * estimate the threshold when set to true.
+   */
+  public static final String APPROXIMATE_THRESHOLD_PROPERTY = "imea.compress.approximate";
+
+  /**
+   * Number of distinct magnitudes the threshold is estimated from.
+   */
+  private static final int SAMPLE_SIZE = 1 << 14;
+
+  // Whether the threshold is estimated from a sample instead of computed exactly.
+  private final boolean approximateThreshold;
+
+  /**
+   * Constructs a compressor that computes the exact threshold, unless the system property
+   * {@value #APPROXIMATE_THRESHOLD_PROPERTY} asks for an estimate.
+   */
+  public ImageCompressionImpl() {
+    this(Boolean.getBoolean(APPROXIMATE_THRESHOLD_PROPERTY));
+  }
+
+  /**
+   * Constructs a compressor.
+   *
+   * @param approximateThreshold True to estimate the threshold from a sample of the distinct
+   *                             magnitudes, which is faster on large images but may remove
+   *                             slightly more or fewer values than requested.
+   */
+  public ImageCompressionImpl(boolean approximateThreshold) {
+    this.approximateThreshold = approximateThreshold;
+  }
+
   @Override
   public Image compress(Image srcImg, Double compressionPercentage) {
+    int size = HaarWaveletTransform.paddedSize(srcImg.getWidth(), srcImg.getHeight());
+    HaarWaveletTransform haar = new HaarWaveletTransform(size);
+    double[][] channels = getPaddedChannels(srcImg, size);
 
-    PaddedPixelData ppd = getPaddedPixelData(srcImg);
-    double[][] redComponent = ppd.paddedRedImageArray;
-    double[][] greenComponent = ppd.paddedGreenImageArray;
-    double[][] blueComponent = ppd.paddedBlueImageArray;
+    for (double[] channel : channels) {
+      haar.forward(channel);
+    }
 
-    haarTransform(redComponent, redComponent.length);
-    haarTransform(greenComponent, greenComponent.length);
-    haarTransform(blueComponent, blueComponent.length);
+    calculateThresholdAndApply(channels, compressionPercentage);
+    WaveletCoefficients coefficients = WaveletCoefficients.fromChannels(channels,
+        srcImg.getWidth(), srcImg.getHeight());
 
-    calculateThresholdAndApply(redComponent, greenComponent, blueComponent, compressionPercentage);
+    for (double[] channel : channels) {
+      haar.inverse(channel);
+    }
 
-    inverseHaarTransform(redComponent, redComponent.length);
-    inverseHaarTransform(greenComponent, greenComponent.length);
-    inverseHaarTransform(blueComponent, blueComponent.length);
+    return new CompressedImage(toImage(channels, size, srcImg.getWidth(),
+        srcImg.getHeight()).getPixelData(), coefficients);
+  }
 
-    Image compressedImage = new Image(srcImg.getWidth(), srcImg.getHeight());
+  @Override
+  public WaveletCoefficients transform(Image srcImg) {
+    int size = HaarWaveletTransform.paddedSize(srcImg.getWidth(), srcImg.getHeight());
+    HaarWaveletTransform haar = new HaarWaveletTransform(size);
+    double[][] channels = getPaddedChannels(srcImg, size);
+    for (double[] channel : channels) {
+      haar.forward(channel);
+    }
+    return WaveletCoefficients.fromChannels(channels, srcImg.getWidth(), srcImg.getHeight());
+  }
+
+  @Override
+  public CompressedImage reconstruct(WaveletCoefficients coefficients) {
+    int size = coefficients.getSize();
+    HaarWaveletTransform haar = new HaarWaveletTransform(size);
+    double[][] channels = coefficients.toChannels();
+    for (double[] channel : channels) {
+      haar.inverse(channel);
+    }
+    return new CompressedImage(toImage(channels, size, coefficients.getWidth(),
+        coefficients.getHeight()).getPixelData(), coefficients);
+  }
 
-    for (int y = 0; y < srcImg.getHeight(); y++) {
-      for (int x = 0; x < srcImg.getWidth(); x++) {
-        compressedImage.setPixelRGB(x, y,
-            new Pixel(clampValue((int) redComponent[x][y]), clampValue((int) greenComponent[x][y]),
-                clampValue((int) blueComponent[x][y])));
+  @Override
+  public Image reconstruct(WaveletCoefficients coefficients, int scale) {
+    checkScale(scale);
+    int size = coefficients.getSize();
+    HaarWaveletTransform haar = new HaarWaveletTransform(size);
+    int skippedLevels = Math.min(Integer.numberOfTrailingZeros(scale), haar.getLevels());
+    int blockSize = 1 << skippedLevels;
+    double[][] channels = coefficients.toChannels();
+    for (double[] channel : channels) {
+      // After all but the finest levels, the top left corner holds the scaled block sums.
+      haar.inverse(channel, haar.getLevels() - skippedLevels);
+    }
+
+    int width = coefficients.getWidth();
+    int height = coefficients.getHeight();
+    Image reduced = new Image(ceilDiv(width, scale), ceilDiv(height, scale));
+    int[] pixels = reduced.getPixelData();
+    for (int y = 0; y < reduced.getHeight(); y++) {
+      for (int x = 0; x < reduced.getWidth(); x++) {
+        // Average over the pixels of the block inside the image, not the padding.
+        int blockPixels = (Math.min(width, (x + 1) * blockSize) - x * blockSize)
+            * (Math.min(height, (y + 1) * blockSize) - y * blockSize);
+        double factor = (double) blockSize / blockPixels;
+        int i = y * size + x;
+        pixels[y * reduced.getWidth() + x] = Image.packRGB(
+            clampValue((int) Math.round(channels[0][i] * factor)),
+            clampValue((int) Math.round(channels[1][i] * factor)),
+            clampValue((int) Math.round(channels[2][i] * factor)));
       }
     }
-    return compressedImage;
+    return reduced;
+  }
+
+  /**
+   * Reduces an image by averaging blocks of pixels, giving the same result as a reduced
+   * reconstruction of its full set of wavelet coefficients.
+   *
+   * @param srcImg The image to reduce.
+   * @param scale  The reduction factor, a power of two.
+   * @return The reduced image.
+   * @throws IllegalArgumentException if the scale is not a power of two.
+   */
+  public static Image downscale(Image srcImg, int scale) {
+    checkScale(scale);
+    int width = srcImg.getWidth();
+    int height = srcImg.getHeight();
+    Image reduced = new Image(ceilDiv(width, scale), ceilDiv(height, scale));
+    int[] src = srcImg.getPixelData();
+    int[] dest = reduced.getPixelData();
+    int reducedWidth = reduced.getWidth();
+    TileScheduler.forEachStrip(width, reduced.getHeight(), (yStart, yEnd) -> {
+      long[] sums = new long[3 * reducedWidth];
+      for (int by = yStart; by < yEnd; by++) {
+        Arrays.fill(sums, 0);
+        int rowEnd = Math.min(height, (by + 1) * scale);
+        for (int y = by * scale; y < rowEnd; y++) {
+          for (int x = 0; x < width; x++) {
+            int rgb = src[y * width + x];
+            int b = 3 * (x / scale);
+            sums[b] += Image.red(rgb);
+            sums[b + 1] += Image.green(rgb);
+            sums[b + 2] += Image.blue(rgb);
+          }
+        }
+        for (int bx = 0; bx < reducedWidth; bx++) {
+          double blockPixels = (double) (Math.min(width, (bx + 1) * scale) - bx * scale)
+              * (rowEnd - by * scale);
+          dest[by * reducedWidth + bx] = Image.packRGB(
+              (int) Math.round(sums[3 * bx] / blockPixels),
+              (int) Math.round(sums[3 * bx + 1] / blockPixels),
+              (int) Math.round(sums[3 * bx + 2] / blockPixels));
+        }
+      }
+    });
+    return reduced;
+  }
+
+  private static void checkScale(int scale) {
+    if (scale < 1 || Integer.bitCount(scale) != 1) {
+      throw new IllegalArgumentException("Scale must be a power of two.");
+    }
+  }
+
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
   }
 
   /**
@@ -46,207 +180,208 @@ public class ImageCompressionImpl implements ImageCompression {
    * @param value The pixel value to clamp.
    * @return The clamped pixel value.
    */
-  private int clampValue(int value) {
+  private static int clampValue(int value) {
     return Math.max(0, Math.min(255, value));
   }
 
   /**
-   * Gets the padded pixel data for the given image.
+   * Splits an image into its red, green and blue channels, each padded with zeros to a square.
    *
    * @param srcImg The original image.
-   * @return PaddedPixelData containing padded red, green, and blue image arrays.
+   * @param size   The width and height of the padded square.
+   * @return The red, green and blue buffers, {@code size * size} values stored row by row.
    */
-  private PaddedPixelData getPaddedPixelData(Image srcImg) {
-    int originalWidth = srcImg.getWidth();
-    int originalHeight = srcImg.getHeight();
-    int maxSize = Math.max(originalWidth, originalHeight);
-    int newSize = 1;
-    while (newSize < maxSize) {
-      newSize *= 2;
-    }
-    PaddedPixelData ppd = new PaddedPixelData();
-    ppd.paddedRedImageArray = new double[newSize][newSize];
-    ppd.paddedGreenImageArray = new double[newSize][newSize];
-    ppd.paddedBlueImageArray = new double[newSize][newSize];
-    for (int j = 0; j < newSize; j++) {
-      for (int i = 0; i < newSize; i++) {
-        if (j < originalHeight && i < originalWidth) {
-          ppd.paddedRedImageArray[i][j] = srcImg.getPixelRGB(i, j).getRed();
-          ppd.paddedGreenImageArray[i][j] = srcImg.getPixelRGB(i, j).getGreen();
-          ppd.paddedBlueImageArray[i][j] = srcImg.getPixelRGB(i, j).getBlue();
-        } else {
-          ppd.paddedRedImageArray[i][j] = 0;
-          ppd.paddedGreenImageArray[i][j] = 0;
-          ppd.paddedBlueImageArray[i][j] = 0;
+  static double[][] getPaddedChannels(Image srcImg, int size) {
+    int width = srcImg.getWidth();
+    double[][] channels = new double[3][size * size];
+    double[] red = channels[0];
+    double[] green = channels[1];
+    double[] blue = channels[2];
+    int[] pixels = srcImg.getPixelData();
+    TileScheduler.forEachStrip(width, srcImg.getHeight(), (yStart, yEnd) -> {
+      for (int y = yStart; y < yEnd; y++) {
+        for (int x = 0; x < width; x++) {
+          int rgb = pixels[y * width + x];
+          red[y * size + x] = Image.red(rgb);
+          green[y * size + x] = Image.green(rgb);
+          blue[y * size + x] = Image.blue(rgb);
         }
       }
-    }
-    return ppd;
+    });
+    return channels;
   }
 
   /**
-   * Represents the padded pixel data structure.
+   * Builds an image from the top left corner of padded channel buffers.
+   *
+   * @param channels The red, green and blue buffers, stored row by row.
+   * @param size     The width of the buffers.
+   * @param width    The width of the image.
+   * @param height   The height of the image.
+   * @return The image, with values truncated and clamped to 0-255.
    */
-  private static class PaddedPixelData {
-
-    public double[][] paddedRedImageArray;
-    public double[][] paddedGreenImageArray;
-    public double[][] paddedBlueImageArray;
+  static Image toImage(double[][] channels, int size, int width, int height) {
+    Image image = new Image(width, height);
+    int[] pixels = image.getPixelData();
+    double[] red = channels[0];
+    double[] green = channels[1];
+    double[] blue = channels[2];
+    TileScheduler.forEachStrip(width, height, (yStart, yEnd) -> {
+      for (int y = yStart; y < yEnd; y++) {
+        for (int x = 0; x < width; x++) {
+          int i = y * size + x;
+          pixels[y * width + x] = Image.packRGB(clampValue((int) red[i]),
+              clampValue((int) green[i]), clampValue((int) blue[i]));
+        }
+      }
+    });
+    return image;
   }
 
-
   /**
-   * Removes the smallest values from the 2D array based on the specified percentage.
+   * Removes the smallest values from the channel buffers based on the specified percentage. The
+   * threshold is the magnitude below which the given percentage of the distinct non-zero
+   * magnitudes of all channels lie; every value not above it is set to zero.
    *
-   * @param rArray             The red 2D array.
-   * @param bArray             The blue 2D array.
-   * @param gArray             The green 2D array.
+   * @param channels           The buffers of each channel.
    * @param percentageToRemove The percentage of smallest values to be removed.
    */
-  private void calculateThresholdAndApply(double[][] rArray, double[][] bArray, double[][] gArray,
-      double percentageToRemove) {
-    Set<Double> uniqueValues = new TreeSet<>();
-    getUniqueValues(rArray, uniqueValues);
-    getUniqueValues(bArray, uniqueValues);
-    getUniqueValues(gArray, uniqueValues);
-
-    List<Double> uniqueValuesList = new ArrayList<>(uniqueValues);
-    int elementsToRemove = (int) (uniqueValues.size() * percentageToRemove / 100.0);
-
-    double threshold = uniqueValuesList.get(elementsToRemove);
-
-    for (int i = 0; i < rArray.length; i++) {
-      for (int j = 0; j < rArray[i].length; j++) {
-        if (Math.abs(rArray[i][j]) <= threshold) {
-          rArray[i][j] = 0.0;
-        }
-        if (Math.abs(gArray[i][j]) <= threshold) {
-          gArray[i][j] = 0.0;
-        }
-        if (Math.abs(bArray[i][j]) <= threshold) {
-          bArray[i][j] = 0.0;
+  private void calculateThresholdAndApply(double[][] channels, double percentageToRemove) {
+    double threshold = approximateThreshold
+        ? estimateThreshold(channels, percentageToRemove)
+        : findThreshold(channels, percentageToRemove);
+    if (Double.isNaN(threshold)) {
+      // Nothing but zeros, there is nothing to remove.
+      return;
+    }
+    for (double[] channel : channels) {
+      for (int i = 0; i < channel.length; i++) {
+        if (Math.abs(channel[i]) <= threshold) {
+          channel[i] = 0.0;
         }
       }
     }
   }
 
   /**
-   * Gets unique non-zero values from the 2D array.
+   * Finds the exact threshold by sorting the non-zero magnitudes and skipping duplicates.
    *
-   * @param array        The 2D array of each channel.
-   * @param uniqueValues Set to store the unique values.
+   * @param channels           The buffers of each channel.
+   * @param percentageToRemove The percentage of smallest distinct magnitudes to remove.
+   * @return The threshold, infinity when everything is removed, or NaN if all values are zero.
    */
-  private void getUniqueValues(double[][] array, Set<Double> uniqueValues) {
-    for (double[] row : array) {
-      for (double value : row) {
-        if (value != 0) {
-          uniqueValues.add(Math.abs(value));
-        }
-      }
-    }
+  private static double findThreshold(double[][] channels, double percentageToRemove) {
+    double[] magnitudes = getNonZeroMagnitudes(channels, 1);
+    Arrays.parallelSort(magnitudes);
+    int unique = removeDuplicates(magnitudes);
+    return selectThreshold(magnitudes, unique, percentageToRemove);
   }
 
   /**
-   * Performs a 1D Haar Wavelet Transform on the given array.
+   * Estimates the threshold from a sample of the distinct non-zero magnitudes. A magnitude is in
+   * the sample when a hash of its value is a multiple of the sampling rate, so every distinct
+   * magnitude has the same chance to be in it however often it occurs. The sampled magnitudes are
+   * therefore spread like all distinct magnitudes, and the threshold is picked from them as it
+   * would be from all of them. With {@link #SAMPLE_SIZE} distinct magnitudes sampled, the share
+   * of distinct magnitudes removed is typically within half a percent of the one requested.
    *
-   * @param s The array to be transformed.
-   * @param c The size of the array.
+   * @param channels           The buffers of each channel.
+   * @param percentageToRemove The percentage of smallest distinct magnitudes to remove.
+   * @return The estimated threshold, infinity when everything is removed, or NaN if all values
+   *         are zero.
    */
-  private void transform1D(double[] s, int c) {
-    int n = s.length;
-    double[] avg = new double[n / 2];
-    double[] diff = new double[n / 2];
-
-    for (int i = 0, j = 0; i < n; i += 2, j++) {
-      double a = s[i];
-      double b = s[i + 1];
-      avg[j] = (a + b) / Math.sqrt(2);
-      diff[j] = (a - b) / Math.sqrt(2);
+  private static double estimateThreshold(double[][] channels, double percentageToRemove) {
+    long total = 0;
+    for (double[] channel : channels) {
+      total += channel.length;
+    }
+    // Start as if all values were distinct, and sample more often when far fewer are.
+    long rate = Math.max(1, total / SAMPLE_SIZE);
+    while (true) {
+      double[] sample = getNonZeroMagnitudes(channels, rate);
+      Arrays.sort(sample);
+      int unique = removeDuplicates(sample);
+      long better = Math.max(1, unique * rate / SAMPLE_SIZE);
+      if (rate == 1 || 2 * better > rate) {
+        return selectThreshold(sample, unique, percentageToRemove);
+      }
+      rate = better;
     }
-
-    System.arraycopy(avg, 0, s, 0, n / 2);
-    System.arraycopy(diff, 0, s, n / 2, n / 2);
   }
 
   /**
-   * Performs a 2D Haar Wavelet Transform on the given array.
+   * Collects the non-zero magnitudes of the buffers, or those sampled at the given rate.
    *
-   * @param x    The 2D array to be transformed.
-   * @param size The size of the array.
+   * @param channels The buffers of each channel.
+   * @param rate     Roughly one in this many distinct magnitudes is kept, 1 to keep all.
+   * @return The magnitudes, in buffer order.
    */
-  private void haarTransform(double[][] x, int size) {
-    int c = size;
-
-    while (c > 1) {
-      // Transform along rows
-      for (int i = 0; i < c; i++) {
-        transform1D(x[i], c);
-      }
-
-      // Transform along columns
-      for (int j = 0; j < c; j++) {
-        double[] column = new double[size];
-        for (int i = 0; i < size; i++) {
-          column[i] = x[i][j];
+  private static double[] getNonZeroMagnitudes(double[][] channels, long rate) {
+    int count = 0;
+    for (double[] channel : channels) {
+      for (double value : channel) {
+        if (value != 0 && (rate == 1 || isSampled(Math.abs(value), rate))) {
+          count++;
         }
-        transform1D(column, c);
-        for (int i = 0; i < size; i++) {
-          x[i][j] = column[i];
+      }
+    }
+    double[] magnitudes = new double[count];
+    int next = 0;
+    for (double[] channel : channels) {
+      for (double value : channel) {
+        if (value != 0 && (rate == 1 || isSampled(Math.abs(value), rate))) {
+          magnitudes[next++] = Math.abs(value);
         }
       }
-
-      c = c / 2;
     }
+    return magnitudes;
   }
 
   /**
-   * Performs an inverse 1D Haar Wavelet Transform on the given array.
-   *
-   * @param s The array to be transformed.
-   * @param c The size of the array.
+   * Tells whether a magnitude is in the sample taken at the given rate, by mixing the bits of
+   * the value so that equal values always agree and different ones look random.
    */
-  private void inverseTransform1D(double[] s, int c) {
-    int n = s.length;
-    double[] avg = new double[n / 2];
-    double[] diff = new double[n / 2];
-
-    System.arraycopy(s, 0, avg, 0, n / 2);
-    System.arraycopy(s, n / 2, diff, 0, n / 2);
-
-    for (int i = 0, j = 0; i < n; i += 2, j++) {
-      double a = (avg[j] + diff[j]) / Math.sqrt(2);
-      double b = (avg[j] - diff[j]) / Math.sqrt(2);
-      s[i] = a;
-      s[i + 1] = b;
-    }
+  private static boolean isSampled(double magnitude, long rate) {
+    long hash = Double.doubleToLongBits(magnitude) * 0x9E3779B97F4A7C15L;
+    hash ^= hash >>> 32;
+    hash *= 0xD6E8FEB86659FD93L;
+    hash ^= hash >>> 32;
+    return Long.remainderUnsigned(hash, rate) == 0;
   }
 
   /**
-   * Performs an inverse 2D Haar Wavelet Transform on the given array.
+   * Moves the distinct values of a sorted array to its front.
    *
-   * @param x    The 2D array to be transformed.
-   * @param size The size of the array.
+   * @param sorted The sorted values.
+   * @return The number of distinct values.
    */
-  private void inverseHaarTransform(double[][] x, int size) {
-    int c = 2;
-    while (c <= size) {
-      // Inverse transform along columns
-      for (int j = 0; j < c; j++) {
-        double[] column = new double[size];
-        for (int i = 0; i < size; i++) {
-          column[i] = x[i][j];
-        }
-        inverseTransform1D(column, c);
-        for (int i = 0; i < size; i++) {
-          x[i][j] = column[i];
-        }
-      }
-      // Inverse transform along rows
-      for (int i = 0; i < c; i++) {
-        inverseTransform1D(x[i], c);
+  private static int removeDuplicates(double[] sorted) {
+    int unique = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (unique == 0 || sorted[i] != sorted[unique - 1]) {
+        sorted[unique++] = sorted[i];
       }
-      c = c * 2;
     }
+    return unique;
   }
 
+  /**
+   * Picks the threshold from the sorted distinct magnitudes.
+   *
+   * @param unique             The sorted distinct magnitudes at the front of the array.
+   * @param uniqueCount        The number of distinct magnitudes.
+   * @param percentageToRemove The percentage of smallest distinct magnitudes to remove.
+   * @return The threshold, infinity when everything is removed, or NaN if there are none.
+   */
+  private static double selectThreshold(double[] unique, int uniqueCount,
+                                        double percentageToRemove) {
+    if (uniqueCount == 0) {
+      return Double.NaN;
+    }
+    int elementsToRemove = (int) (uniqueCount * percentageToRemove / 100.0);
+    if (elementsToRemove >= uniqueCount) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return unique[elementsToRemove];
+  }
 }
@@ -1,15 +1,51 @@
 package model;
 
 /**
- * An interface for image filters that can be applied to an input image.
+ * An interface for image filters that can be applied to an input image. Filters compute their
+ * result a range of rows at a time, which lets the rows of an image be filtered on several cores.
  */
 public interface ImageFilter {
 
   /**
-   * Applies the filter to the input image and returns the result as a new image.
+   * Applies the filter to the input image and returns the result as a new image. The channel
+   * values of each strip of rows are counted right after the strip is filtered, while it is
+   * still in cache, so the result comes with its histogram.
    *
    * @param sourceImg The input image to which the filter is applied.
    * @return A new image with the filter applied.
    */
-  Image applyFilterToImage(Image sourceImg);
+  default Image applyFilterToImage(Image sourceImg) {
+    int width = sourceImg.getWidth();
+    Image imageWithAppliedFilter = new Image(width, sourceImg.getHeight());
+    int[] dest = imageWithAppliedFilter.getPixelData();
+    int[][] histogram = new int[3][256];
+    TileScheduler.forEachStrip(width, sourceImg.getHeight(), getHalo(), (yStart, yEnd) -> {
+      applyFilterToRows(sourceImg, imageWithAppliedFilter, yStart, yEnd);
+      int[][] stripHistogram = new int[3][256];
+      ChannelHistogram.count(dest, yStart * width, yEnd * width, stripHistogram);
+      ChannelHistogram.merge(histogram, stripHistogram);
+    });
+    imageWithAppliedFilter.setHistogram(histogram);
+    return imageWithAppliedFilter;
+  }
+
+  /**
+   * Applies the filter to a range of rows of the input image, writing them to the same rows of
+   * the destination image. Only those rows of the destination are written.
+   *
+   * @param sourceImg The input image to which the filter is applied.
+   * @param destImg   The image receiving the filtered rows, of the same size as the input.
+   * @param yStart    The first row to filter.
+   * @param yEnd      The row after the last row to filter.
+   */
+  void applyFilterToRows(Image sourceImg, Image destImg, int yStart, int yEnd);
+
+  /**
+   * Returns how many rows above and below a pixel the filter reads to compute it.
+   *
+   * @return The vertical reach of the filter, 0 for filters working on single pixels.
+   */
+  default int getHalo() {
+    return 0;
+  }
 }
@@ -8,7 +8,8 @@ package model;
 public interface ImageManipulatorModel {
 
   /**
-   * Adds a raw image to the internal HashMap with the given key.
+   * Decodes a raw image and adds it to the internal HashMap with the given key. Only the decoded
+   * pixels are stored.
    *
    * @param key      The key to associate with the raw image.
    * @param rawImage An array representing the raw image data.
@@ -16,13 +17,48 @@ public interface ImageManipulatorModel {
   void addRawImageToHashMap(String key, String[] rawImage);
 
   /**
-   * Retrieves the raw image associated with the given image name from the internal HashMap.
+   * Adds an image to the internal HashMap with the given key.
+   *
+   * @param key   The key to associate with the image.
+   * @param image The image to store.
+   * @throws IllegalArgumentException if the image is null.
+   */
+  void addImageToHashMap(String key, Image image);
+
+  /**
+   * Retrieves the raw image associated with the given image name from the internal HashMap. The raw
+   * form is encoded from the stored pixels on every call, so callers that only need pixels should
+   * avoid it.
    *
    * @param imageName The name of the image.
    * @return The raw image data as an array, or null if the image is not found.
    */
   String[] getRawImageFromHashMap(String imageName);
 
+  /**
+   * Retrieves the image associated with the given image name from the internal HashMap.
+   *
+   * @param imageName The name of the image.
+   * @return The stored image, or null if the image is not found.
+   */
+  Image getImageFromHashMap(String imageName);
+
+  /**
+   * Removes the image with the given name, freeing the memory and any disk space it takes.
+   *
+   * @param imageName The name of the image.
+   * @return True if there was an image with that name.
+   */
+  boolean releaseImage(String imageName);
+
+  /**
+   * Returns the number of pixels of an image, without computing it or reading it back.
+   *
+   * @param imageName The name of the image.
+   * @return The width times the height, or 0 if the image is not found.
+   */
+  long getPixelCount(String imageName);
+
   /**
    * Splits the source image into its red, green, and blue components.
    *
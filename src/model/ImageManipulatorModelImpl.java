@@ -2,6 +2,7 @@ package model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
  * The ImageManipulatorModelImpl class implements the ImageManipulatorModel interface
@@ -9,11 +10,49 @@ import java.util.Map;
  */
 public class ImageManipulatorModelImpl implements ImageManipulatorModel {
 
-  // Stores raw image data with keys.
-  protected Map<String, String[]> rawImagesAlbum = new HashMap<>();
-  // Stores processed images with keys.
-  protected Map<String, Image> imagesAlbum = new HashMap<>();
+  // Stores processed images with keys, within a memory budget. Raw images are derived from these
+  // on demand.
+  protected final ImageAlbum imagesAlbum;
 
+  // Images produced by point operations that have not been computed yet, see addPointOperation.
+  private final Map<String, PendingImage> pendingImages = new HashMap<>();
+
+  // Guards pendingImages and moves images from it to imagesAlbum in one step, so that commands
+  // on different images can run on several threads.
+  private final Object albumLock = new Object();
+
+  // Results of recent operations, reused when an operation is repeated on the same pixels.
+  private final OperationResultCache resultCache;
+
+  // Numbers the album names under which pending images keep their sources, guarded by albumLock.
+  private long pendingSourceCount;
+
+  /**
+   * Constructs a model with no images, with the album and cache budgets set by the
+   * {@code imea.album.bytes} and {@code imea.cache.bytes} system properties.
+   */
+  public ImageManipulatorModelImpl() {
+    this(new ImageAlbum(), new OperationResultCache());
+  }
+
+  /**
+   * Constructs a model with no images and the given memory budgets.
+   *
+   * @param albumBytes The bytes of pixels the album keeps in memory before spilling to disk.
+   * @param cacheBytes The bytes of operation results kept for reuse, 0 to keep none.
+   * @throws IllegalArgumentException if a budget is negative.
+   */
+  public ImageManipulatorModelImpl(long albumBytes, long cacheBytes) {
+    this(new ImageAlbum(albumBytes), new OperationResultCache(cacheBytes));
+  }
+
+  private ImageManipulatorModelImpl(ImageAlbum imagesAlbum, OperationResultCache resultCache) {
+    this.imagesAlbum = imagesAlbum;
+    this.resultCache = resultCache;
+    // Images the album writes out or releases are dropped from the cache too, or their memory
+    // stays in use.
+    imagesAlbum.setReleaseListener(resultCache::removeResult);
+  }
 
   @Override
   public void rgbSplit(String srcImageName, String destRedImageName, String destGreenImageName,
@@ -32,18 +71,18 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
     Image destGreenImg = new Image(width, height);
     Image destBlueImg = new Image(width, height);
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        int srcImageRed = srcImg.getPixelRGB(x, y).getRed();
-        int srcImageGreen = srcImg.getPixelRGB(x, y).getGreen();
-        int srcImageBlue = srcImg.getPixelRGB(x, y).getBlue();
-
-        // Split the RGB channels.
-        destRedImg.setPixelRGB(x, y, new Pixel(srcImageRed, 0, 0));
-        destGreenImg.setPixelRGB(x, y, new Pixel(0, srcImageGreen, 0));
-        destBlueImg.setPixelRGB(x, y, new Pixel(0, 0, srcImageBlue));
+    int[] src = srcImg.getPixelData();
+    int[] destRed = destRedImg.getPixelData();
+    int[] destGreen = destGreenImg.getPixelData();
+    int[] destBlue = destBlueImg.getPixelData();
+    TileScheduler.forEachStrip(width, height, (yStart, yEnd) -> {
+      for (int i = yStart * width; i < yEnd * width; i++) {
+        // Split the RGB channels by masking out the other two.
+        destRed[i] = src[i] & 0xFF0000;
+        destGreen[i] = src[i] & 0x00FF00;
+        destBlue[i] = src[i] & 0x0000FF;
       }
-    }
+    });
 
     // Store the split channels in the HashMap.
     addImageToHashMap(destRedImageName, destRedImg);
@@ -55,9 +94,9 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
   public void rgbCombine(String srcRedImageName, String srcGreenImageName, String srcBlueImageName,
                          String destImageName) {
     // Retrieve the source images for red, green, and blue channels.
-    Image redImg = imagesAlbum.get(srcRedImageName);
-    Image greenImg = imagesAlbum.get(srcGreenImageName);
-    Image blueImg = imagesAlbum.get(srcBlueImageName);
+    Image redImg = lookupImage(srcRedImageName);
+    Image greenImg = lookupImage(srcGreenImageName);
+    Image blueImg = lookupImage(srcBlueImageName);
 
     if (redImg == null || greenImg == null || blueImg == null) {
       System.err.println("One or more source images not found.");
@@ -70,16 +109,23 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
     // Create an image to combine the channels.
     Image destImg = new Image(width, height);
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        int red = redImg.getPixelRGB(x, y).getRed();
-        int green = greenImg.getPixelRGB(x, y).getGreen();
-        int blue = blueImg.getPixelRGB(x, y).getBlue();
-
-        // Combine the RGB channels.
-        destImg.setPixelRGB(x, y, new Pixel(red, green, blue));
+    int[] dest = destImg.getPixelData();
+    TileScheduler.forEachStrip(width, height, (yStart, yEnd) -> {
+      int[] redRow = null;
+      int[] greenRow = null;
+      int[] blueRow = null;
+      for (int y = yStart; y < yEnd; y++) {
+        redRow = redImg.getRow(y, redRow);
+        greenRow = greenImg.getRow(y, greenRow);
+        blueRow = blueImg.getRow(y, blueRow);
+        int offset = destImg.rowOffset(y);
+        for (int x = 0; x < width; x++) {
+          // Combine the RGB channels.
+          dest[offset + x] = (redRow[x] & 0xFF0000) | (greenRow[x] & 0x00FF00)
+              | (blueRow[x] & 0x0000FF);
+        }
       }
-    }
+    });
 
     // Store the combined image in the HashMap.
     addImageToHashMap(destImageName, destImg);
@@ -88,160 +134,352 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
 
   @Override
   public void horizontalFlip(String srcImageName, String destImageName) {
-    // Retrieve the source image.
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
-    }
+    addCachedResult(srcImageName, "horizontal-flip", ImageManipulatorModelImpl::flipHorizontally,
+        destImageName);
+  }
+
+
+  @Override
+  public void verticalFlip(String srcImageName, String destImageName) {
+    addCachedResult(srcImageName, "vertical-flip", ImageManipulatorModelImpl::flipVertically,
+        destImageName);
+  }
 
+  /**
+   * Mirrors an image left to right.
+   *
+   * @param srcImg The image to flip.
+   * @return The flipped image.
+   */
+  private static Image flipHorizontally(Image srcImg) {
     int width = srcImg.getWidth();
     int height = srcImg.getHeight();
 
     // Create an image for the horizontal flip.
     Image destImg = new Image(width, height);
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        // Perform the horizontal flip.
-        destImg.setPixelRGB(width - x - 1, y, srcImg.getPixelRGB(x, y));
+    int[] src = srcImg.getPixelData();
+    int[] dest = destImg.getPixelData();
+    TileScheduler.forEachStrip(width, height, (yStart, yEnd) -> {
+      for (int y = yStart; y < yEnd; y++) {
+        int offset = srcImg.rowOffset(y);
+        for (int x = 0; x < width; x++) {
+          // Perform the horizontal flip.
+          dest[offset + width - x - 1] = src[offset + x];
+        }
       }
-    }
-
-    // Store the flipped image in the HashMap.
-    addImageToHashMap(destImageName, destImg);
+    });
+    // Flipping only moves pixels around, so the histogram stays the same.
+    destImg.setHistogram(srcImg.getKnownHistogram());
+    return destImg;
   }
 
-
-  @Override
-  public void verticalFlip(String srcImageName, String destImageName) {
-    // Retrieve the source image.
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
-    }
-
+  /**
+   * Mirrors an image top to bottom.
+   *
+   * @param srcImg The image to flip.
+   * @return The flipped image.
+   */
+  private static Image flipVertically(Image srcImg) {
     int width = srcImg.getWidth();
     int height = srcImg.getHeight();
 
     // Create an image for the vertical flip.
     Image destImg = new Image(width, height);
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        // Perform the vertical flip.
-        destImg.setPixelRGB(x, height - y - 1, srcImg.getPixelRGB(x, y));
+    TileScheduler.forEachStrip(width, height, (yStart, yEnd) -> {
+      for (int y = yStart; y < yEnd; y++) {
+        // Perform the vertical flip one whole row at a time.
+        destImg.setRow(height - y - 1, srcImg.getPixelData(), srcImg.rowOffset(y));
       }
-    }
-
-    // Store the flipped image in the HashMap.
-    addImageToHashMap(destImageName, destImg);
+    });
+    // Flipping only moves pixels around, so the histogram stays the same.
+    destImg.setHistogram(srcImg.getKnownHistogram());
+    return destImg;
   }
 
 
   @Override
   public void brighten(int increment, String srcImageName, String destImageName) {
-    // Retrieve the source image.
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
-    }
+    // Adjust the pixel values to brighten the image.
+    addPointOperation(srcImageName, ChannelLookupTable.brighten(increment),
+        "brighten " + increment, destImageName);
+  }
 
-    int width = srcImg.getWidth();
-    int height = srcImg.getHeight();
 
-    // Create an image for the brightened result.
-    Image destImg = new Image(width, height);
+  @Override
+  public void blur(String srcImageName, String destImageName) {
+    // Apply a blur filter to the source image and store the result.
+    addCachedResult(srcImageName, "blur", new BlurKernelFilter()::applyFilterToImage,
+        destImageName);
+  }
 
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        int redValue = clampValue(srcImg.getPixelRGB(x, y).getRed() + increment);
-        int greenValue = clampValue(srcImg.getPixelRGB(x, y).getGreen() + increment);
-        int blueValue = clampValue(srcImg.getPixelRGB(x, y).getBlue() + increment);
+  @Override
+  public void sharpen(String srcImageName, String destImageName) {
+    // Apply a sharpen filter to the source image and store the result.
+    addCachedResult(srcImageName, "sharpen", new SharpenKernelFilter()::applyFilterToImage,
+        destImageName);
+  }
 
-        // Adjust the pixel values to brighten the image.
-        destImg.setPixelRGB(x, y, new Pixel(redValue, greenValue, blueValue));
-      }
-    }
 
-    // Store the brightened image in the HashMap.
-    addImageToHashMap(destImageName, destImg);
+  @Override
+  public void greyscale(String component, String srcImageName, String destImageName) {
+    addPointOperation(srcImageName, new GreyScaleFilter(component), component, destImageName);
+  }
+
+  @Override
+  public void sepia(String srcImageName, String destImageName) {
+    // Apply a sepia color transformation to the source image.
+    addPointOperation(srcImageName, new SepiaColorTransformationFilter(), "sepia", destImageName);
   }
 
 
   @Override
-  public void blur(String srcImageName, String destImageName) {
-    // Retrieve the source image.
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
+  public void addRawImageToHashMap(String key, String[] rawImage) {
+    // Only the decoded pixels are kept, the raw form is not stored.
+    Image image = createFromRawImage(rawImage);
+    synchronized (albumLock) {
+      removePending(key);
+      imagesAlbum.put(key, image);
     }
-
-    // Apply a blur filter to the source image and store the result.
-    KernelFilter blurFilter = new BlurKernelFilter();
-    addImageToHashMap(destImageName, blurFilter.applyFilterToImage(srcImg));
   }
 
   @Override
-  public void sharpen(String srcImageName, String destImageName) {
-    // Retrieve the source image.
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
+  public String[] getRawImageFromHashMap(String key) {
+    // Encode the raw image data on request from the stored pixels.
+    Image image = lookupImage(key);
+    if (image == null) {
+      return null;
     }
+    return convertIntoRawImage(image);
+  }
 
-    // Apply a sharpen filter to the source image and store the result.
-    KernelFilter sharpenFilter = new SharpenKernelFilter();
-    addImageToHashMap(destImageName, sharpenFilter.applyFilterToImage(srcImg));
+  @Override
+  public Image getImageFromHashMap(String key) {
+    return lookupImage(key);
   }
 
+  @Override
+  public boolean releaseImage(String imageName) {
+    synchronized (albumLock) {
+      boolean pending = removePending(imageName);
+      return imagesAlbum.remove(imageName) || pending;
+    }
+  }
 
   @Override
-  public void greyscale(String component, String srcImageName, String destImageName) {
-    Image srcImg = checkAndGetTheImage(srcImageName);
-    if (srcImg == null) {
-      return;
+  public long getPixelCount(String imageName) {
+    synchronized (albumLock) {
+      PendingImage pending = pendingImages.get(imageName);
+      if (pending != null) {
+        // Point operations keep the size of their source.
+        return (long) pending.width * pending.height;
+      }
+      return imagesAlbum.getPixelCount(imageName);
     }
-    ImageFilter greyScaleFilter = new GreyScaleFilter(component);
-    addImageToHashMap(destImageName, greyScaleFilter.applyFilterToImage(srcImg));
   }
 
+  /**
+   * Returns the album holding the images, with its memory budget and spill count.
+   *
+   * @return The album.
+   */
+  public ImageAlbum getImageAlbum() {
+    return imagesAlbum;
+  }
+
+
   @Override
-  public void sepia(String srcImageName, String destImageName) {
-    // Retrieve the source image.
+  public void addImageToHashMap(String key, Image value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Invalid image data.");
+    }
+    synchronized (albumLock) {
+      removePending(key);
+      imagesAlbum.put(key, value);
+    }
+  }
+
+  /**
+   * Records a point operation on an image without computing its result yet. When the source
+   * image is itself the pending result of point operations, the new operation is chained onto
+   * them, so a run of point operations is computed in a single pass. The result is computed the
+   * first time the destination image is read. Custom curves, such as a gamma or tone curve
+   * {@link ChannelLookupTable}, can be applied to an image this way.
+   *
+   * @param srcImageName  The name of the source image.
+   * @param operation     The operation to apply.
+   * @param destImageName The name under which the result is stored.
+   */
+  public void addPointOperation(String srcImageName, PointOperation operation,
+                                String destImageName) {
+    addPointOperation(srcImageName, operation, null, destImageName);
+  }
+
+  /**
+   * Records a point operation on an image without computing its result yet, see
+   * {@link #addPointOperation(String, PointOperation, String)}. Results of described operations
+   * are kept in the result cache, together with the results of chains made only of them.
+   *
+   * @param srcImageName  The name of the source image.
+   * @param operation     The operation to apply.
+   * @param description   The operation and its parameters, or null if it cannot be described.
+   * @param destImageName The name under which the result is stored.
+   */
+  protected void addPointOperation(String srcImageName, PointOperation operation,
+                                   String description, String destImageName) {
+    Image source = null;
+    PointOperation chained = operation;
+    String chain = description;
+    synchronized (albumLock) {
+      PendingImage pending = pendingImages.get(srcImageName);
+      if (pending != null) {
+        source = imagesAlbum.get(pending.sourceName);
+        chained = pending.operation.andThen(operation);
+        chain = pending.description == null || description == null ? null
+            : pending.description + " | " + description;
+      }
+    }
+    if (source == null) {
+      source = checkAndGetTheImage(srcImageName);
+      if (source == null) {
+        return;
+      }
+    }
+    synchronized (albumLock) {
+      // The source is kept in the album, so that it counts toward the budget and can be spilled.
+      PendingImage pending = new PendingImage("\0pending source " + ++pendingSourceCount,
+          source.getWidth(), source.getHeight(), chained, chain);
+      imagesAlbum.put(pending.sourceName, source);
+      removePending(destImageName);
+      imagesAlbum.remove(destImageName);
+      pendingImages.put(destImageName, pending);
+    }
+  }
+
+  /**
+   * Removes the pending result stored under a name, letting go of its source. The caller must
+   * hold albumLock.
+   *
+   * @param key The name of the image.
+   * @return True if there was a pending result with that name.
+   */
+  private boolean removePending(String key) {
+    PendingImage pending = pendingImages.remove(key);
+    if (pending == null) {
+      return false;
+    }
+    imagesAlbum.remove(pending.sourceName);
+    return true;
+  }
+
+  /**
+   * Stores the result of an operation on an image. When the result cache holds the result of the
+   * same operation on the same pixels, a copy of that result is stored instead of computing it
+   * again.
+   *
+   * @param srcImageName  The name of the source image.
+   * @param operation     The operation and its parameters.
+   * @param compute       Computes the result from the source image.
+   * @param destImageName The name under which the result is stored.
+   */
+  protected void addCachedResult(String srcImageName, String operation,
+                                 UnaryOperator<Image> compute, String destImageName) {
     Image srcImg = checkAndGetTheImage(srcImageName);
     if (srcImg == null) {
       return;
     }
-
-    // Apply a sepia color transformation to the source image and store the result.
-    ColorTransformationFilter sepiaFilter = new SepiaColorTransformationFilter();
-    addImageToHashMap(destImageName, sepiaFilter.applyFilterToImage(srcImg));
+    addImageToHashMap(destImageName, computeCached(srcImg, operation, compute));
   }
 
-
-  @Override
-  public void addRawImageToHashMap(String key, String[] rawImage) {
-    // Store raw image data in the HashMap.
-    rawImagesAlbum.put(key, rawImage);
-    imagesAlbum.put(key, createFromRawImage(rawImage));
+  /**
+   * Returns the cached result of an operation, computing and caching it if it is not there. A
+   * result found in the cache is copied, since images can be changed in place and the cached one
+   * is already stored under another name.
+   *
+   * @param srcImg    The source image.
+   * @param operation The operation and its parameters, or null to compute without the cache.
+   * @param compute   Computes the result from the source image.
+   * @return The result.
+   */
+  protected Image computeCached(Image srcImg, String operation, UnaryOperator<Image> compute) {
+    if (operation == null) {
+      return compute.apply(srcImg);
+    }
+    Image cached = resultCache.get(srcImg, operation);
+    if (cached != null) {
+      return copyOf(cached);
+    }
+    Image result = compute.apply(srcImg);
+    resultCache.put(srcImg, operation, result);
+    return result;
   }
 
-  @Override
-  public String[] getRawImageFromHashMap(String key) {
-    // Retrieve raw image data from the HashMap.
-    return rawImagesAlbum.get(key);
+  /**
+   * Copies an image with its known histogram. A compressed image stays compressed and shares
+   * its coefficients, which are never changed.
+   *
+   * @param img The image.
+   * @return The copy.
+   */
+  private static Image copyOf(Image img) {
+    int[] pixels = img.getPixelData().clone();
+    Image copy = img instanceof CompressedImage
+        ? new CompressedImage(pixels, ((CompressedImage) img).getCoefficients())
+        : new Image(img.getWidth(), img.getHeight(), pixels);
+    copy.setHistogram(img.getKnownHistogram());
+    return copy;
   }
 
+  /**
+   * Returns the cache of operation results, with its hit, miss and eviction counts.
+   *
+   * @return The result cache.
+   */
+  public OperationResultCache getResultCache() {
+    return resultCache;
+  }
 
   /**
-   * Stores the processed image in the imagesAlbum HashMap.
+   * Looks up an image, computing it first if it is the pending result of point operations. A
+   * pending result is computed only once, even when several threads ask for it together.
    *
-   * @param key   The key for the processed image.
-   * @param value The processed Image object.
+   * @param key The name of the image.
+   * @return The image, or null if there is no image with that name.
    */
-  public void addImageToHashMap(String key, Image value) {
-    imagesAlbum.put(key, value);
-    rawImagesAlbum.put(key, convertIntoRawImage(value));
+  protected Image lookupImage(String key) {
+    PendingImage pending;
+    synchronized (albumLock) {
+      pending = pendingImages.get(key);
+    }
+    if (pending == null) {
+      return imagesAlbum.get(key);
+    }
+    Image result;
+    synchronized (pending) {
+      if (pending.result == null) {
+        Image source;
+        synchronized (albumLock) {
+          source = imagesAlbum.get(pending.sourceName);
+        }
+        if (source != null) {
+          pending.result = computeCached(source, pending.description,
+              pending.operation::applyFilterToImage);
+        }
+      }
+      result = pending.result;
+    }
+    if (result == null) {
+      // The pending result was replaced or released before it was computed.
+      return lookupImage(key);
+    }
+    synchronized (albumLock) {
+      if (pendingImages.get(key) == pending) {
+        removePending(key);
+        imagesAlbum.put(key, result);
+      }
+    }
+    return result;
   }
 
   /**
@@ -260,17 +498,19 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
     if (rawImage.length != height + 2) {
       throw new IllegalArgumentException("Invalid raw image data.");
     }
+    int[] pixels = image.getPixelData();
     for (int y = 0; y < height; y++) {
       String line = rawImage[y + 2];
       if (line.length() != width * 9) { // 3 digits for each color channel (RGB)
         throw new IllegalArgumentException("Invalid raw image data.");
       }
+      int offset = image.rowOffset(y);
       for (int x = 0; x < width; x++) {
         int startIndex = x * 9;
-        int red = Integer.parseInt(line.substring(startIndex, startIndex + 3));
-        int green = Integer.parseInt(line.substring(startIndex + 3, startIndex + 6));
-        int blue = Integer.parseInt(line.substring(startIndex + 6, startIndex + 9));
-        image.setPixelRGB(x, y, new Pixel(red, green, blue));
+        int red = parseChannel(line, startIndex);
+        int green = parseChannel(line, startIndex + 3);
+        int blue = parseChannel(line, startIndex + 6);
+        pixels[offset + x] = Image.packRGB(red, green, blue);
       }
     }
     return image;
@@ -282,33 +522,73 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
    * @param img The Image object.
    * @return Raw image data as a String array.
    */
-  private String[] convertIntoRawImage(Image img) {
+  private static String[] convertIntoRawImage(Image img) {
     int height = img.getHeight();
     int width = img.getWidth();
     String[] rawImage = new String[height + 2];
     rawImage[0] = String.valueOf(width);
     rawImage[1] = String.valueOf(height);
 
+    int[] pixels = img.getPixelData();
+    char[] line = new char[width * 9];
     for (int y = 0; y < height; y++) {
-      StringBuilder line = new StringBuilder();
+      int offset = img.rowOffset(y);
       for (int x = 0; x < width; x++) {
-        Pixel pixel = img.getPixelRGB(x, y);
-        line.append(
-                String.format("%03d%03d%03d", pixel.getRed(), pixel.getGreen(), pixel.getBlue()));
+        int rgb = pixels[offset + x];
+        // Same layout as String.format("%03d%03d%03d", red, green, blue).
+        appendChannel(line, x * 9, Image.red(rgb));
+        appendChannel(line, x * 9 + 3, Image.green(rgb));
+        appendChannel(line, x * 9 + 6, Image.blue(rgb));
       }
-      rawImage[y + 2] = line.toString();
+      rawImage[y + 2] = new String(line);
     }
     return rawImage;
   }
 
   /**
-   * Retrieves an image from the imagesAlbum HashMap.
+   * Parses one three digit channel value of a raw image line.
+   *
+   * @param line       The raw image line.
+   * @param startIndex The index of the first digit.
+   * @return The channel value.
+   * @throws IllegalArgumentException if the digits do not form a value between 0 and 255.
+   */
+  private static int parseChannel(String line, int startIndex) {
+    int value = 0;
+    for (int i = startIndex; i < startIndex + 3; i++) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IllegalArgumentException("Invalid raw image data.");
+      }
+      value = value * 10 + digit;
+    }
+    if (value > 255) {
+      throw new IllegalArgumentException("Invalid raw image data.");
+    }
+    return value;
+  }
+
+  /**
+   * Writes a channel value as three zero padded digits.
+   *
+   * @param line       The buffer to write into.
+   * @param startIndex The index of the first digit.
+   * @param value      The channel value (0-255).
+   */
+  private static void appendChannel(char[] line, int startIndex, int value) {
+    line[startIndex] = (char) ('0' + value / 100);
+    line[startIndex + 1] = (char) ('0' + value / 10 % 10);
+    line[startIndex + 2] = (char) ('0' + value % 10);
+  }
+
+  /**
+   * Retrieves an image from the album.
    *
    * @param imgName The key of the image to retrieve.
    * @return The Image object or null if not found.
    */
   public Image checkAndGetTheImage(String imgName) {
-    Image srcImg = imagesAlbum.get(imgName);
+    Image srcImg = lookupImage(imgName);
     if (srcImg == null) {
       System.err.println("Source image not found: " + imgName);
       return null;
@@ -326,4 +606,27 @@ public class ImageManipulatorModelImpl implements ImageManipulatorModel {
     return Math.max(0, Math.min(255, value));
   }
 
+  /**
+   * The not yet computed result of applying a point operation to an image. The source image is
+   * held by the album under a name of its own, which no command can use.
+   */
+  private static class PendingImage {
+
+    private final String sourceName;
+    private final int width;
+    private final int height;
+    private final PointOperation operation;
+    private final String description;
+    // The result, once computed.
+    private Image result;
+
+    PendingImage(String sourceName, int width, int height, PointOperation operation,
+                 String description) {
+      this.sourceName = sourceName;
+      this.width = width;
+      this.height = height;
+      this.operation = operation;
+      this.description = description;
+    }
+  }
 }
@@ -1,15 +1,25 @@
 package model;
 
+import java.util.Arrays;
+
 /**
  * The abstract KernelFilter class provides a foundation for image filtering operations
  * based on a kernel (2D matrix). Subclasses can extend this class to implement specific
  * filtering algorithms.
+ *
+ * <p>Kernels of rank one, the outer product of a horizontal and a vertical 1D kernel, are run
+ * as two 1D passes, which costs 2K instead of K*K multiplications per pixel for a KxK kernel.
+ * Such kernels are either detected from the matrix or given explicitly as their two factors.
  */
 public abstract class KernelFilter implements ImageFilter {
 
-  // The 2D matrix representing the filter kernel
+  // The 2D matrix representing the filter kernel, the first index is the horizontal offset
   protected final double[][] kernel;
 
+  // The horizontal and vertical factors of the kernel, null when it is not separable
+  private final double[] horizontalKernel;
+  private final double[] verticalKernel;
+
   /**
    * Constructs a KernelFilter with the specified kernel matrix. The kernel matrix should
    * have an odd dimension for filter operations.
@@ -23,6 +33,32 @@ public abstract class KernelFilter implements ImageFilter {
     } else {
       throw new IllegalArgumentException("Please provide a valid filter of odd dimension.");
     }
+    double[][] factors = factorize(kernel);
+    this.horizontalKernel = factors == null ? null : factors[0];
+    this.verticalKernel = factors == null ? null : factors[1];
+  }
+
+  /**
+   * Constructs a KernelFilter from the two factors of a separable kernel. The kernel matrix is
+   * their outer product, {@code kernel[i][j] = horizontalKernel[i] * verticalKernel[j]}.
+   *
+   * @param horizontalKernel The 1D kernel applied along each row.
+   * @param verticalKernel   The 1D kernel applied along each column.
+   * @throws IllegalArgumentException if the factors are not of the same odd length.
+   */
+  public KernelFilter(double[] horizontalKernel, double[] verticalKernel) {
+    int l = horizontalKernel.length;
+    if (l % 2 != 1 || verticalKernel.length != l) {
+      throw new IllegalArgumentException("Please provide a valid filter of odd dimension.");
+    }
+    this.kernel = new double[l][l];
+    for (int i = 0; i < l; i++) {
+      for (int j = 0; j < l; j++) {
+        this.kernel[i][j] = horizontalKernel[i] * verticalKernel[j];
+      }
+    }
+    this.horizontalKernel = horizontalKernel.clone();
+    this.verticalKernel = verticalKernel.clone();
   }
 
   /**
@@ -45,39 +81,238 @@ public abstract class KernelFilter implements ImageFilter {
   }
 
   /**
-   * Applies the filter to an input image and returns a new image with the filter effect applied.
+   * Splits a rank one kernel into its horizontal and vertical factors.
+   *
+   * @param kernel A valid kernel matrix.
+   * @return The horizontal and vertical factors, or null if the kernel is not separable.
+   */
+  private static double[][] factorize(double[][] kernel) {
+    int l = kernel.length;
+    int pivotI = 0;
+    int pivotJ = 0;
+    for (int i = 0; i < l; i++) {
+      for (int j = 0; j < l; j++) {
+        if (Math.abs(kernel[i][j]) > Math.abs(kernel[pivotI][pivotJ])) {
+          pivotI = i;
+          pivotJ = j;
+        }
+      }
+    }
+    double pivot = kernel[pivotI][pivotJ];
+    if (pivot == 0) {
+      return null;
+    }
+    double[] horizontal = new double[l];
+    double[] vertical = kernel[pivotI].clone();
+    for (int i = 0; i < l; i++) {
+      horizontal[i] = kernel[i][pivotJ] / pivot;
+    }
+    double tolerance = Math.abs(pivot) * 1e-12;
+    for (int i = 0; i < l; i++) {
+      for (int j = 0; j < l; j++) {
+        if (Math.abs(horizontal[i] * vertical[j] - kernel[i][j]) > tolerance) {
+          return null;
+        }
+      }
+    }
+    return new double[][]{horizontal, vertical};
+  }
+
+  /**
+   * Tells whether this filter runs as two 1D passes.
    *
-   * @param sourceImg The input image to which the filter is applied.
-   * @return An Image object containing the filtered result.
+   * @return True if the kernel is separable.
    */
+  public boolean isSeparable() {
+    return horizontalKernel != null;
+  }
+
+  @Override
+  public void applyFilterToRows(Image sourceImg, Image destImg, int yStart, int yEnd) {
+    if (isSeparable()) {
+      convolveSeparable(sourceImg, destImg, yStart, yEnd);
+    } else {
+      convolve(sourceImg, destImg, yStart, yEnd);
+    }
+  }
+
   @Override
-  public Image applyFilterToImage(Image sourceImg) {
-    Image imageWithAppliedFilter = new Image(sourceImg.getWidth(), sourceImg.getHeight());
+  public int getHalo() {
+    return kernel.length / 2;
+  }
+
+  /**
+   * Runs the full 2D convolution for a range of rows. Pixels outside the image count as zero.
+   *
+   * @param sourceImg The image to filter.
+   * @param destImg   The image receiving the filtered rows.
+   * @param yStart    The first row to filter.
+   * @param yEnd      The row after the last row to filter.
+   */
+  private void convolve(Image sourceImg, Image destImg, int yStart, int yEnd) {
+    int width = sourceImg.getWidth();
+    int height = sourceImg.getHeight();
+    int[] src = sourceImg.getPixelData();
+    int[] dest = destImg.getPixelData();
     int limit = kernel.length / 2;
-    for (int y = 0; y < sourceImg.getHeight(); y++) {
-      for (int x = 0; x < sourceImg.getWidth(); x++) {
+    for (int y = yStart; y < yEnd; y++) {
+      // Taps falling outside the image are skipped, so clip the kernel window once per pixel
+      // instead of testing every tap.
+      int jMin = Math.max(-limit, -y);
+      int jMax = Math.min(limit, height - 1 - y);
+      for (int x = 0; x < width; x++) {
+        int iMin = Math.max(-limit, -x);
+        int iMax = Math.min(limit, width - 1 - x);
         double red = 0;
         double green = 0;
         double blue = 0;
-        for (int i = -limit; i <= limit; i++) {
-          for (int j = -limit; j <= limit; j++) {
-            int neighborX = x + i;
-            int neighborY = y + j;
-            if (neighborX < 0 || neighborX >= sourceImg.getWidth() || neighborY < 0
-                    || neighborY >= sourceImg.getHeight()) {
-              continue;
-            }
-            double kernelValue = kernel[i + limit][j + limit];
-            red += (kernelValue * sourceImg.getPixelRGB(neighborX, neighborY).getRed());
-            green += (kernelValue * sourceImg.getPixelRGB(neighborX, neighborY).getGreen());
-            blue += (kernelValue * sourceImg.getPixelRGB(neighborX, neighborY).getBlue());
+        for (int i = iMin; i <= iMax; i++) {
+          double[] kernelColumn = kernel[i + limit];
+          int neighborX = x + i;
+          for (int j = jMin; j <= jMax; j++) {
+            double kernelValue = kernelColumn[j + limit];
+            int rgb = src[(y + j) * width + neighborX];
+            red += (kernelValue * Image.red(rgb));
+            green += (kernelValue * Image.green(rgb));
+            blue += (kernelValue * Image.blue(rgb));
           }
         }
-        imageWithAppliedFilter.setPixelRGB(x, y,
-                new Pixel(clampValue((int) red), clampValue((int) green), clampValue((int) blue)));
+        dest[y * width + x] = Image.packRGB(clampValue((int) red), clampValue((int) green),
+                clampValue((int) blue));
+      }
+    }
+  }
+
+  /**
+   * Runs the separable convolution for a range of rows: each source row is filtered with the
+   * horizontal kernel once into a ring of K rows, which the vertical kernel then combines.
+   * Pixels outside the image count as zero, as in the 2D convolution.
+   *
+   * @param sourceImg The image to filter.
+   * @param destImg   The image receiving the filtered rows.
+   * @param yStart    The first row to filter.
+   * @param yEnd      The row after the last row to filter.
+   */
+  private void convolveSeparable(Image sourceImg, Image destImg, int yStart, int yEnd) {
+    int width = sourceImg.getWidth();
+    int height = sourceImg.getHeight();
+    int[] dest = destImg.getPixelData();
+    int size = verticalKernel.length;
+    int limit = size / 2;
+
+    double[][] red = new double[size][width];
+    double[][] green = new double[size][width];
+    double[][] blue = new double[size][width];
+    int[][] channels = new int[3][width];
+    double[] redSum = new double[width];
+    double[] greenSum = new double[width];
+    double[] blueSum = new double[width];
+
+    int nextRow = Math.max(0, yStart - limit);
+    for (int y = yStart; y < yEnd; y++) {
+      int lastRow = Math.min(height - 1, y + limit);
+      for (; nextRow <= lastRow; nextRow++) {
+        int slot = nextRow % size;
+        filterRow(sourceImg, nextRow, channels, red[slot], green[slot], blue[slot]);
+      }
+
+      Arrays.fill(redSum, 0);
+      Arrays.fill(greenSum, 0);
+      Arrays.fill(blueSum, 0);
+      int jMin = Math.max(-limit, -y);
+      int jMax = Math.min(limit, height - 1 - y);
+      for (int j = jMin; j <= jMax; j++) {
+        double kernelValue = verticalKernel[j + limit];
+        int slot = (y + j) % size;
+        double[] redRow = red[slot];
+        double[] greenRow = green[slot];
+        double[] blueRow = blue[slot];
+        for (int x = 0; x < width; x++) {
+          redSum[x] += kernelValue * redRow[x];
+          greenSum[x] += kernelValue * greenRow[x];
+          blueSum[x] += kernelValue * blueRow[x];
+        }
+      }
+
+      int offset = destImg.rowOffset(y);
+      for (int x = 0; x < width; x++) {
+        dest[offset + x] = Image.packRGB(clampValue((int) redSum[x]),
+                clampValue((int) greenSum[x]), clampValue((int) blueSum[x]));
       }
     }
-    return imageWithAppliedFilter;
+  }
+
+  /**
+   * Filters one source row with the horizontal kernel.
+   *
+   * @param sourceImg The image to filter.
+   * @param y         The row to filter.
+   * @param channels  Scratch space of three rows for the unpacked channels.
+   * @param red       Receives the filtered red channel.
+   * @param green     Receives the filtered green channel.
+   * @param blue      Receives the filtered blue channel.
+   */
+  private void filterRow(Image sourceImg, int y, int[][] channels, double[] red, double[] green,
+                         double[] blue) {
+    int width = sourceImg.getWidth();
+    int[] src = sourceImg.getPixelData();
+    int offset = sourceImg.rowOffset(y);
+    int[] redIn = channels[0];
+    int[] greenIn = channels[1];
+    int[] blueIn = channels[2];
+    for (int x = 0; x < width; x++) {
+      int rgb = src[offset + x];
+      redIn[x] = Image.red(rgb);
+      greenIn[x] = Image.green(rgb);
+      blueIn[x] = Image.blue(rgb);
+    }
+
+    int limit = horizontalKernel.length / 2;
+    int interiorStart = Math.min(limit, width);
+    int interiorEnd = Math.max(interiorStart, width - limit);
+    // Border pixels, where part of the kernel falls outside the row.
+    for (int x = 0; x < interiorStart; x++) {
+      filterBorderPixel(x, width, redIn, greenIn, blueIn, red, green, blue);
+    }
+    for (int x = interiorEnd; x < width; x++) {
+      filterBorderPixel(x, width, redIn, greenIn, blueIn, red, green, blue);
+    }
+    // Interior pixels, where every tap is inside the row.
+    for (int x = interiorStart; x < interiorEnd; x++) {
+      double r = 0;
+      double g = 0;
+      double b = 0;
+      for (int i = -limit; i <= limit; i++) {
+        double kernelValue = horizontalKernel[i + limit];
+        r += kernelValue * redIn[x + i];
+        g += kernelValue * greenIn[x + i];
+        b += kernelValue * blueIn[x + i];
+      }
+      red[x] = r;
+      green[x] = g;
+      blue[x] = b;
+    }
+  }
+
+  /**
+   * Filters one pixel near the start or end of a row with the horizontal kernel, skipping taps
+   * outside the row.
+   */
+  private void filterBorderPixel(int x, int width, int[] redIn, int[] greenIn, int[] blueIn,
+                                 double[] red, double[] green, double[] blue) {
+    int limit = horizontalKernel.length / 2;
+    double r = 0;
+    double g = 0;
+    double b = 0;
+    for (int i = Math.max(-limit, -x); i <= Math.min(limit, width - 1 - x); i++) {
+      double kernelValue = horizontalKernel[i + limit];
+      r += kernelValue * redIn[x + i];
+      g += kernelValue * greenIn[x + i];
+      b += kernelValue * blueIn[x + i];
+    }
+    red[x] = r;
+    green[x] = g;
+    blue[x] = b;
   }
 
   /**
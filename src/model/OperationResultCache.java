@@ -0,0 +1,222 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Remembers the results of recent operations, so that running the same operation with the same
+ * parameters on the same pixels again returns the earlier result instead of computing it. Results
+ * are looked up by the version of the source image, see {@link Image#getVersion()}, and a
+ * description of the operation and its parameters.
+ *
+ * <p>The cache holds results up to a total size in bytes and drops the least recently used ones
+ * beyond that. The budget defaults to a quarter of the maximum heap and can be set with the
+ * {@code imea.cache.bytes} system property, 0 turning the cache off. A result whose pixels were
+ * written after it was stored is never returned.
+ */
+public class OperationResultCache {
+
+  private final long maxBytes;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeInBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Constructs a cache with the budget set by the {@code imea.cache.bytes} system property.
+   */
+  public OperationResultCache() {
+    this(initialBudget());
+  }
+
+  /**
+   * Constructs a cache holding results up to the given total size.
+   *
+   * @param maxBytes The budget in bytes, 0 to cache nothing.
+   * @throws IllegalArgumentException if the budget is negative.
+   */
+  public OperationResultCache(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Cache size must not be negative.");
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Looks up the result of an operation.
+   *
+   * @param source    The image the operation was applied to.
+   * @param operation The operation and its parameters.
+   * @return The result, or null if it is not in the cache.
+   */
+  public synchronized Image get(Image source, String operation) {
+    String key = keyOf(source, operation);
+    Entry entry = entries.get(key);
+    if (entry != null && entry.result.getVersion() != entry.resultVersion) {
+      // The result was changed after it was stored.
+      entries.remove(key);
+      sizeInBytes -= entry.bytes;
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.result;
+  }
+
+  /**
+   * Stores the result of an operation, dropping the least recently used results if the cache
+   * grows beyond its budget. Results larger than the whole budget are not stored.
+   *
+   * @param source    The image the operation was applied to.
+   * @param operation The operation and its parameters.
+   * @param result    The result.
+   */
+  public synchronized void put(Image source, String operation, Image result) {
+    long bytes = sizeOf(result);
+    if (bytes > maxBytes) {
+      return;
+    }
+    Entry previous = entries.put(keyOf(source, operation),
+        new Entry(result, result.getVersion(), bytes));
+    if (previous != null) {
+      sizeInBytes -= previous.bytes;
+    }
+    sizeInBytes += bytes;
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (sizeInBytes > maxBytes) {
+      sizeInBytes -= eldest.next().bytes;
+      eldest.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Drops every stored result that is the given image, such as an image the album has written
+   * out to free its memory. This is not counted as an eviction.
+   *
+   * @param result The image.
+   */
+  public synchronized void removeResult(Image result) {
+    Iterator<Entry> stored = entries.values().iterator();
+    while (stored.hasNext()) {
+      Entry entry = stored.next();
+      if (entry.result == result) {
+        sizeInBytes -= entry.bytes;
+        stored.remove();
+      }
+    }
+  }
+
+  /**
+   * Drops all results. The counters are kept.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    sizeInBytes = 0;
+  }
+
+  /**
+   * Returns how many lookups found a result.
+   *
+   * @return The number of hits.
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Returns how many lookups found no result.
+   *
+   * @return The number of misses.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Returns how many results were dropped to stay within the budget.
+   *
+   * @return The number of evictions.
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * Returns the number of results held.
+   *
+   * @return The number of results.
+   */
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the total size of the results held.
+   *
+   * @return The size in bytes.
+   */
+  public synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * Returns the budget of the cache.
+   *
+   * @return The maximum total size of the results, in bytes.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  private static String keyOf(Image source, String operation) {
+    return source.getVersion() + " " + operation;
+  }
+
+  /**
+   * Estimates the memory taken by an image, its pixels and the coefficients of a compressed
+   * image.
+   */
+  private static long sizeOf(Image img) {
+    long bytes = 4L * img.getWidth() * img.getHeight();
+    if (img instanceof CompressedImage) {
+      bytes += 12L * ((CompressedImage) img).getCoefficients().getNonZeroCount();
+    }
+    return bytes;
+  }
+
+  /**
+   * Reads the budget from the {@code imea.cache.bytes} system property.
+   *
+   * @return The configured budget, or a quarter of the maximum heap.
+   */
+  private static long initialBudget() {
+    long fallback = Runtime.getRuntime().maxMemory() / 4;
+    try {
+      long budget = Long.parseLong(System.getProperty("imea.cache.bytes",
+          String.valueOf(fallback)).trim());
+      return budget < 0 ? fallback : budget;
+    } catch (NumberFormatException e) {
+      return fallback;
+    }
+  }
+
+  /**
+   * A stored result with the version its pixels had when stored.
+   */
+  private static class Entry {
+    private final Image result;
+    private final long resultVersion;
+    private final long bytes;
+
+    Entry(Image result, long resultVersion, long bytes) {
+      this.result = result;
+      this.resultVersion = resultVersion;
+      this.bytes = bytes;
+    }
+  }
+}
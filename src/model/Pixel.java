@@ -83,7 +83,7 @@ public class Pixel {
    * @return The value component value (0-255).
    */
   public int getValueComponent() {
-    return Math.max(Math.max(red, green), blue);
+    return valueComponent(red, green, blue);
   }
 
   /**
@@ -92,7 +92,7 @@ public class Pixel {
    * @return The luma component value (0-255).
    */
   public int getLumaComponent() {
-    return (int) (0.2126 * red + 0.7152 * green + 0.0722 * blue);
+    return lumaComponent(red, green, blue);
   }
 
   /**
@@ -101,6 +101,42 @@ public class Pixel {
    * @return The intensity component value (0-255).
    */
   public int getIntensityComponent() {
+    return intensityComponent(red, green, blue);
+  }
+
+  /**
+   * Computes the value component of the given channel values.
+   *
+   * @param red   The red component value (0-255).
+   * @param green The green component value (0-255).
+   * @param blue  The blue component value (0-255).
+   * @return The value component value (0-255).
+   */
+  public static int valueComponent(int red, int green, int blue) {
+    return Math.max(Math.max(red, green), blue);
+  }
+
+  /**
+   * Computes the luma component of the given channel values.
+   *
+   * @param red   The red component value (0-255).
+   * @param green The green component value (0-255).
+   * @param blue  The blue component value (0-255).
+   * @return The luma component value (0-255).
+   */
+  public static int lumaComponent(int red, int green, int blue) {
+    return (int) (0.2126 * red + 0.7152 * green + 0.0722 * blue);
+  }
+
+  /**
+   * Computes the intensity component of the given channel values.
+   *
+   * @param red   The red component value (0-255).
+   * @param green The green component value (0-255).
+   * @param blue  The blue component value (0-255).
+   * @return The intensity component value (0-255).
+   */
+  public static int intensityComponent(int red, int green, int blue) {
     return (red + green + blue) / 3;
   }
 
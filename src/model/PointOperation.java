@@ -0,0 +1,52 @@
+package model;
+
+/**
+ * An image filter whose output pixel depends only on the input pixel at the same position.
+ * Point operations can be chained with {@link #andThen(PointOperation)} into a single operation
+ * that runs the whole chain in one pass over the image, without building the intermediate images.
+ */
+@FunctionalInterface
+public interface PointOperation extends ImageFilter {
+
+  /**
+   * Applies the operation to a single pixel.
+   *
+   * @param rgb The packed {@code 0x00RRGGBB} value of the input pixel.
+   * @return The packed value of the output pixel.
+   */
+  int applyToPixel(int rgb);
+
+  /**
+   * Applies the operation in place to a range of packed RGB values.
+   *
+   * @param pixels The packed values.
+   * @param from   The index of the first value.
+   * @param to     The index after the last value.
+   */
+  default void applyToPixels(int[] pixels, int from, int to) {
+    for (int i = from; i < to; i++) {
+      pixels[i] = applyToPixel(pixels[i]);
+    }
+  }
+
+  @Override
+  default void applyFilterToRows(Image sourceImg, Image destImg, int yStart, int yEnd) {
+    int width = sourceImg.getWidth();
+    int[] dest = destImg.getPixelData();
+    // Copy the rows once, then run the operation over them in place.
+    System.arraycopy(sourceImg.getPixelData(), yStart * width, dest, yStart * width,
+        (yEnd - yStart) * width);
+    applyToPixels(dest, yStart * width, yEnd * width);
+  }
+
+  /**
+   * Returns an operation that applies this operation and then the given one. The chain computes
+   * exactly what applying the operations one after the other computes.
+   *
+   * @param after The operation to apply to the output of this one.
+   * @return The chained operation.
+   */
+  default PointOperation andThen(PointOperation after) {
+    return FusedPointOperation.of(this, after);
+  }
+}
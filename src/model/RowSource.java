@@ -0,0 +1,37 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The rows of an image read from top to bottom, a few at a time, without the whole image being
+ * held in memory. Images too large for the heap are processed through row sources.
+ */
+public interface RowSource extends Closeable {
+
+  /**
+   * Returns the width of the image.
+   *
+   * @return The number of pixels in a row.
+   */
+  int getWidth();
+
+  /**
+   * Returns the height of the image.
+   *
+   * @return The number of rows.
+   */
+  int getHeight();
+
+  /**
+   * Reads the next rows of the image into a range of rows of the destination, which is as wide
+   * as the image. Every row of the image is read once, in order.
+   *
+   * @param dest   The image receiving the rows.
+   * @param yStart The first row of dest to write.
+   * @param yEnd   The row of dest after the last row to write.
+   * @throws IOException              If the rows cannot be read.
+   * @throws IllegalArgumentException if the image has fewer rows left than requested.
+   */
+  void readRows(Image dest, int yStart, int yEnd) throws IOException;
+}
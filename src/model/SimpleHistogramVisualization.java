@@ -3,6 +3,7 @@ package model;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  * A class for generating a simple histogram visualization from an input image.
@@ -18,15 +19,35 @@ public class SimpleHistogramVisualization extends AbstractImageHistogram {
     super(srcImg);
   }
 
+  /**
+   * Constructs a SimpleHistogramVisualization object from a regular sample of the pixels of the
+   * source image, for quick previews of large images.
+   *
+   * @param srcImg The source image for which the histogram is generated.
+   * @param stride The distance between sampled pixels, 1 to count every pixel.
+   */
+  public SimpleHistogramVisualization(Image srcImg, int stride) {
+    super(srcImg, stride);
+  }
+
   /**
    * Generates a histogram and returns it as raw image data.
    *
    * @return A string array representing the raw image data of the generated histogram.
    */
   public String[] generateHistogram() {
-    int[] redHistogram = this.histogramValues[0];
-    int[] greenHistogram = this.histogramValues[1];
-    int[] blueHistogram = this.histogramValues[2];
+    return convertImageIntoRawImage(renderHistogram());
+  }
+
+  /**
+   * Draws the histogram as a line chart of the three channels over a grid.
+   *
+   * @return A 256x256 image of the chart.
+   */
+  public Image renderHistogram() {
+    int[] redHistogram = this.histogramValues[0].clone();
+    int[] greenHistogram = this.histogramValues[1].clone();
+    int[] blueHistogram = this.histogramValues[2].clone();
 
     // Find the maximum count in the histograms
     int maxCount = 0;
@@ -85,16 +106,21 @@ public class SimpleHistogramVisualization extends AbstractImageHistogram {
     }
     graphics.dispose();
 
-    return convertBufferedImageIntoRawImage(histogramImage);
+    // Take over the pixels of the chart instead of reading them back one at a time.
+    int[] pixels = ((DataBufferInt) histogramImage.getRaster().getDataBuffer()).getData();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] &= 0xFFFFFF;
+    }
+    return new Image(imgWidth, imgHeight, pixels);
   }
 
   /**
-   * Convert a BufferedImage into raw image data (string array).
+   * Convert an image into raw image data (string array).
    *
-   * @param img The BufferedImage to convert.
+   * @param img The image to convert.
    * @return A string array representing the raw image data.
    */
-  private String[] convertBufferedImageIntoRawImage(BufferedImage img) {
+  private String[] convertImageIntoRawImage(Image img) {
     int width = img.getWidth();
     int height = img.getHeight();
     String[] rawImage = new String[height + 2];
@@ -104,10 +130,8 @@ public class SimpleHistogramVisualization extends AbstractImageHistogram {
       StringBuilder line = new StringBuilder();
       for (int x = 0; x < width; x++) {
         int rgb = img.getRGB(x, y);
-        int red = (rgb >> 16) & 0xFF;
-        int green = (rgb >> 8) & 0xFF;
-        int blue = rgb & 0xFF;
-        line.append(String.format("%03d%03d%03d", red, green, blue));
+        line.append(String.format("%03d%03d%03d", Image.red(rgb), Image.green(rgb),
+            Image.blue(rgb)));
       }
       rawImage[y + 2] = line.toString();
     }
@@ -0,0 +1,240 @@
+package model;
+
+/**
+ * The image shown by a split view preview, kept between previews of the same operation on the
+ * same image. The left part of the preview is the operation applied to that part of the image
+ * alone, the right part is the image itself. Moving the split line only rewrites the columns the
+ * line passed over, in a buffer of its own, and the operation is only ever computed for columns
+ * that have been shown. Each move hands out a copy of the buffer, so an image that was shown is
+ * never changed, even while the view paints it or when a later move is cancelled part way.
+ *
+ * <p>A filter that reads a halo of h pixels around each pixel gives the same result on a band of
+ * columns as on the whole image, as long as the band reaches h columns past the pixels kept. The
+ * filtered columns are therefore computed in bands and kept for later previews. Only the last h
+ * columns left of the split line see the cut, so they are computed separately for each preview.
+ *
+ * <p>Moving the split line and finishing the operation are synchronized, since a retained
+ * preview may be finished on another thread.
+ */
+class SplitPreview {
+
+  /**
+   * Filtered columns are computed in bands of at least this many columns, so that small moves
+   * of the split line do not pay for the halo each time.
+   */
+  private static final int COLUMN_CHUNK = 64;
+
+  private final Image source;
+  private final String operation;
+  private final ImageFilter filter;
+  private final int halo;
+
+  /**
+   * The filter applied to the whole source, valid for the columns left of processedColumns.
+   */
+  private Image processed;
+  private int processedColumns;
+
+  /**
+   * The preview, updated in place and never handed out.
+   */
+  private final Image display;
+
+  /**
+   * The copy of the preview handed out by the last move, or null before the first one.
+   */
+  private Image shown;
+
+  /**
+   * The split the display currently shows.
+   */
+  private int splitWidth;
+
+  /**
+   * Columns from damagedFrom (inclusive) to damagedTo (exclusive) may hold a mix of two splits,
+   * left by a move that was cancelled part way. They are redrawn by the next move.
+   */
+  private int damagedFrom = Integer.MAX_VALUE;
+  private int damagedTo;
+
+  /**
+   * Creates a preview showing the source image unchanged.
+   *
+   * @param source    The image the preview is made of.
+   * @param operation A description of the operation and its parameters.
+   * @param filter    The operation.
+   */
+  SplitPreview(Image source, String operation, ImageFilter filter) {
+    this.source = source;
+    this.operation = operation;
+    this.filter = filter;
+    this.halo = filter.getHalo();
+    this.display = new Image(source.getWidth(), source.getHeight(),
+        source.getPixelData().clone());
+    this.display.setHistogram(source.getKnownHistogram());
+  }
+
+  /**
+   * Tells whether this preview shows the given operation on the given image.
+   *
+   * @param img The image.
+   * @param op  A description of the operation and its parameters.
+   * @return True if the preview can be moved to a new split instead of being rebuilt.
+   */
+  boolean matches(Image img, String op) {
+    return source == img && operation.equals(op);
+  }
+
+  /**
+   * Returns the image handed out by the last call to {@link #show(int)}.
+   *
+   * @return The preview image, or null if none was shown yet.
+   */
+  Image getShown() {
+    return shown;
+  }
+
+  /**
+   * Applies the operation to the whole source image, reusing the columns already computed for
+   * the preview.
+   *
+   * @return The operation applied to the whole image, which is not changed afterwards.
+   */
+  synchronized Image finish() {
+    ensureProcessed(source.getWidth());
+    return processed != null ? processed : filter.applyFilterToImage(source);
+  }
+
+  /**
+   * Moves the split line of the preview.
+   *
+   * @param newSplit The number of columns, from the left, showing the operation.
+   * @return A new preview image, which is not changed afterwards.
+   */
+  synchronized Image show(int newSplit) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int edgeStart = Math.max(0, newSplit - halo);
+    ensureProcessed(edgeStart);
+
+    // The columns next to the split line, filtered as if the image ended at the line.
+    int edgeBandStart = Math.max(0, newSplit - 2 * halo);
+    int edgeBandWidth = newSplit - edgeBandStart;
+    Image edge = edgeStart < newSplit
+        ? filter.applyFilterToImage(columns(source, edgeBandStart, newSplit)) : null;
+
+    int from = Math.max(0, Math.min(Math.min(splitWidth, newSplit) - halo, damagedFrom));
+    int to = Math.max(Math.max(splitWidth, newSplit), damagedTo);
+    int[][] known = display.getKnownHistogram();
+    int[][] removed = new int[3][256];
+    int[][] added = new int[3][256];
+    int[] dest = display.getPixelData();
+    try {
+      TileScheduler.forEachStrip(to - from, height, (yStart, yEnd) -> {
+        int[][] stripRemoved = new int[3][256];
+        int[][] stripAdded = new int[3][256];
+        for (int y = yStart; y < yEnd; y++) {
+          int offset = y * width;
+          if (known != null) {
+            ChannelHistogram.count(dest, offset + from, offset + to, stripRemoved);
+          }
+          copy(processed, offset, dest, offset, from, Math.min(to, edgeStart));
+          copy(edge, y * edgeBandWidth - edgeBandStart, dest, offset,
+              Math.max(from, edgeStart), Math.min(to, newSplit));
+          copy(source, offset, dest, offset, Math.max(from, newSplit), to);
+          if (known != null) {
+            ChannelHistogram.count(dest, offset + from, offset + to, stripAdded);
+          }
+        }
+        ChannelHistogram.merge(removed, stripRemoved);
+        ChannelHistogram.merge(added, stripAdded);
+      });
+    } catch (RuntimeException e) {
+      // Some strips may have been written: the next move redraws the columns and the histogram
+      // and version no longer hold.
+      damagedFrom = Math.min(damagedFrom, from);
+      damagedTo = Math.max(damagedTo, to);
+      display.markModified();
+      throw e;
+    }
+    damagedFrom = Integer.MAX_VALUE;
+    damagedTo = 0;
+    if (known != null) {
+      int[][] updated = ChannelHistogram.copyOf(known);
+      for (int c = 0; c < 3; c++) {
+        for (int v = 0; v < 256; v++) {
+          updated[c][v] += added[c][v] - removed[c][v];
+        }
+      }
+      // The pixels changed, so the display needs a new version before it gets its histogram.
+      display.markModified();
+      display.setHistogram(updated);
+    } else {
+      display.markModified();
+    }
+    splitWidth = newSplit;
+    shown = new Image(width, height, dest.clone());
+    shown.setHistogram(display.getKnownHistogram());
+    return shown;
+  }
+
+  /**
+   * Makes sure the filtered columns left of the given column are known.
+   *
+   * @param columnsNeeded The number of filtered columns needed, from the left.
+   */
+  private void ensureProcessed(int columnsNeeded) {
+    if (columnsNeeded <= processedColumns) {
+      return;
+    }
+    int width = source.getWidth();
+    int end = Math.min(width, Math.max(columnsNeeded, processedColumns + COLUMN_CHUNK));
+    int bandStart = Math.max(0, processedColumns - halo);
+    int bandEnd = Math.min(width, end + halo);
+    Image band = filter.applyFilterToImage(columns(source, bandStart, bandEnd));
+    if (processed == null) {
+      processed = new Image(width, source.getHeight());
+    }
+    int[] dest = processed.getPixelData();
+    for (int y = 0; y < source.getHeight(); y++) {
+      copy(band, y * band.getWidth() - bandStart, dest, y * width, processedColumns, end);
+    }
+    processedColumns = end;
+  }
+
+  /**
+   * Copies the columns from (inclusive) to to (exclusive) of one row.
+   *
+   * @param src       The image to copy from.
+   * @param srcOffset The index in the buffer of src of column 0 of the row, which may lie
+   *                  outside the buffer when src holds only some of the columns.
+   * @param dest      The buffer to copy to.
+   * @param offset    The index in dest of column 0 of the row.
+   * @param from      The first column.
+   * @param to        The column after the last column.
+   */
+  private static void copy(Image src, int srcOffset, int[] dest, int offset, int from, int to) {
+    if (from < to) {
+      System.arraycopy(src.getPixelData(), srcOffset + from, dest, offset + from, to - from);
+    }
+  }
+
+  /**
+   * Copies a band of columns of an image into an image of their own.
+   *
+   * @param img  The image.
+   * @param from The first column of the band.
+   * @param to   The column after the last column of the band.
+   * @return The band.
+   */
+  private static Image columns(Image img, int from, int to) {
+    int bandWidth = to - from;
+    Image band = new Image(bandWidth, img.getHeight());
+    int[] dest = band.getPixelData();
+    for (int y = 0; y < img.getHeight(); y++) {
+      System.arraycopy(img.getPixelData(), y * img.getWidth() + from, dest, y * bandWidth,
+          bandWidth);
+    }
+    return band;
+  }
+}
@@ -0,0 +1,262 @@
+package model;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs row-based image work on several cores. An image is cut into horizontal strips of whole
+ * rows which are processed in parallel on a shared ForkJoinPool. Every strip writes only its own
+ * rows of the destination, so the result is the same as processing the rows in order.
+ *
+ * <p>The number of threads defaults to the number of available processors and can be set with
+ * the {@code imea.parallelism} system property or {@link #setParallelism(int)}. A parallelism of
+ * one runs everything on the calling thread.
+ *
+ * <p>Strips started while a {@link WorkUsage} is tracked on the calling thread add their CPU
+ * time and allocation to it.
+ *
+ * <p>Work can be cancelled by interrupting the thread that started it. No new strip is started
+ * once the thread is interrupted, and the call ends with a {@link CancellationException}.
+ */
+public final class TileScheduler {
+
+  /**
+   * Images with fewer pixels than this are processed on the calling thread.
+   */
+  private static final int MIN_PARALLEL_PIXELS = 1 << 15;
+
+  /**
+   * Smallest number of pixels handed to a single strip.
+   */
+  private static final int MIN_STRIP_PIXELS = 1 << 13;
+
+  /**
+   * Number of strips per thread, more than one so that uneven strips balance out.
+   */
+  private static final int STRIPS_PER_THREAD = 4;
+
+  /**
+   * Number of pixels processed on the calling thread between checks for cancellation.
+   */
+  private static final int SEQUENTIAL_STRIP_PIXELS = 1 << 16;
+
+  private static int parallelism = initialParallelism();
+
+  private static ForkJoinPool pool;
+
+  /**
+   * Work done on a range of rows.
+   */
+  public interface RowTask {
+
+    /**
+     * Processes the rows from yStart (inclusive) to yEnd (exclusive).
+     *
+     * @param yStart The first row.
+     * @param yEnd   The row after the last row.
+     */
+    void apply(int yStart, int yEnd);
+  }
+
+  private TileScheduler() {
+  }
+
+  /**
+   * Returns the number of threads used for processing images.
+   *
+   * @return The parallelism level.
+   */
+  public static synchronized int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the number of threads used for processing images.
+   *
+   * @param level The parallelism level, 1 for sequential processing.
+   * @throws IllegalArgumentException if the level is less than one.
+   */
+  public static synchronized void setParallelism(int level) {
+    if (level < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+    if (level != parallelism && pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    parallelism = level;
+  }
+
+  /**
+   * Runs a task over all rows of an image of the given size, split into strips.
+   *
+   * @param width  The width of the image, used to size the strips.
+   * @param height The number of rows to process.
+   * @param halo   The number of rows above and below a strip that the task reads. Strips are
+   *               kept several times taller than the halo so re-reading it stays cheap.
+   * @param task   The work to do on each strip.
+   * @throws CancellationException if the calling thread was interrupted before all strips ran.
+   */
+  public static void forEachStrip(int width, int height, int halo, RowTask task) {
+    ForkJoinPool workers = getPool();
+    long pixels = (long) width * height;
+    if (workers == null || pixels < MIN_PARALLEL_PIXELS || height < 2) {
+      runSequentially(width, height, halo, task);
+      return;
+    }
+    int stripRows = Math.max(MIN_STRIP_PIXELS / Math.max(width, 1), 4 * halo + 1);
+    stripRows = Math.max(stripRows,
+        (height + workers.getParallelism() * STRIPS_PER_THREAD - 1)
+            / (workers.getParallelism() * STRIPS_PER_THREAD));
+    if (stripRows >= height) {
+      runSequentially(width, height, halo, task);
+      return;
+    }
+
+    checkCancelled();
+    AtomicBoolean cancelled = new AtomicBoolean();
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    Strip strips = new Strip(task, 0, height, stripRows, cancelled, failure,
+        WorkUsage.current());
+    workers.execute(strips);
+    try {
+      strips.get();
+    } catch (InterruptedException e) {
+      // Let the strips already running finish, but start no new ones.
+      cancelled.set(true);
+      strips.quietlyJoin();
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Image processing was cancelled.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    if (failure.get() != null) {
+      // Rethrow the original exception rather than the copy made by the pool.
+      throw failure.get();
+    }
+  }
+
+  /**
+   * Runs a task over all rows of an image, split into strips.
+   *
+   * @param width  The width of the image, used to size the strips.
+   * @param height The number of rows to process.
+   * @param task   The work to do on each strip.
+   * @throws CancellationException if the calling thread was interrupted before all strips ran.
+   */
+  public static void forEachStrip(int width, int height, RowTask task) {
+    forEachStrip(width, height, 0, task);
+  }
+
+  /**
+   * Runs a task on the calling thread, in strips large enough to keep the halo cheap, checking
+   * for cancellation before each one.
+   */
+  private static void runSequentially(int width, int height, int halo, RowTask task) {
+    int stripRows = Math.max(SEQUENTIAL_STRIP_PIXELS / Math.max(width, 1), 4 * halo + 1);
+    for (int yStart = 0; yStart < height || yStart == 0; yStart += stripRows) {
+      checkCancelled();
+      task.apply(yStart, Math.min(height, yStart + stripRows));
+    }
+  }
+
+  private static void checkCancelled() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("Image processing was cancelled.");
+    }
+  }
+
+  /**
+   * Returns the pool for the current parallelism, creating it on first use.
+   *
+   * @return The pool, or null when processing is sequential.
+   */
+  private static synchronized ForkJoinPool getPool() {
+    if (parallelism <= 1) {
+      return null;
+    }
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism, p -> {
+        ForkJoinWorkerThread thread =
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        thread.setDaemon(true);
+        thread.setName("imea-tile-" + thread.getPoolIndex());
+        return thread;
+      }, null, false);
+    }
+    return pool;
+  }
+
+  /**
+   * Reads the initial parallelism from the {@code imea.parallelism} system property.
+   *
+   * @return The configured level, or the number of available processors.
+   */
+  private static int initialParallelism() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    try {
+      int level = Integer.parseInt(System.getProperty("imea.parallelism",
+          String.valueOf(processors)).trim());
+      return level < 1 ? processors : level;
+    } catch (NumberFormatException e) {
+      return processors;
+    }
+  }
+
+  /**
+   * A range of rows, split in half until it is no taller than the strip height.
+   */
+  private static class Strip extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RowTask task;
+    private final int yStart;
+    private final int yEnd;
+    private final int stripRows;
+    private final AtomicBoolean cancelled;
+    private final AtomicReference<RuntimeException> failure;
+    private final WorkUsage usage;
+
+    Strip(RowTask task, int yStart, int yEnd, int stripRows, AtomicBoolean cancelled,
+          AtomicReference<RuntimeException> failure, WorkUsage usage) {
+      this.task = task;
+      this.yStart = yStart;
+      this.yEnd = yEnd;
+      this.stripRows = stripRows;
+      this.cancelled = cancelled;
+      this.failure = failure;
+      this.usage = usage;
+    }
+
+    @Override
+    protected void compute() {
+      if (failure.get() != null || cancelled.get()) {
+        return;
+      }
+      if (yEnd - yStart <= stripRows) {
+        try {
+          if (usage != null) {
+            usage.runStrip(task, yStart, yEnd);
+          } else {
+            task.apply(yStart, yEnd);
+          }
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e);
+        }
+        return;
+      }
+      int middle = yStart + (yEnd - yStart) / 2;
+      invokeAll(new Strip(task, yStart, middle, stripRows, cancelled, failure, usage),
+          new Strip(task, middle, yEnd, stripRows, cancelled, failure, usage));
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package model;
+
+/**
+ * The Haar wavelet coefficients of an image, keeping only the non-zero ones. After compression
+ * most coefficients are zero, so each channel stores the positions of the remaining coefficients
+ * in the padded square buffer together with their values.
+ */
+public class WaveletCoefficients {
+
+  private final int width;
+  private final int height;
+  private final int size;
+  private final int[][] positions;
+  private final double[][] values;
+
+  /**
+   * Constructs the coefficients of an image from their sparse form.
+   *
+   * @param width     The width of the image.
+   * @param height    The height of the image.
+   * @param positions For each of the red, green and blue channels, the strictly increasing
+   *                  positions of the non-zero coefficients in the padded buffer.
+   * @param values    For each channel, the coefficients at those positions.
+   * @throws IllegalArgumentException if the positions or values do not fit the image.
+   */
+  public WaveletCoefficients(int width, int height, int[][] positions, double[][] values) {
+    if (width < 0 || height < 0 || positions.length != 3 || values.length != 3) {
+      throw new IllegalArgumentException("Invalid wavelet coefficients.");
+    }
+    this.width = width;
+    this.height = height;
+    this.size = HaarWaveletTransform.paddedSize(width, height);
+    long length = (long) size * size;
+    for (int c = 0; c < 3; c++) {
+      if (positions[c].length != values[c].length) {
+        throw new IllegalArgumentException("Invalid wavelet coefficients.");
+      }
+      for (int i = 0; i < positions[c].length; i++) {
+        if (positions[c][i] < 0 || positions[c][i] >= length
+            || (i > 0 && positions[c][i] <= positions[c][i - 1])) {
+          throw new IllegalArgumentException("Invalid wavelet coefficients.");
+        }
+      }
+    }
+    this.positions = positions;
+    this.values = values;
+  }
+
+  /**
+   * Collects the non-zero coefficients of dense channel buffers.
+   *
+   * @param channels The red, green and blue buffers, {@code size * size} values row by row.
+   * @param width    The width of the image.
+   * @param height   The height of the image.
+   * @return The sparse coefficients.
+   */
+  public static WaveletCoefficients fromChannels(double[][] channels, int width, int height) {
+    int[][] positions = new int[3][];
+    double[][] values = new double[3][];
+    for (int c = 0; c < 3; c++) {
+      double[] channel = channels[c];
+      int count = 0;
+      for (double value : channel) {
+        if (value != 0) {
+          count++;
+        }
+      }
+      positions[c] = new int[count];
+      values[c] = new double[count];
+      int next = 0;
+      for (int i = 0; i < channel.length; i++) {
+        if (channel[i] != 0) {
+          positions[c][next] = i;
+          values[c][next++] = channel[i];
+        }
+      }
+    }
+    return new WaveletCoefficients(width, height, positions, values);
+  }
+
+  /**
+   * Expands the coefficients into dense channel buffers.
+   *
+   * @return The red, green and blue buffers, {@code size * size} values row by row.
+   */
+  public double[][] toChannels() {
+    double[][] channels = new double[3][size * size];
+    for (int c = 0; c < 3; c++) {
+      for (int i = 0; i < positions[c].length; i++) {
+        channels[c][positions[c][i]] = values[c][i];
+      }
+    }
+    return channels;
+  }
+
+  /**
+   * Get the width of the image.
+   *
+   * @return The width of the image.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Get the height of the image.
+   *
+   * @return The height of the image.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Get the width and height of the padded square buffers.
+   *
+   * @return The padded size.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Get the positions of the non-zero coefficients of a channel.
+   *
+   * @param channel The channel, 0 for red, 1 for green and 2 for blue.
+   * @return The positions, in increasing order. The array must not be modified.
+   */
+  public int[] getPositions(int channel) {
+    return positions[channel];
+  }
+
+  /**
+   * Get the non-zero coefficients of a channel.
+   *
+   * @param channel The channel, 0 for red, 1 for green and 2 for blue.
+   * @return The coefficients, in the order of their positions. The array must not be modified.
+   */
+  public double[] getValues(int channel) {
+    return values[channel];
+  }
+
+  /**
+   * Get the number of non-zero coefficients over all channels.
+   *
+   * @return The number of non-zero coefficients.
+   */
+  public int getNonZeroCount() {
+    return positions[0].length + positions[1].length + positions[2].length;
+  }
+}
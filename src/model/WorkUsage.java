@@ -0,0 +1,154 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CPU time and memory allocated by a piece of work, including the strips it hands to the
+ * image processing pool of {@link TileScheduler}. The work of the calling thread itself is read
+ * from the JVM when the usage is stopped. Strips started while the usage is tracked add their
+ * own share from the pool threads they run on.
+ *
+ * <p>CPU time and allocation are reported as -1 when the JVM does not measure them per thread.
+ */
+public final class WorkUsage {
+
+  private static final ThreadLocal<WorkUsage> CURRENT = new ThreadLocal<>();
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static final boolean CPU_SUPPORTED = enableCpuTime();
+
+  private static final boolean ALLOCATION_SUPPORTED = enableAllocation();
+
+  private final WorkUsage enclosing;
+  private final long startCpu;
+  private final long startAllocated;
+  private final AtomicLong poolCpu = new AtomicLong();
+  private final AtomicLong poolAllocated = new AtomicLong();
+  private long cpuNanos = -1;
+  private long allocatedBytes = -1;
+
+  private WorkUsage(WorkUsage enclosing) {
+    this.enclosing = enclosing;
+    this.startCpu = threadCpuNanos();
+    this.startAllocated = threadAllocatedBytes();
+  }
+
+  /**
+   * Starts tracking the work done by the calling thread until {@link #stop()} is called on it.
+   *
+   * @return The usage, to be stopped on the same thread.
+   */
+  public static WorkUsage start() {
+    WorkUsage usage = new WorkUsage(CURRENT.get());
+    CURRENT.set(usage);
+    return usage;
+  }
+
+  /**
+   * Stops tracking and adds the work of the calling thread to that of the pool.
+   *
+   * @throws IllegalStateException if called on another thread than start or twice.
+   */
+  public void stop() {
+    if (CURRENT.get() != this) {
+      throw new IllegalStateException("Usage is not being tracked on this thread.");
+    }
+    CURRENT.set(enclosing);
+    if (CPU_SUPPORTED) {
+      cpuNanos = threadCpuNanos() - startCpu + poolCpu.get();
+    }
+    if (ALLOCATION_SUPPORTED) {
+      allocatedBytes = threadAllocatedBytes() - startAllocated + poolAllocated.get();
+    }
+    if (enclosing != null) {
+      // Work done on the pool is counted by the enclosing usage as well.
+      enclosing.addPoolWork(poolCpu.get(), poolAllocated.get());
+    }
+  }
+
+  /**
+   * Returns the CPU time of the work, once stopped.
+   *
+   * @return The time in nanoseconds, or -1 if it is not measured.
+   */
+  public long getCpuNanos() {
+    return cpuNanos;
+  }
+
+  /**
+   * Returns the memory allocated by the work, once stopped.
+   *
+   * @return The number of bytes, or -1 if it is not measured.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Returns the usage tracked on the calling thread, for strips handed to the pool.
+   *
+   * @return The usage, or null if none is tracked.
+   */
+  static WorkUsage current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Runs a strip on a pool thread, adding its CPU time and allocation to this usage.
+   *
+   * @param task   The work of the strip.
+   * @param yStart The first row.
+   * @param yEnd   The row after the last row.
+   */
+  void runStrip(TileScheduler.RowTask task, int yStart, int yEnd) {
+    long cpu = threadCpuNanos();
+    long allocated = threadAllocatedBytes();
+    try {
+      task.apply(yStart, yEnd);
+    } finally {
+      addPoolWork(threadCpuNanos() - cpu, threadAllocatedBytes() - allocated);
+    }
+  }
+
+  private void addPoolWork(long cpu, long allocated) {
+    poolCpu.addAndGet(cpu);
+    poolAllocated.addAndGet(allocated);
+  }
+
+  private static long threadCpuNanos() {
+    return CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  private static long threadAllocatedBytes() {
+    return ALLOCATION_SUPPORTED
+        ? ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes() : 0;
+  }
+
+  private static boolean enableCpuTime() {
+    try {
+      if (THREADS.isCurrentThreadCpuTimeSupported()) {
+        THREADS.setThreadCpuTimeEnabled(true);
+        return true;
+      }
+    } catch (UnsupportedOperationException | SecurityException e) {
+      // Reported as not measured.
+    }
+    return false;
+  }
+
+  private static boolean enableAllocation() {
+    try {
+      if (THREADS instanceof com.sun.management.ThreadMXBean
+          && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()) {
+        ((com.sun.management.ThreadMXBean) THREADS).setThreadAllocatedMemoryEnabled(true);
+        return true;
+      }
+    } catch (UnsupportedOperationException | SecurityException e) {
+      // Reported as not measured.
+    }
+    return false;
+  }
+}
@@ -0,0 +1,138 @@
+package utility;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import model.Image;
+import model.RowSource;
+
+/**
+ * The rows of an image in a format read by ImageIO, such as PNG or JPEG, decoded a chunk of rows
+ * at a time through source regions, so the whole image is never held in memory.
+ *
+ * <p>ImageIO decoders cannot carry on where the last region ended, so each chunk decodes the
+ * file from its start up to the last row of the chunk. Chunks are made as tall as memory allows
+ * to keep the number of passes low, yet very large images read much faster from PPM files.
+ */
+class ImageIORowSource implements RowSource {
+
+  /**
+   * Memory taken by a chunk of decoded rows.
+   */
+  private static final long CHUNK_BYTES = 1 << 25;
+
+  private final ImageInputStream stream;
+  private final ImageReader reader;
+  private final int width;
+  private final int height;
+  private final int chunkRows;
+
+  // The chunk of decoded rows, starting at image row chunkTop, and the next row to be read.
+  private int[] chunk;
+  private int chunkTop;
+  private int chunkEnd;
+  private int next;
+
+  private ImageIORowSource(ImageInputStream stream, ImageReader reader) throws IOException {
+    this.stream = stream;
+    this.reader = reader;
+    this.width = reader.getWidth(0);
+    this.height = reader.getHeight(0);
+    this.chunkRows = (int) Math.max(1, Math.min(height,
+        CHUNK_BYTES / Integer.BYTES / Math.max(1, width)));
+  }
+
+  /**
+   * Opens an image file, reading only its header.
+   *
+   * @param path The file to read.
+   * @return The rows of the image.
+   * @throws IOException              If the file cannot be read.
+   * @throws IllegalArgumentException If no ImageIO reader knows the format of the file.
+   */
+  static ImageIORowSource open(Path path) throws IOException {
+    if (!Files.isReadable(path)) {
+      throw new NoSuchFileException(path.toString());
+    }
+    ImageInputStream stream = ImageIO.createImageInputStream(path.toFile());
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+      if (!readers.hasNext()) {
+        throw new IllegalArgumentException("Unsupported file format");
+      }
+      ImageReader reader = readers.next();
+      // Earlier rows are decoded again for every chunk, so the stream must allow seeking back.
+      reader.setInput(stream, false, true);
+      return new ImageIORowSource(stream, reader);
+    } catch (IOException | RuntimeException e) {
+      stream.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public void readRows(Image dest, int yStart, int yEnd) throws IOException {
+    if (dest.getWidth() != width) {
+      throw new IllegalArgumentException("Rows must be read into an image of the same width.");
+    }
+    if (yEnd - yStart > height - next) {
+      throw new IllegalArgumentException("Cannot read past the last row.");
+    }
+    int[] pixels = dest.getPixelData();
+    for (int y = yStart; y < yEnd; ) {
+      if (next == chunkEnd) {
+        readChunk();
+      }
+      int rows = Math.min(yEnd - y, chunkEnd - next);
+      int offset = dest.rowOffset(y);
+      int chunkOffset = (next - chunkTop) * width;
+      for (int i = 0; i < rows * width; i++) {
+        // Drop the alpha channel, images only hold RGB.
+        pixels[offset + i] = chunk[chunkOffset + i] & 0xFFFFFF;
+      }
+      next += rows;
+      y += rows;
+    }
+    dest.markModified();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.dispose();
+    stream.close();
+  }
+
+  /**
+   * Decodes the chunk of rows starting at the next row.
+   */
+  private void readChunk() throws IOException {
+    int rows = Math.min(chunkRows, height - next);
+    ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(0, next, width, rows));
+    BufferedImage region = reader.read(0, param);
+    if (chunk == null) {
+      chunk = new int[chunkRows * width];
+    }
+    region.getRGB(0, 0, width, rows, chunk, 0, width);
+    chunkTop = next;
+    chunkEnd = next + rows;
+  }
+}
@@ -2,14 +2,24 @@ package utility;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
-import java.io.BufferedWriter;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import javax.imageio.ImageIO;
-import java.util.Scanner;
+import model.CompressedImage;
+import model.Image;
+import model.ImageCompression;
+import model.ImageCompressionImpl;
+import model.RowSource;
 
 /**
  * Utility class for working with images, including loading, saving, and conversion between
@@ -18,169 +28,287 @@ import java.util.Scanner;
 public class ImageUtility {
 
   /**
-   * Load a PPM image from a file and convert it into a raw image format.
+   * The system property that turns on sidecar caches of decoded image files when set to true.
+   */
+  public static final String SIDECAR_PROPERTY = "imea.pix.sidecar";
+
+  /**
+   * The system property that makes PPM files be written in the binary (P6) form when set to
+   * true. They are written in the plain (P3) form otherwise.
+   */
+  public static final String BINARY_PPM_PROPERTY = "imea.ppm.binary";
+
+  /**
+   * Load a PPM image (plain P3 or binary P6) from a file.
    *
    * @param filename The path to the PPM image file to load.
-   * @return A string array representing the raw image.
+   * @return The loaded image, or null if the file does not exist.
+   * @throws IOException If there's an issue reading the image file.
    */
-  public static String[] loadPPMImage(String filename) {
-    Scanner sc;
+  public static Image loadPPMImage(String filename) throws IOException {
     try {
-      sc = new Scanner(new FileInputStream(filename));
-    } catch (FileNotFoundException e) {
+      return PPMCodec.read(Paths.get(filename));
+    } catch (NoSuchFileException e) {
       System.err.println("File " + filename + " not found!");
       return null;
     }
-    StringBuilder builder = new StringBuilder();
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (s.charAt(0) != '#') {
-        builder.append(s).append(System.lineSeparator());
-      }
-    }
-    sc = new Scanner(builder.toString());
-    String token;
-    token = sc.next();
-    if (!token.equals("P3")) {
-      System.err.println("Invalid PPM file: plain RAW file should begin with P3");
-    }
-    int width = sc.nextInt();
-    int height = sc.nextInt();
-    String[] rawImage = new String[height + 2];
-    rawImage[0] = String.valueOf(width);
-    rawImage[1] = String.valueOf(height);
-    int maxValue = sc.nextInt();
-    for (int y = 0; y < height; y++) {
-      StringBuilder line = new StringBuilder();
-      for (int x = 0; x < width; x++) {
-        int r = sc.nextInt();
-        int g = sc.nextInt();
-        int b = sc.nextInt();
-        line.append(String.format("%03d%03d%03d", r, g, b));
-      }
-      rawImage[y + 2] = line.toString();
-    }
-    return rawImage;
   }
 
   /**
-   * Load an image from a file and convert it into a raw image format.
+   * Load an image from a file in any format supported by ImageIO.
    *
    * @param imagePath The path to the image file to load.
-   * @return A string array representing the raw image.
+   * @return The loaded image.
    * @throws IOException If there's an issue reading the image file.
    */
-  public static String[] loadImage(String imagePath) throws IOException {
-    return convertBufferedImageIntoRawImage(ImageIO.read(new File(imagePath)));
+  public static Image loadImage(String imagePath) throws IOException {
+    return convertBufferedImageToImage(ImageIO.read(new File(imagePath)));
   }
 
   /**
-   * Save a raw image as a PPM image to a specified file path.
+   * Save an image as a PPM image to a specified file path, in the plain (P3) form unless the
+   * system property {@value #BINARY_PPM_PROPERTY} asks for the smaller binary (P6) form.
    *
-   * @param rawImage  The string array representing the raw image.
+   * @param image     The image to save.
    * @param imagePath The path to save the PPM image.
    * @throws IOException If there's an issue writing the image file.
    */
-  public static void saveImageAsPPM(String[] rawImage, String imagePath) throws IOException {
-    int height = Integer.parseInt(rawImage[1]);
-    // Each pixel is represented as "RRRGGGBBB" (9 characters)
-    int width = Integer.parseInt(rawImage[0]);
-    int maxColorValue = 255;
-
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(imagePath))) {
-      writer.write("P3\n");
-      writer.write(width + " " + height + "\n");
-      writer.write(maxColorValue + "\n");
-
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          String pixelData = rawImage[y + 2].substring(x * 9, (x + 1) * 9);
-          int red = Integer.parseInt(pixelData.substring(0, 3));
-          int green = Integer.parseInt(pixelData.substring(3, 6));
-          int blue = Integer.parseInt(pixelData.substring(6, 9));
-          writer.write(red + " " + green + " " + blue + " ");
+  public static void saveImageAsPPM(Image image, String imagePath) throws IOException {
+    PPMCodec.write(image, Paths.get(imagePath), Boolean.getBoolean(BINARY_PPM_PROPERTY));
+  }
+
+  /**
+   * Load an image stored in the wavelet format (.hwt), reconstructing it from its coefficients.
+   *
+   * @param filename The path to the wavelet file to load.
+   * @return The loaded image, or null if the file does not exist.
+   * @throws IOException If there's an issue reading the image file.
+   */
+  public static Image loadWaveletImage(String filename) throws IOException {
+    try {
+      return new ImageCompressionImpl().reconstruct(WaveletCodec.read(Paths.get(filename)));
+    } catch (NoSuchFileException e) {
+      System.err.println("File " + filename + " not found!");
+      return null;
+    }
+  }
+
+  /**
+   * Load an image stored in the uncompressed cache format (.pix).
+   *
+   * @param filename The path to the pix file to load.
+   * @return The loaded image, or null if the file does not exist.
+   * @throws IOException If there's an issue reading the image file.
+   */
+  public static Image loadPixImage(String filename) throws IOException {
+    try {
+      return PixCodec.read(Paths.get(filename));
+    } catch (NoSuchFileException e) {
+      System.err.println("File " + filename + " not found!");
+      return null;
+    }
+  }
+
+  /**
+   * Save an image in the uncompressed cache format (.pix), which loads without any decoding.
+   *
+   * @param image     The image to save.
+   * @param imagePath The path to save the pix file.
+   * @throws IOException If there's an issue writing the image file.
+   */
+  public static void saveImageAsPix(Image image, String imagePath) throws IOException {
+    PixCodec.write(image, Paths.get(imagePath), -1, -1);
+  }
+
+  /**
+   * Load the sidecar cache of an image file, the pix file next to it with .pix added to its name,
+   * when sidecar caches are turned on with the system property {@value #SIDECAR_PROPERTY} and
+   * the sidecar was decoded from the file as it is now.
+   *
+   * @param imagePath The path to the image file.
+   * @return The cached image, or null if there is no up to date sidecar.
+   */
+  public static Image loadSidecar(String imagePath) {
+    if (!Boolean.getBoolean(SIDECAR_PROPERTY)) {
+      return null;
+    }
+    Path sidecar = sidecarOf(imagePath);
+    try {
+      BasicFileAttributes source = Files.readAttributes(Paths.get(imagePath),
+          BasicFileAttributes.class);
+      if (PixCodec.isDecodedFrom(sidecar, source.size(), source.lastModifiedTime().toMillis())) {
+        return PixCodec.read(sidecar);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // A missing or damaged sidecar means decoding the file again.
+    }
+    return null;
+  }
+
+  /**
+   * Save the sidecar cache of an image just decoded from a file, when sidecar caches are turned
+   * on with the system property {@value #SIDECAR_PROPERTY}. The sidecar replaces any older one
+   * in a single step, so a load running at the same time never sees half a file. A sidecar
+   * that cannot be written is left out, the file is simply decoded again next time.
+   *
+   * @param image     The image decoded from the file, or null to do nothing.
+   * @param imagePath The path to the image file.
+   */
+  public static void saveSidecar(Image image, String imagePath) {
+    if (!Boolean.getBoolean(SIDECAR_PROPERTY) || image == null) {
+      return;
+    }
+    Path sidecar = sidecarOf(imagePath);
+    Path temp = null;
+    try {
+      BasicFileAttributes source = Files.readAttributes(Paths.get(imagePath),
+          BasicFileAttributes.class);
+      temp = Files.createTempFile(sidecar.getParent(), sidecar.getFileName().toString(), ".tmp");
+      PixCodec.write(image, temp, source.size(), source.lastModifiedTime().toMillis());
+      Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      try {
+        if (temp != null) {
+          Files.deleteIfExists(temp);
         }
-        writer.write("\n");
+      } catch (IOException ignored) {
+        // Nothing more can be done about a temporary file that cannot be deleted.
       }
     }
   }
 
+  private static Path sidecarOf(String imagePath) {
+    Path path = Paths.get(imagePath).toAbsolutePath();
+    return path.resolveSibling(path.getFileName() + ".pix");
+  }
+
+  /**
+   * Save an image in the wavelet format (.hwt). An image produced by compression is stored with
+   * the coefficients that remained after compression, any other image with all its coefficients.
+   *
+   * @param image     The image to save.
+   * @param imagePath The path to save the wavelet file.
+   * @throws IOException If there's an issue writing the image file.
+   */
+  public static void saveImageAsWavelet(Image image, String imagePath) throws IOException {
+    ImageCompression compression = new ImageCompressionImpl();
+    WaveletCodec.write(image instanceof CompressedImage
+        ? ((CompressedImage) image).getCoefficients()
+        : compression.transform(image), Paths.get(imagePath));
+  }
+
   /**
-   * Save a raw image as an image with the specified format.
+   * Save an image with the specified format.
    *
-   * @param rawImage  The string array representing the raw image.
+   * @param image     The image to save.
    * @param imagePath The path to save the image.
    * @param format    The image format to save (e.g., "jpg," "jpeg," "bmp," "png").
    * @throws IOException              If there's an issue writing the image file.
    * @throws IllegalArgumentException If the specified format is unsupported.
    */
-  public static void saveImageWithFormat(String[] rawImage, String imagePath, String format)
+  public static void saveImageWithFormat(Image image, String imagePath, String format)
       throws IOException {
-    ImageUtility util = new ImageUtility();
-    BufferedImage bImage = util.convertRawImageToBufferedImage(rawImage);
+    BufferedImage bImage = convertImageToBufferedImage(image);
     if (!ImageIO.write(bImage, format, new File(imagePath))) {
       throw new IllegalArgumentException("Unsupported file format");
     }
   }
 
   /**
-   * Convert a raw image (string array) into a BufferedImage.
+   * Opens an image file to be read a few rows at a time, for images too large to be loaded. PPM
+   * files are decoded as their rows are read, other formats read by ImageIO in chunks of rows.
    *
-   * @param rawImage The string array representing the raw image.
-   * @return A BufferedImage representation of the raw image.
+   * @param imagePath The path to the image file.
+   * @return The rows of the image.
+   * @throws IOException              If there's an issue reading the image file.
+   * @throws IllegalArgumentException If the format cannot be read a few rows at a time.
    */
-  public BufferedImage convertRawImageToBufferedImage(String[] rawImage) {
-    if (rawImage == null || rawImage.length == 0) {
-      return null;
+  public static RowSource openRowSource(String imagePath) throws IOException {
+    switch (extensionOf(imagePath)) {
+      case "ppm":
+        return PPMCodec.openRows(Paths.get(imagePath));
+      case "hwt":
+        throw new IllegalArgumentException("Wavelet files can only be read whole.");
+      default:
+        return ImageIORowSource.open(Paths.get(imagePath));
     }
+  }
 
-    int height = Integer.parseInt(rawImage[1]);
-    int width = Integer.parseInt(rawImage[0]);
-
-    BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-    int[] pixels = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
-
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        String pixelData = rawImage[y + 2].substring(x * 9, (x + 1) * 9);
-        int red = Integer.parseInt(
-            pixelData.substring(0, 3).replaceAll("[^\\d]", ""));
-        int green = Integer.parseInt(
-            pixelData.substring(3, 6).replaceAll("[^\\d]", ""));
-        int blue = Integer.parseInt(
-            pixelData.substring(6, 9).replaceAll("[^\\d]", ""));
-        int rgb = (red << 16) | (green << 8) | blue;
-        pixels[y * width + x] = rgb;
+  /**
+   * Save the rows of an image read a few at a time, for images too large to be held in memory.
+   * Images can be written this way as PPM (in the form chosen as for {@link #saveImageAsPPM}) or
+   * PNG. The image is written to a temporary file next to the target and moved over it once
+   * complete, so the rows may be read from the very file being replaced.
+   *
+   * @param rows      The rows of the image, all of which are read.
+   * @param imagePath The path to save the image.
+   * @throws IOException              If there's an issue reading the rows or writing the file.
+   * @throws IllegalArgumentException If the format cannot be written a few rows at a time.
+   */
+  public static void saveRows(RowSource rows, String imagePath) throws IOException {
+    String extension = extensionOf(imagePath);
+    if (!extension.equals("ppm") && !extension.equals("png")) {
+      throw new IllegalArgumentException("Only ppm and png files can be written a few rows"
+          + " at a time.");
+    }
+    Path target = Paths.get(imagePath).toAbsolutePath();
+    Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      if (extension.equals("ppm")) {
+        PPMCodec.write(rows, temp, Boolean.getBoolean(BINARY_PPM_PROPERTY));
+      } else {
+        // The PNG encoder fetches the image a row at a time, from the top down.
+        try {
+          ImageIO.write(new RowSourceImage(rows), "PNG", temp.toFile());
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
       }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temp);
+      throw e;
     }
+  }
 
-    return bufferedImage;
+  private static String extensionOf(String imagePath) {
+    return imagePath.substring(imagePath.lastIndexOf(".") + 1).toLowerCase();
+  }
+
+  /**
+   * Convert an Image into a TYPE_INT_RGB BufferedImage. The BufferedImage shares the packed pixel
+   * buffer of the image instead of copying it, so later changes to either are visible in both.
+   *
+   * @param image The image to convert.
+   * @return A BufferedImage view of the image, or null if the image is null or empty.
+   */
+  public static BufferedImage convertImageToBufferedImage(Image image) {
+    if (image == null || image.getWidth() == 0 || image.getHeight() == 0) {
+      return null;
+    }
+    int[] pixels = image.getPixelData();
+    DirectColorModel colorModel = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+    WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+        image.getWidth(), image.getHeight(), image.getWidth(), colorModel.getMasks(), null);
+    return new BufferedImage(colorModel, raster, false, null);
   }
 
   /**
-   * Convert a BufferedImage into a raw image (string array).
+   * Convert a BufferedImage into an Image, copying its pixels in bulk.
    *
    * @param img The BufferedImage to convert.
-   * @return A string array representing the raw image.
+   * @return The image holding the RGB values of the BufferedImage.
    */
-  public static String[] convertBufferedImageIntoRawImage(BufferedImage img) {
+  public static Image convertBufferedImageToImage(BufferedImage img) {
     int width = img.getWidth();
     int height = img.getHeight();
-    String[] rawImage = new String[height + 2];
-    rawImage[0] = String.valueOf(width);
-    rawImage[1] = String.valueOf(height);
-    for (int y = 0; y < height; y++) {
-      StringBuilder line = new StringBuilder();
-      for (int x = 0; x < width; x++) {
-        int rgb = img.getRGB(x, y);
-        int red = (rgb >> 16) & 0xFF;
-        int green = (rgb >> 8) & 0xFF;
-        int blue = rgb & 0xFF;
-        line.append(String.format("%03d%03d%03d", red, green, blue));
-      }
-      rawImage[y + 2] = line.toString();
+    int[] pixels = img.getRGB(0, 0, width, height, null, 0, width);
+    for (int i = 0; i < pixels.length; i++) {
+      // Drop the alpha channel, images only hold RGB.
+      pixels[i] &= 0xFFFFFF;
     }
-    return rawImage;
+    return new Image(width, height, pixels);
   }
 }
@@ -0,0 +1,478 @@
+package utility;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import model.Image;
+import model.RowSource;
+
+/**
+ * Reader and writer for PPM images in both the plain (P3) and the binary (P6) flavour. Files are
+ * streamed through a file channel and a fixed size buffer, pixels are decoded straight into the
+ * packed buffer of an {@link Image} without building any intermediate text. Images larger than
+ * the heap can be read and written a few rows at a time through a {@link RowSource}.
+ */
+public class PPMCodec {
+
+  /**
+   * Size of the buffer used for reading and writing.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Number of pixels read at a time when writing rows taken from a {@link RowSource}.
+   */
+  private static final int BAND_PIXELS = 1 << 20;
+
+  /**
+   * Reads a P3 or P6 image. Samples are rescaled to 0-255 when the file uses another maximum.
+   *
+   * @param path The file to read.
+   * @return The decoded image.
+   * @throws IOException              If the file cannot be read.
+   * @throws IllegalArgumentException If the file is not a valid PPM image.
+   */
+  public static Image read(Path path) throws IOException {
+    try (RowSource rows = openRows(path)) {
+      if ((long) rows.getWidth() * rows.getHeight() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid PPM file: image is too large");
+      }
+      Image image = new Image(rows.getWidth(), rows.getHeight());
+      rows.readRows(image, 0, image.getHeight());
+      return image;
+    }
+  }
+
+  /**
+   * Opens a P3 or P6 image to be read a few rows at a time. Only the header is read here, and
+   * the rows are decoded as they are read, so images of any size can be read.
+   *
+   * @param path The file to read.
+   * @return The rows of the image.
+   * @throws IOException              If the file cannot be read.
+   * @throws IllegalArgumentException If the file is not a valid PPM image.
+   */
+  public static RowSource openRows(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new RowReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes an image as a P3 (plain) or P6 (binary) PPM file with a maximum value of 255.
+   *
+   * @param image  The image to write.
+   * @param path   The file to write.
+   * @param binary True for P6, false for P3.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(Image image, Path path, boolean binary) throws IOException {
+    try (Writer out = new Writer(path)) {
+      writeHeader(out, image.getWidth(), image.getHeight(), binary);
+      writeRows(out, image, 0, image.getHeight(), binary);
+    }
+  }
+
+  /**
+   * Writes the rows of an image as a P3 (plain) or P6 (binary) PPM file with a maximum value of
+   * 255, reading them a few at a time, so images of any size can be written.
+   *
+   * @param rows   The rows of the image, all of which are read.
+   * @param path   The file to write.
+   * @param binary True for P6, false for P3.
+   * @throws IOException If the rows cannot be read or the file cannot be written.
+   */
+  public static void write(RowSource rows, Path path, boolean binary) throws IOException {
+    int width = rows.getWidth();
+    int height = rows.getHeight();
+    Image band = new Image(width, Math.max(1, Math.min(height, BAND_PIXELS / Math.max(1, width))));
+    try (Writer out = new Writer(path)) {
+      writeHeader(out, width, height, binary);
+      for (int y = 0; y < height; y += band.getHeight()) {
+        int count = Math.min(band.getHeight(), height - y);
+        rows.readRows(band, 0, count);
+        writeRows(out, band, 0, count, binary);
+      }
+    }
+  }
+
+  /**
+   * Writes the PPM header.
+   *
+   * @param out    The destination.
+   * @param width  The width of the image.
+   * @param height The height of the image.
+   * @param binary True for P6, false for P3.
+   * @throws IOException If writing fails.
+   */
+  static void writeHeader(Writer out, int width, int height, boolean binary) throws IOException {
+    out.writeAscii((binary ? "P6" : "P3") + "\n" + width + " " + height + "\n255\n");
+  }
+
+  /**
+   * Writes a range of rows of pixel data, in the layout matching the header.
+   *
+   * @param out    The destination.
+   * @param image  The image holding the rows.
+   * @param yStart The first row to write.
+   * @param yEnd   The row after the last row to write.
+   * @param binary True for P6, false for P3.
+   * @throws IOException If writing fails.
+   */
+  static void writeRows(Writer out, Image image, int yStart, int yEnd, boolean binary)
+      throws IOException {
+    int[] pixels = image.getPixelData();
+    int width = image.getWidth();
+    for (int y = yStart; y < yEnd; y++) {
+      int offset = image.rowOffset(y);
+      for (int x = 0; x < width; x++) {
+        int rgb = pixels[offset + x];
+        if (binary) {
+          out.writeByte(Image.red(rgb));
+          out.writeByte(Image.green(rgb));
+          out.writeByte(Image.blue(rgb));
+        } else {
+          out.writeDecimal(Image.red(rgb));
+          out.writeByte(' ');
+          out.writeDecimal(Image.green(rgb));
+          out.writeByte(' ');
+          out.writeDecimal(Image.blue(rgb));
+          out.writeByte(' ');
+        }
+      }
+      if (!binary) {
+        out.writeByte('\n');
+      }
+    }
+  }
+
+  /**
+   * Rescales a sample to the range 0-255.
+   *
+   * @param value    The sample read from the file.
+   * @param maxValue The maximum sample value declared by the file.
+   * @return The rescaled sample.
+   */
+  private static int scale(int value, int maxValue) {
+    if (value < 0 || value > maxValue) {
+      throw new IllegalArgumentException("Invalid PPM file: sample " + value + " out of range");
+    }
+    return maxValue == 255 ? value : (value * 255 + maxValue / 2) / maxValue;
+  }
+
+  /**
+   * The rows of a PPM file, decoded from the file as they are read.
+   */
+  private static class RowReader implements RowSource {
+
+    private final FileChannel channel;
+    private final Reader in;
+    private final boolean plain;
+    private final int width;
+    private final int height;
+    private final int maxValue;
+    private int rowsRead;
+
+    /**
+     * Reads the header of the file.
+     *
+     * @param channel The channel to read from, positioned at the start of the file.
+     * @throws IOException If reading fails.
+     */
+    RowReader(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.in = new Reader(channel);
+      if (in.nextNonBlank() != 'P') {
+        throw new IllegalArgumentException("Invalid PPM file: should begin with P3 or P6");
+      }
+      int format = in.nextByte();
+      if (format != '3' && format != '6') {
+        throw new IllegalArgumentException("Invalid PPM file: should begin with P3 or P6");
+      }
+      this.plain = format == '3';
+      this.width = in.nextInt();
+      this.height = in.nextInt();
+      this.maxValue = in.nextInt();
+      if (maxValue <= 0 || maxValue > 65535) {
+        throw new IllegalArgumentException("Invalid PPM file: bad maximum value " + maxValue);
+      }
+    }
+
+    @Override
+    public int getWidth() {
+      return width;
+    }
+
+    @Override
+    public int getHeight() {
+      return height;
+    }
+
+    @Override
+    public void readRows(Image dest, int yStart, int yEnd) throws IOException {
+      if (dest.getWidth() != width) {
+        throw new IllegalArgumentException("Rows must be read into an image of the same width.");
+      }
+      if (yEnd - yStart > height - rowsRead) {
+        throw new IllegalArgumentException("Cannot read past the last row.");
+      }
+      if (yEnd <= yStart) {
+        return;
+      }
+      int[] pixels = dest.getPixelData();
+      int from = dest.rowOffset(yStart);
+      int to = from + (yEnd - yStart) * width;
+      if (plain) {
+        for (int i = from; i < to; i++) {
+          int red = scale(in.nextInt(), maxValue);
+          int green = scale(in.nextInt(), maxValue);
+          int blue = scale(in.nextInt(), maxValue);
+          pixels[i] = Image.packRGB(red, green, blue);
+        }
+      } else if (maxValue < 256) {
+        for (int i = from; i < to; i++) {
+          int red = scale(in.nextByte(), maxValue);
+          int green = scale(in.nextByte(), maxValue);
+          int blue = scale(in.nextByte(), maxValue);
+          pixels[i] = Image.packRGB(red, green, blue);
+        }
+      } else {
+        for (int i = from; i < to; i++) {
+          int red = scale(in.nextShort(), maxValue);
+          int green = scale(in.nextShort(), maxValue);
+          int blue = scale(in.nextShort(), maxValue);
+          pixels[i] = Image.packRGB(red, green, blue);
+        }
+      }
+      rowsRead += yEnd - yStart;
+      dest.markModified();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  /**
+   * Buffered byte reader with a tokenizer for the plain parts of a PPM file.
+   */
+  static class Reader {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a reader over the whole channel.
+     *
+     * @param channel The channel to read from.
+     */
+    Reader(FileChannel channel) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      this.buffer.limit(0);
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return The unsigned byte value.
+     * @throws IOException If reading fails or the end of the file is reached.
+     */
+    int nextByte() throws IOException {
+      if (!buffer.hasRemaining()) {
+        buffer.clear();
+        int read;
+        do {
+          read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        if (read < 0) {
+          throw new EOFException("Unexpected end of PPM file");
+        }
+      }
+      return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Reads the next big-endian 16 bit sample.
+     *
+     * @return The sample value.
+     * @throws IOException If reading fails or the end of the file is reached.
+     */
+    int nextShort() throws IOException {
+      return (nextByte() << 8) | nextByte();
+    }
+
+    /**
+     * Reads the next decimal number, skipping whitespace and comments before it. The single
+     * character ending the number is consumed, which is what separates the header from the
+     * raster of a P6 file.
+     *
+     * @return The number.
+     * @throws IOException If reading fails or the end of the file is reached.
+     */
+    int nextInt() throws IOException {
+      int c = nextNonBlank();
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("Invalid PPM file: expected a number");
+      }
+      int value = 0;
+      while (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+        if (value > 0x7FFFFFF) {
+          throw new IllegalArgumentException("Invalid PPM file: number too large");
+        }
+        c = nextByte0();
+      }
+      if (c == '#') {
+        skipComment();
+      } else if (c >= 0 && !isWhitespace(c)) {
+        throw new IllegalArgumentException("Invalid PPM file: expected a number");
+      }
+      return value;
+    }
+
+    /**
+     * Reads the next byte that is neither whitespace nor part of a comment.
+     *
+     * @return The unsigned byte value.
+     * @throws IOException If reading fails or the end of the file is reached.
+     */
+    int nextNonBlank() throws IOException {
+      int c = nextByte();
+      while (isWhitespace(c) || c == '#') {
+        if (c == '#') {
+          skipComment();
+        }
+        c = nextByte();
+      }
+      return c;
+    }
+
+    /**
+     * Reads the next byte, returning -1 instead of failing at the end of the file.
+     *
+     * @return The unsigned byte value, or -1 at the end of the file.
+     * @throws IOException If reading fails.
+     */
+    private int nextByte0() throws IOException {
+      try {
+        return nextByte();
+      } catch (EOFException e) {
+        return -1;
+      }
+    }
+
+    /**
+     * Skips the rest of a comment line.
+     *
+     * @throws IOException If reading fails.
+     */
+    private void skipComment() throws IOException {
+      int c;
+      do {
+        c = nextByte0();
+      } while (c != '\n' && c != '\r' && c >= 0);
+    }
+
+    private static boolean isWhitespace(int c) {
+      return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0x0B || c == '\f';
+    }
+  }
+
+  /**
+   * Buffered byte writer that reuses one buffer for the whole file.
+   */
+  static class Writer implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates or truncates the file to write.
+     *
+     * @param path The file to write.
+     * @throws IOException If the file cannot be opened.
+     */
+    Writer(Path path) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param b The byte to write.
+     * @throws IOException If writing fails.
+     */
+    void writeByte(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put((byte) b);
+    }
+
+    /**
+     * Writes a channel value (0-255) as decimal digits without padding.
+     *
+     * @param value The value to write.
+     * @throws IOException If writing fails.
+     */
+    void writeDecimal(int value) throws IOException {
+      if (buffer.remaining() < 3) {
+        flush();
+      }
+      if (value >= 100) {
+        buffer.put((byte) ('0' + value / 100));
+      }
+      if (value >= 10) {
+        buffer.put((byte) ('0' + value / 10 % 10));
+      }
+      buffer.put((byte) ('0' + value % 10));
+    }
+
+    /**
+     * Writes a string of ASCII characters.
+     *
+     * @param text The text to write.
+     * @throws IOException If writing fails.
+     */
+    void writeAscii(String text) throws IOException {
+      for (byte b : text.getBytes(StandardCharsets.US_ASCII)) {
+        writeByte(b);
+      }
+    }
+
+    /**
+     * Writes out everything buffered so far.
+     *
+     * @throws IOException If writing fails.
+     */
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
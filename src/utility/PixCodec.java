@@ -0,0 +1,142 @@
+package utility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import model.Image;
+
+/**
+ * Reader and writer for the uncompressed image cache format (.pix). The file holds the packed
+ * pixel buffer of an {@link Image} as it is in memory, so reading it is a bulk copy out of the
+ * memory-mapped file into the pixel buffer, with nothing to decode. Files are several times
+ * larger than PNG or JPEG files, they are meant for images loaded over and over.
+ *
+ * <p>The file starts with a 32 byte header: the magic bytes {@code PIX1}, the width and height
+ * of the image as ints, an int that is always 0, and the size and last modification time in
+ * milliseconds of the file the image was decoded from as longs, or -1 for both when it was not
+ * decoded from a file. The packed {@code 0x00RRGGBB} values follow, row by row, one int per
+ * pixel. All numbers are little endian, the byte order of the common processors.
+ */
+public class PixCodec {
+
+  private static final byte[] MAGIC = {'P', 'I', 'X', '1'};
+
+  private static final int HEADER_SIZE = 32;
+
+  /**
+   * Number of pixels mapped or written at a time, keeping each mapping well below 2 GB.
+   */
+  private static final int CHUNK_PIXELS = 1 << 26;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Reads an image.
+   *
+   * @param path The file to read.
+   * @return The image.
+   * @throws IOException              If the file cannot be read.
+   * @throws IllegalArgumentException If the file is not a valid pix file.
+   */
+  public static Image read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = readHeader(channel);
+      int width = header.getInt(4);
+      int height = header.getInt(8);
+      if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid pix file: bad image size");
+      }
+      if (channel.size() != HEADER_SIZE + 4L * width * height) {
+        throw new IllegalArgumentException("Invalid pix file: wrong file size");
+      }
+      int[] pixels = new int[width * height];
+      for (int from = 0; from < pixels.length; from += CHUNK_PIXELS) {
+        int count = Math.min(CHUNK_PIXELS, pixels.length - from);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+            HEADER_SIZE + 4L * from, 4L * count);
+        mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels, from, count);
+      }
+      return new Image(width, height, pixels);
+    }
+  }
+
+  /**
+   * Writes an image.
+   *
+   * @param image          The image to write.
+   * @param path           The file to write.
+   * @param sourceSize     The size of the file the image was decoded from, or -1.
+   * @param sourceModified The last modification time of that file in milliseconds, or -1.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(Image image, Path path, long sourceSize, long sourceModified)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.put(MAGIC).putInt(image.getWidth()).putInt(image.getHeight()).putInt(0)
+          .putLong(sourceSize).putLong(sourceModified).flip();
+      writeFully(channel, header);
+
+      int[] pixels = image.getPixelData();
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      IntBuffer ints = buffer.asIntBuffer();
+      for (int from = 0; from < pixels.length; from += ints.capacity()) {
+        int count = Math.min(ints.capacity(), pixels.length - from);
+        ints.clear();
+        ints.put(pixels, from, count);
+        buffer.clear().limit(4 * count);
+        writeFully(channel, buffer);
+      }
+    }
+  }
+
+  /**
+   * Tells whether a pix file was decoded from a file of the given size and modification time,
+   * reading only its header.
+   *
+   * @param path           The pix file.
+   * @param sourceSize     The size of the source file.
+   * @param sourceModified The last modification time of the source file in milliseconds.
+   * @return True if the pix file is valid and records that size and time.
+   * @throws IOException If the file cannot be read.
+   */
+  public static boolean isDecodedFrom(Path path, long sourceSize, long sourceModified)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = readHeader(channel);
+      return header.getLong(16) == sourceSize && header.getLong(24) == sourceModified;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads and checks the header.
+   */
+  private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining()) {
+      if (channel.read(header) < 0) {
+        throw new IllegalArgumentException("Invalid pix file: header is too short");
+      }
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (header.get(i) != MAGIC[i]) {
+        throw new IllegalArgumentException("Invalid pix file: should begin with PIX1");
+      }
+    }
+    return header;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package utility;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+import model.Image;
+import model.RowSource;
+
+/**
+ * A view of the rows of a {@link RowSource} as an ImageIO image, for encoders that fetch the
+ * image a row at a time from the top, such as the PNG encoder. Rows are read from the source a
+ * band at a time as the encoder asks for them, so the whole image is never held in memory.
+ *
+ * <p>Asking for rows above the current band fails with an IllegalStateException, and a failure
+ * to read the source is thrown as an {@link UncheckedIOException}.
+ */
+class RowSourceImage implements RenderedImage {
+
+  /**
+   * Number of pixels read from the source at a time.
+   */
+  private static final int BAND_PIXELS = 1 << 20;
+
+  private static final DirectColorModel COLOR_MODEL =
+      new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+
+  private final RowSource rows;
+  private final Image band;
+  private int bandTop;
+  private int bandEnd;
+
+  /**
+   * Views the rows of a source as an image.
+   *
+   * @param rows The rows, which are read as the image is encoded.
+   */
+  RowSourceImage(RowSource rows) {
+    this.rows = rows;
+    this.band = new Image(rows.getWidth(),
+        Math.max(1, Math.min(rows.getHeight(), BAND_PIXELS / Math.max(1, rows.getWidth()))));
+  }
+
+  @Override
+  public Raster getData(Rectangle rect) {
+    if (rect.y < bandTop) {
+      throw new IllegalStateException("Rows must be read from the top of the image down.");
+    }
+    int[] pixels = new int[rect.width * rect.height];
+    int[] bandPixels = band.getPixelData();
+    for (int y = rect.y; y < rect.y + rect.height; y++) {
+      while (y >= bandEnd) {
+        readBand();
+      }
+      System.arraycopy(bandPixels, band.rowOffset(y - bandTop) + rect.x, pixels,
+          (y - rect.y) * rect.width, rect.width);
+    }
+    return Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), rect.width,
+        rect.height, rect.width, COLOR_MODEL.getMasks(), new Point(rect.x, rect.y));
+  }
+
+  @Override
+  public Raster getData() {
+    return getData(new Rectangle(0, 0, getWidth(), getHeight()));
+  }
+
+  @Override
+  public WritableRaster copyData(WritableRaster raster) {
+    if (raster == null) {
+      raster = COLOR_MODEL.createCompatibleWritableRaster(getWidth(), getHeight());
+    }
+    raster.setRect(getData(raster.getBounds()));
+    return raster;
+  }
+
+  @Override
+  public Raster getTile(int tileX, int tileY) {
+    return getData();
+  }
+
+  @Override
+  public Vector<RenderedImage> getSources() {
+    return null;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    return java.awt.Image.UndefinedProperty;
+  }
+
+  @Override
+  public String[] getPropertyNames() {
+    return null;
+  }
+
+  @Override
+  public ColorModel getColorModel() {
+    return COLOR_MODEL;
+  }
+
+  @Override
+  public SampleModel getSampleModel() {
+    return COLOR_MODEL.createCompatibleSampleModel(getWidth(), getHeight());
+  }
+
+  @Override
+  public int getWidth() {
+    return rows.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return rows.getHeight();
+  }
+
+  @Override
+  public int getMinX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinY() {
+    return 0;
+  }
+
+  @Override
+  public int getNumXTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getNumYTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getMinTileX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinTileY() {
+    return 0;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return getWidth();
+  }
+
+  @Override
+  public int getTileHeight() {
+    return getHeight();
+  }
+
+  @Override
+  public int getTileGridXOffset() {
+    return 0;
+  }
+
+  @Override
+  public int getTileGridYOffset() {
+    return 0;
+  }
+
+  /**
+   * Reads the band of rows following the current one.
+   */
+  private void readBand() {
+    int count = Math.min(band.getHeight(), getHeight() - bandEnd);
+    if (count <= 0) {
+      throw new IllegalStateException("Cannot read past the last row.");
+    }
+    try {
+      rows.readRows(band, 0, count);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    bandTop = bandEnd;
+    bandEnd += count;
+  }
+}
@@ -0,0 +1,178 @@
+package utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import model.HaarWaveletTransform;
+import model.WaveletCoefficients;
+
+/**
+ * Reader and writer for the compact wavelet file format (.hwt). The file stores the non-zero Haar
+ * coefficients of an image instead of its pixels, so an image compressed by 80% takes roughly a
+ * fifth of the space a file of all coefficients would.
+ *
+ * <p>The file starts with the magic bytes {@code HWT1}, the width and height of the image as big
+ * endian ints and the quantisation step as a double. The rest is deflated. For each of the red,
+ * green and blue channels it holds the number of non-zero coefficients, then for each coefficient
+ * the number of zero coefficients skipped since the previous one and the coefficient divided by
+ * the step and rounded, both as variable length integers, the latter zigzag encoded. Coefficients
+ * are quantised to a multiple of the step, which moves reconstructed pixel values by well under
+ * one level before they are truncated.
+ */
+public class WaveletCodec {
+
+  private static final byte[] MAGIC = {'H', 'W', 'T', '1'};
+
+  /**
+   * The quantisation step for coefficients.
+   */
+  private static final double STEP = 1.0 / 64;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Writes the coefficients of an image.
+   *
+   * @param coefficients The coefficients to write.
+   * @param path         The file to write.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write(WaveletCoefficients coefficients, Path path) throws IOException {
+    try (DataOutputStream header = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE))) {
+      header.write(MAGIC);
+      header.writeInt(coefficients.getWidth());
+      header.writeInt(coefficients.getHeight());
+      header.writeDouble(STEP);
+      header.flush();
+
+      Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+      try {
+        DeflaterOutputStream body = new DeflaterOutputStream(header, deflater, BUFFER_SIZE);
+        OutputStream out = new BufferedOutputStream(body, BUFFER_SIZE);
+        for (int c = 0; c < 3; c++) {
+          writeChannel(out, coefficients.getPositions(c), coefficients.getValues(c));
+        }
+        out.flush();
+        body.finish();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  /**
+   * Reads the coefficients of an image.
+   *
+   * @param path The file to read.
+   * @return The coefficients.
+   * @throws IOException              If the file cannot be read.
+   * @throws IllegalArgumentException If the file is not a valid wavelet file.
+   */
+  public static WaveletCoefficients read(Path path) throws IOException {
+    try (DataInputStream header = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+      byte[] magic = new byte[MAGIC.length];
+      header.readFully(magic);
+      for (int i = 0; i < MAGIC.length; i++) {
+        if (magic[i] != MAGIC[i]) {
+          throw new IllegalArgumentException("Invalid wavelet file: should begin with HWT1");
+        }
+      }
+      int width = header.readInt();
+      int height = header.readInt();
+      double step = header.readDouble();
+      if (width < 0 || height < 0 || !(step > 0)) {
+        throw new IllegalArgumentException("Invalid wavelet file: bad header");
+      }
+      int size = HaarWaveletTransform.paddedSize(width, height);
+      long length = (long) size * size;
+
+      InputStream in = new BufferedInputStream(new InflaterInputStream(header), BUFFER_SIZE);
+      int[][] positions = new int[3][];
+      double[][] values = new double[3][];
+      for (int c = 0; c < 3; c++) {
+        long count = readVarLong(in);
+        if (count > length) {
+          throw new IllegalArgumentException("Invalid wavelet file: too many coefficients");
+        }
+        positions[c] = new int[(int) count];
+        values[c] = new double[(int) count];
+        long position = -1;
+        for (int i = 0; i < count; i++) {
+          position += readVarLong(in) + 1;
+          if (position >= length) {
+            throw new IllegalArgumentException("Invalid wavelet file: coefficient out of range");
+          }
+          positions[c][i] = (int) position;
+          long quantized = readVarLong(in);
+          values[c][i] = ((quantized >>> 1) ^ -(quantized & 1)) * step;
+        }
+      }
+      return new WaveletCoefficients(width, height, positions, values);
+    }
+  }
+
+  /**
+   * Writes the non-zero coefficients of one channel, dropping those that quantise to zero.
+   */
+  private static void writeChannel(OutputStream out, int[] positions, double[] values)
+      throws IOException {
+    long[] quantized = new long[values.length];
+    int count = 0;
+    for (int i = 0; i < values.length; i++) {
+      quantized[i] = Math.round(values[i] / STEP);
+      if (quantized[i] != 0) {
+        count++;
+      }
+    }
+    writeVarLong(out, count);
+    long previous = -1;
+    for (int i = 0; i < values.length; i++) {
+      if (quantized[i] != 0) {
+        writeVarLong(out, positions[i] - previous - 1);
+        writeVarLong(out, (quantized[i] << 1) ^ (quantized[i] >> 63));
+        previous = positions[i];
+      }
+    }
+  }
+
+  /**
+   * Writes a non-negative number seven bits at a time, lowest bits first.
+   */
+  private static void writeVarLong(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  /**
+   * Reads a number written by {@link #writeVarLong(OutputStream, long)}.
+   */
+  private static long readVarLong(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Unexpected end of wavelet file");
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Invalid wavelet file: bad number");
+  }
+}
@@ -18,6 +18,8 @@ public class AdvancedImageManipulatorViewImpl extends ImageManipulatorViewImpl {
     out.append("color-correct srcImageName destImageName").append("\n");
     out.append("levels-adjust b m w srcImageName "
         + "destImageName").append("\n");
+    out.append("thumbnail scale srcImageName destImageName").append("\n");
+    out.append("stream inputPath outputPath operation [parameters]").append("\n");
   }
 
 }
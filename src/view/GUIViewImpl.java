@@ -2,6 +2,7 @@ package view;
 
 import controller.GUIController;
 import java.awt.Component;
+import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
@@ -29,6 +30,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSlider;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import model.Image;
 import utility.ImageUtility;
 
 /**
@@ -86,8 +88,8 @@ public class GUIViewImpl extends JFrame implements ImageManipulatorGUIView {
     menuBar.add(fileMenu);
     openOption = new JMenuItem("Load Image");
     saveOption = new JMenuItem("Save Image");
-    supportedFileExt = new FileNameExtensionFilter(".JPG, .PNG, .BMP & .PPM",
-        "jpg", "png", "bmp", "ppm");
+    supportedFileExt = new FileNameExtensionFilter(".JPG, .PNG, .BMP, .PPM, .HWT & .PIX",
+        "jpg", "png", "bmp", "ppm", "hwt", "pix");
     fileMenu.add(openOption);
     fileMenu.add(saveOption);
     setJMenuBar(menuBar);
@@ -377,6 +379,12 @@ public class GUIViewImpl extends JFrame implements ImageManipulatorGUIView {
       }
     });
     previewButton.addActionListener(evt -> handlePreviewButton(features));
+    previewSlider.addChangeListener(evt -> {
+      // Follow the slider while a preview is shown, each new preview replaces the last one.
+      if (revertButton.isEnabled() && previewSlider.getValue() != 0) {
+        handlePreviewButton(features);
+      }
+    });
     retainButton.addActionListener(evt -> handleRetainButton(features));
     revertButton.addActionListener(evt -> handleRevertButton(features));
     horizontalFlipButton.addActionListener(evt -> features.horizontalFlip());
@@ -512,10 +520,14 @@ public class GUIViewImpl extends JFrame implements ImageManipulatorGUIView {
     FileFilter jpgFilter = new FileNameExtensionFilter("JPG File", ".jpg");
     FileFilter ppmFilter = new FileNameExtensionFilter("PPM File", ".ppm");
     FileFilter bpmFilter = new FileNameExtensionFilter("BMP File", ".bmp");
+    FileFilter hwtFilter = new FileNameExtensionFilter("Compressed Wavelet File", ".hwt");
+    FileFilter pixFilter = new FileNameExtensionFilter("Uncompressed Cache File", ".pix");
     fChooser.setFileFilter(pngFilter);
     fChooser.addChoosableFileFilter(jpgFilter);
     fChooser.addChoosableFileFilter(ppmFilter);
     fChooser.addChoosableFileFilter(bpmFilter);
+    fChooser.addChoosableFileFilter(hwtFilter);
+    fChooser.addChoosableFileFilter(pixFilter);
     int retValue = fChooser.showSaveDialog(this);
     if (retValue == JFileChooser.APPROVE_OPTION) {
       File f = fChooser.getSelectedFile();
@@ -529,12 +541,16 @@ public class GUIViewImpl extends JFrame implements ImageManipulatorGUIView {
         extension = ".ppm";
       } else if (selectedFilter == bpmFilter) {
         extension = ".bmp";
+      } else if (selectedFilter == hwtFilter) {
+        extension = ".hwt";
+      } else if (selectedFilter == pixFilter) {
+        extension = ".pix";
       }
       try {
         String path = f.getAbsolutePath() + extension;
         String[] parts = path.split("\\.");
         String format = parts[parts.length - 1];
-        List<String> validExtensions = Arrays.asList("png", "jpg", "ppm", "bmp");
+        List<String> validExtensions = Arrays.asList("png", "jpg", "ppm", "bmp", "hwt", "pix");
         if (validExtensions.contains(format)) {
           features.saveImage(path, "currentImg");
           displayInformativeMessage(mainPanel, "Successfully saved the image.");
@@ -694,9 +710,8 @@ public class GUIViewImpl extends JFrame implements ImageManipulatorGUIView {
   }
 
   @Override
-  public void setImageInPanel(String[] image) {
-    ImageUtility util = new ImageUtility();
-    BufferedImage bufferedImage = util.convertRawImageToBufferedImage(image);
+  public void setImageInPanel(Image image) {
+    BufferedImage bufferedImage = ImageUtility.convertImageToBufferedImage(image);
     imageLabel.setText("");
     if (bufferedImage != null) {
       imageLabel.setIcon(new ImageIcon(bufferedImage));
@@ -704,15 +719,19 @@ public class GUIViewImpl extends JFrame implements ImageManipulatorGUIView {
   }
 
   @Override
-  public void setHistogramInPanel(String[] image) {
-    ImageUtility util = new ImageUtility();
-    BufferedImage bufferedImage = util.convertRawImageToBufferedImage(image);
+  public void setHistogramInPanel(Image image) {
+    BufferedImage bufferedImage = ImageUtility.convertImageToBufferedImage(image);
     histogramLabel.setText("");
     if (bufferedImage != null) {
       histogramLabel.setIcon(new ImageIcon(bufferedImage));
     }
   }
 
+  @Override
+  public void setBusy(boolean busy) {
+    setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+  }
+
   @Override
   public void displayErrorMessage(String errorMessage) {
     JOptionPane.showMessageDialog(mainPanel, errorMessage, "Error", JOptionPane.ERROR_MESSAGE);
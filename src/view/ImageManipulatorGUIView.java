@@ -1,6 +1,7 @@
 package view;
 
 import controller.GUIController;
+import model.Image;
 
 /**
  * Interface defining the contract for an Image Manipulator GUI view.
@@ -17,16 +18,16 @@ public interface ImageManipulatorGUIView {
   /**
    * Sets the image in the main panel of the GUI.
    *
-   * @param image An array representing the image.
+   * @param image The image to display, nothing is shown when null.
    */
-  void setImageInPanel(String[] image);
+  void setImageInPanel(Image image);
 
   /**
    * Sets the histogram in the histogram panel of the GUI.
    *
-   * @param image An array representing the histogram.
+   * @param image The histogram image to display, nothing is shown when null.
    */
-  void setHistogramInPanel(String[] image);
+  void setHistogramInPanel(Image image);
 
   /**
    * Displays an error message to the user in the GUI.
@@ -35,6 +36,13 @@ public interface ImageManipulatorGUIView {
    */
   void displayErrorMessage(String errorMessage);
 
+  /**
+   * Tells the user whether operations are still running in the background.
+   *
+   * @param busy True while operations are running, false once all of them are done.
+   */
+  void setBusy(boolean busy);
+
   // Example method that was commented out
   //void setImageAndHistogram(String imageName);
 }
@@ -1,10 +1,27 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
 import model.AbstractImageHistogram;
 import model.AdvancedImageManipulatorModelImpl;
+import model.BlurKernelFilter;
+import model.ChannelHistogram;
+import model.ChannelLookupTable;
 import model.ColorCorrectionWithHistogram;
+import model.HaarWaveletTransform;
+import model.ImageCompressionImpl;
+import model.ImageFilter;
+import model.CompressedImage;
+import model.FilteredRowSource;
 import model.Image;
 import model.Pixel;
+import model.RowSource;
+import model.SepiaColorTransformationFilter;
+import model.SharpenKernelFilter;
 import model.SimpleHistogramVisualization;
 import org.junit.Test;
 
@@ -627,5 +644,370 @@ public class AdvancedImageManipulatorModelTest {
     return testImage;
   }
 
+  @Test
+  public void testHaarTransformRoundTrip() {
+    HaarWaveletTransform haar = new HaarWaveletTransform(64);
+    double[] data = new double[64 * 64];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (i * 37) % 256;
+    }
+    double[] original = data.clone();
+
+    haar.forward(data);
+    // The full transform of a non-negative image keeps its total in the first coefficient.
+    double sum = 0;
+    for (double value : original) {
+      sum += value;
+    }
+    assertEquals(sum / 64, data[0], 1e-6);
+
+    haar.inverse(data);
+    assertArrayEquals(original, data, 1e-9);
+    assertEquals(128, HaarWaveletTransform.paddedSize(100, 65));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHaarTransformSizeNotPowerOfTwo() {
+    new HaarWaveletTransform(48);
+  }
+
+  @Test
+  public void testImageCompressionEdgeCases() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image testImage = createTestImage(new int[][]{{100, 150}, {25, 175}, {75, 125}});
+    model.addImageToHashMap("testImage", testImage);
+    model.addImageToHashMap("black", new Image(3, 2));
+
+    model.compress(100, "testImage", "allRemoved");
+    model.compress(50, "black", "compressedBlack");
+
+    assertArrayEquals(new int[6], model.checkAndGetTheImage("allRemoved").getPixelData());
+    assertArrayEquals(new int[6], model.checkAndGetTheImage("compressedBlack").getPixelData());
+  }
+
+  @Test
+  public void testApproximateThresholdOnSmallImage() {
+    Image testImage = createTestImage(new int[][]{
+        {100, 150, 200, 50, 75},
+        {25, 175, 225, 125, 100},
+        {75, 125, 250, 200, 150}});
+    // Small images fit in one sample, so the estimate is exact.
+    assertArrayEquals(new ImageCompressionImpl().compress(testImage, 60.0).getPixelData(),
+        new ImageCompressionImpl(true).compress(testImage, 60.0).getPixelData());
+  }
+
+  @Test
+  public void testApproximateThresholdOnLargeImage() {
+    // Smooth shading with noise, like a photo, has many more distinct magnitudes than one
+    // sample holds, and small magnitudes occur far more often than large ones.
+    Image image = new Image(512, 400);
+    Random random = new Random(1);
+    for (int y = 0; y < 400; y++) {
+      for (int x = 0; x < 512; x++) {
+        int base = (int) (128 + 60 * Math.sin(x / 37.0) * Math.cos(y / 23.0));
+        int noise = random.nextInt(21) - 10;
+        image.setRGB(x, y, Image.packRGB(clamp(base + noise), clamp(base / 2 + x % 50 + noise),
+            clamp(255 - base + noise)));
+      }
+    }
+    double coefficients = 3.0 * 512 * 512;
+    for (double percentage : new double[] {10, 50, 80}) {
+      CompressedImage exact = (CompressedImage) new ImageCompressionImpl(false)
+          .compress(image, percentage);
+      CompressedImage estimated = (CompressedImage) new ImageCompressionImpl(true)
+          .compress(image, percentage);
+      assertEquals("" + percentage,
+          exact.getCoefficients().getNonZeroCount() / coefficients,
+          estimated.getCoefficients().getNonZeroCount() / coefficients, 0.005);
+    }
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+
+  @Test
+  public void testThumbnailFromCoefficientsMatchesBlockAverage() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = new Image(23, 17);
+    for (int y = 0; y < 17; y++) {
+      for (int x = 0; x < 23; x++) {
+        image.setPixelRGB(x, y, new Pixel((x * 11) % 256, (y * 15) % 256, (x * y) % 256));
+      }
+    }
+    model.addImageToHashMap("image", image);
+    model.compress(0, "image", "compressed");
+    model.addImageToHashMap("full", new ImageCompressionImpl().reconstruct(
+        new ImageCompressionImpl().transform(image)));
+
+    model.thumbnail(4, "image", "direct");
+    model.thumbnail(4, "full", "decoded");
+
+    Image direct = model.checkAndGetTheImage("direct");
+    Image decoded = model.checkAndGetTheImage("decoded");
+    assertEquals(6, direct.getWidth());
+    assertEquals(5, direct.getHeight());
+    for (int i = 0; i < direct.getPixelData().length; i++) {
+      // Averages ending in .5 may round either way after the floating point transform.
+      int expected = direct.getPixelData()[i];
+      int actual = decoded.getPixelData()[i];
+      assertEquals(Image.red(expected), Image.red(actual), 1);
+      assertEquals(Image.green(expected), Image.green(actual), 1);
+      assertEquals(Image.blue(expected), Image.blue(actual), 1);
+    }
+
+    // Edge blocks average only the pixels inside the image.
+    int sum = 0;
+    for (int y = 16; y < 17; y++) {
+      for (int x = 20; x < 23; x++) {
+        sum += image.getPixelRGB(x, y).getRed();
+      }
+    }
+    assertEquals(Math.round(sum / 3.0), direct.getPixelRGB(5, 4).getRed());
+    assertEquals(32, ((CompressedImage) model.checkAndGetTheImage("compressed"))
+        .getCoefficients().getSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThumbnailScaleNotPowerOfTwo() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    model.thumbnail(3, "image", "thumb");
+  }
+
+  @Test
+  public void testHistogramChartReused() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = new Image(4, 4);
+    image.setRGB(1, 1, Image.packRGB(200, 100, 50));
+    model.addImageToHashMap("image", image);
+    model.generateHistogram("image", "first");
+    model.generateHistogram("image", "second");
+    Image first = model.getImageFromHashMap("first");
+    assertEquals(256, first.getWidth());
+    assertTrue(first == model.getImageFromHashMap("second"));
+
+    String[] raw = new SimpleHistogramVisualization(image).generateHistogram();
+    model.addRawImageToHashMap("raw", raw);
+    assertArrayEquals(model.getImageFromHashMap("raw").getPixelData(), first.getPixelData());
+
+    image.setRGB(2, 2, Image.packRGB(10, 10, 10));
+    model.generateHistogram("image", "third");
+    assertFalse(first == model.getImageFromHashMap("third"));
+  }
+
+  @Test
+  public void testSplitPreviewFollowsSlider() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = new Image(150, 40);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 150; x++) {
+        image.setRGB(x, y, Image.packRGB((x * 7 + y) % 256, (x * y) % 256, (x + y * 3) % 256));
+      }
+    }
+    model.addImageToHashMap("image", image);
+    model.generateHistogram("image", "histogram");
+    String[] operations = {"blur", "sharpen"};
+    ImageFilter[] filters = {new BlurKernelFilter(), new SharpenKernelFilter()};
+    for (int i = 0; i < operations.length; i++) {
+      Image shown = null;
+      int[] shownPixels = null;
+      for (double percentage : new double[]{30, 70, 71, 10, 100, 0, 55}) {
+        model.splitViewNew(operations[i] + " image preview", percentage);
+        Image preview = model.getImageFromHashMap("preview");
+        if (shown != null) {
+          // Moving the split line gives a new image and leaves the one shown before alone.
+          assertFalse(shown == preview);
+          assertArrayEquals(shownPixels, shown.getPixelData());
+        }
+        shown = preview;
+        shownPixels = preview.getPixelData().clone();
+        int splitWidth = (int) (percentage / 100 * 150);
+        assertArrayEquals(operations[i] + " " + percentage,
+            splitByCropping(image, filters[i], splitWidth).getPixelData(),
+            preview.getPixelData());
+        int[][] counted = ChannelHistogram.compute(preview);
+        for (int c = 0; c < 3; c++) {
+          assertArrayEquals(counted[c], preview.getHistogram()[c]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMovedPreviewIsNotServedFromCache() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = new Image(150, 40);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 150; x++) {
+        image.setRGB(x, y, Image.packRGB((x * 7 + y) % 256, (x * y) % 256, (x + y * 3) % 256));
+      }
+    }
+    model.addImageToHashMap("image", image);
+    model.splitViewNew("blur image preview", 20);
+    Image preview = model.getImageFromHashMap("preview");
+    preview.getHistogram();
+    long version = preview.getVersion();
+    model.sepia("preview", "q1");
+    assertArrayEquals(new SepiaColorTransformationFilter().applyFilterToImage(preview)
+        .getPixelData(), model.getImageFromHashMap("q1").getPixelData());
+
+    // Moving the split line gives a new preview image, with a version of its own.
+    model.splitViewNew("blur image preview", 80);
+    preview = model.getImageFromHashMap("preview");
+    assertFalse(version == preview.getVersion());
+    model.sepia("preview", "q2");
+    assertArrayEquals(new SepiaColorTransformationFilter().applyFilterToImage(preview)
+        .getPixelData(), model.getImageFromHashMap("q2").getPixelData());
+  }
+
+  @Test
+  public void testCancelledPreviewMoveIsRedrawn() throws InterruptedException {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = new Image(1500, 1000);
+    for (int i = 0; i < 1500 * 1000; i++) {
+      image.getPixelData()[i] = Image.packRGB((i * 31) % 256, (i * 7) % 256, (i / 1500) % 256);
+    }
+    model.addImageToHashMap("image", image);
+    Image expected = splitByCropping(image, new BlurKernelFilter(), 750);
+    // Interrupt moves of the split line at different points, wherever they happen to be.
+    for (int delay = 0; delay < 8; delay++) {
+      model.splitViewNew("blur image preview", 95);
+      model.splitViewNew("blur image preview", 5);
+      Image before = model.getImageFromHashMap("preview");
+      int[] beforePixels = before.getPixelData().clone();
+      Thread move = new Thread(() -> {
+        try {
+          model.splitViewNew("blur image preview", 95);
+        } catch (CancellationException e) {
+          // The move was cancelled part way.
+        }
+      });
+      move.start();
+      Thread.sleep(delay);
+      move.interrupt();
+      move.join();
+      // The image shown before is never written to, whether the move finished or not.
+      assertArrayEquals(beforePixels, before.getPixelData());
+
+      model.splitViewNew("blur image preview", 50);
+      Image preview = model.getImageFromHashMap("preview");
+      assertArrayEquals(expected.getPixelData(), preview.getPixelData());
+      int[][] counted = ChannelHistogram.compute(preview);
+      for (int c = 0; c < 3; c++) {
+        assertArrayEquals(counted[c], preview.getHistogram()[c]);
+      }
+    }
+  }
 
+  /**
+   * Applies a filter to the left part of an image on its own and puts it next to the rest.
+   */
+  private Image splitByCropping(Image image, ImageFilter filter, int splitWidth) {
+    int width = image.getWidth();
+    Image left = new Image(splitWidth, image.getHeight());
+    for (int y = 0; y < image.getHeight(); y++) {
+      System.arraycopy(image.getPixelData(), y * width, left.getPixelData(), y * splitWidth,
+          splitWidth);
+    }
+    left = filter.applyFilterToImage(left);
+    Image result = new Image(width, image.getHeight(), image.getPixelData().clone());
+    for (int y = 0; y < image.getHeight(); y++) {
+      System.arraycopy(left.getPixelData(), y * splitWidth, result.getPixelData(), y * width,
+          splitWidth);
+    }
+    return result;
+  }
+
+  @Test
+  public void testRetainedPreviewMatchesOperation() {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = new Image(150, 40);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 150; x++) {
+        image.setRGB(x, y, Image.packRGB((x * 7 + y) % 256, (x * y) % 256, (x + y * 3) % 256));
+      }
+    }
+    model.addImageToHashMap("image", image);
+    model.splitViewNew("blur image preview", 40);
+    model.blur("image", "blurred");
+    assertArrayEquals(new BlurKernelFilter().applyFilterToImage(image).getPixelData(),
+        model.getImageFromHashMap("blurred").getPixelData());
+
+    model.splitViewNew("sepia image preview", 70);
+    model.sepia("image", "sepia");
+    Image expected = new SepiaColorTransformationFilter().applyFilterToImage(image);
+    assertArrayEquals(expected.getPixelData(), model.getImageFromHashMap("sepia").getPixelData());
+  }
+
+  @Test
+  public void testStreamedOperationsMatchWholeImage() throws IOException {
+    Image image = new Image(37, 29);
+    for (int i = 0; i < 37 * 29; i++) {
+      image.getPixelData()[i] = Image.packRGB((i * 31) % 256, (i * 7) % 256, (i * i) % 256);
+    }
+    ImageFilter[] filters = {new BlurKernelFilter(), new SharpenKernelFilter(),
+        new SepiaColorTransformationFilter(), ChannelLookupTable.levels(20, 100, 230)};
+    for (ImageFilter filter : filters) {
+      int[] expected = filter.applyFilterToImage(image).getPixelData();
+      for (int bandRows : new int[] {1, 2, 5, 29}) {
+        Image result = new Image(37, 29);
+        RowSource rows = new FilteredRowSource(new ImageRows(image), filter, bandRows);
+        // Read in pieces that do not line up with the bands.
+        for (int y = 0; y < 29; y += 3) {
+          rows.readRows(result, y, Math.min(29, y + 3));
+        }
+        assertArrayEquals(expected, result.getPixelData());
+      }
+    }
+
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    model.addImageToHashMap("image", image);
+    model.brighten(25, "image", "brighten 25");
+    model.greyscale("luma-component", "image", "luma-component");
+    for (String operation : new String[] {"brighten 25", "luma-component"}) {
+      Image result = new Image(37, 29);
+      model.streamOperation(operation, new ImageRows(image)).readRows(result, 0, 29);
+      assertArrayEquals(model.getImageFromHashMap(operation).getPixelData(),
+          result.getPixelData());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStreamedOperationUnsupported() {
+    new AdvancedImageManipulatorModelImpl().streamOperation("horizontal-flip",
+        new ImageRows(new Image(2, 2)));
+  }
+
+  /**
+   * The rows of an image held in memory.
+   */
+  private static class ImageRows implements RowSource {
+    private final Image image;
+    private int next;
+
+    private ImageRows(Image image) {
+      this.image = image;
+    }
+
+    @Override
+    public int getWidth() {
+      return image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return image.getHeight();
+    }
+
+    @Override
+    public void readRows(Image dest, int yStart, int yEnd) {
+      for (int y = yStart; y < yEnd; y++) {
+        dest.setRow(y, image.getPixelData(), image.rowOffset(next++));
+      }
+    }
+
+    @Override
+    public void close() {
+    }
+  }
 }
@@ -1,9 +1,17 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import controller.AdvancedImageManipulatorControllerImpl;
+import controller.CommandMetrics;
 import controller.ImageManipulatorController;
+import controller.ScriptAnalysis;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import model.AdvancedImageManipulatorModel;
 import org.junit.Test;
 import view.AdvancedImageManipulatorViewImpl;
@@ -145,4 +153,80 @@ public class ControllerTest {
     controller.executeApplication(in, out);
     assertEquals("greyscale", log.toString());
   }
+
+  @Test
+  public void testScriptLastUses() {
+    ScriptAnalysis script = new ScriptAnalysis(Arrays.asList("load women.jpg women",
+        "# a comment", "rgb-split women r g b", "", "save r.png r", "blur women c split 50",
+        "levels-adjust 5 135 250 c d", "save d.png d"));
+    assertTrue(script.isComplete());
+    assertEquals(6, script.size());
+    assertEquals(Arrays.asList("women"), script.getReads(1));
+    assertEquals(Arrays.asList("r", "g", "b"), script.getWrites(1));
+    assertEquals(Collections.emptyList(), script.getDeadAfter(0));
+    assertEquals(Arrays.asList("b", "g"), script.getDeadAfter(1));
+    assertEquals(Arrays.asList("r"), script.getDeadAfter(2));
+    assertEquals(Arrays.asList("women"), script.getDeadAfter(3));
+    assertEquals(Arrays.asList("c"), script.getDeadAfter(4));
+    assertEquals(Arrays.asList("d"), script.getDeadAfter(5));
+
+    assertEquals(Collections.emptyList(), script.getDependencies(0));
+    assertEquals(Arrays.asList(0), script.getDependencies(1));
+    assertEquals(Arrays.asList(1), script.getDependencies(2));
+    assertEquals(Arrays.asList(0), script.getDependencies(3));
+    assertEquals(Arrays.asList(3), script.getDependencies(4));
+    assertEquals(Arrays.asList(4), script.getDependencies(5));
+
+    // A file loaded after it is saved, and a name written after it is read.
+    ScriptAnalysis files = new ScriptAnalysis(Arrays.asList("load a.png a", "save b.png a",
+        "load b.png c", "blur a a", "save a.png c"));
+    assertEquals(Arrays.asList(1), files.getDependencies(2));
+    assertEquals(Arrays.asList(0, 1), files.getDependencies(3));
+    assertEquals(Arrays.asList(0, 2), files.getDependencies(4));
+
+    ScriptAnalysis nested = new ScriptAnalysis(Arrays.asList("load a.png a", "run other.txt"));
+    assertFalse(nested.isComplete());
+    assertEquals(Collections.emptyList(), nested.getDeadAfter(0));
+  }
+
+  @Test
+  public void testScriptReleasesDeadImages() throws IOException {
+    Path script = Files.createTempFile("script", ".txt");
+    Files.write(script, Arrays.asList("blur m c", "sharpen c d", "save d.png d"));
+    ImageManipulatorController controller = new AdvancedImageManipulatorControllerImpl(mockModel,
+        testView);
+    controller.runCommandsFromFile(script.toString(), out);
+    assertEquals("blurreleaseImagesharpenreleaseImagegetImageFromHashMapreleaseImage",
+        log.toString());
+
+    // A nested script may use any image, so nothing is released.
+    log.setLength(0);
+    Files.write(script, Arrays.asList("blur m c", "run missing.txt", "sharpen c d"));
+    controller.runCommandsFromFile(script.toString(), out);
+    assertEquals("blursharpen", log.toString());
+    Files.delete(script);
+  }
+
+  @Test
+  public void testCommandMetrics() throws IOException {
+    Readable in = new StringReader("blur m c\nblur c d\nsepia m e split 40\nexit");
+    AdvancedImageManipulatorControllerImpl controller =
+        new AdvancedImageManipulatorControllerImpl(mockModel, testView);
+    controller.executeApplication(in, out);
+    CommandMetrics metrics = controller.getMetrics();
+    assertEquals(2, metrics.getCount("blur"));
+    assertEquals(1, metrics.getCount("sepia split"));
+    assertEquals(3, metrics.getCommandCount());
+    assertTrue(metrics.register());
+
+    metrics.reset();
+    metrics.record("load", 2_000_000_000L, 1_000_000_000L, 4096, 3_000_000);
+    metrics.record("load", 1_000_000_000L, -1, 4096, 1_000_000);
+    assertEquals(4.0, metrics.getMegapixels("load"), 1e-9);
+    assertEquals("{\"commands\":[{\"name\":\"load\",\"count\":2,\"wallNanos\":3000000000,"
+        + "\"cpuNanos\":null,\"allocatedBytes\":8192,\"megapixels\":4.000,"
+        + "\"megapixelsPerSecond\":1.333}]}", metrics.getJson());
+    assertEquals("command,count,wall_nanos,cpu_nanos,allocated_bytes,megapixels,"
+        + "megapixels_per_second\nload,2,3000000000,,8192,4.000,1.333\n", metrics.getCsv());
+  }
 }
@@ -3,6 +3,9 @@ import static org.junit.Assert.assertEquals;
 import controller.GUICallBackController;
 import controller.GUIController;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.SwingUtilities;
 import model.AdvancedImageManipulatorModel;
 import org.junit.Test;
 import view.ImageManipulatorGUIView;
@@ -21,7 +24,7 @@ public class GUIControllerTest {
   @Test
   public void testCompress() throws IOException {
     testController.compress(50);
-    assertEquals("compressgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("compressgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -31,7 +34,7 @@ public class GUIControllerTest {
   public void testSplitView() throws IOException {
     testController.preview("blur", 50);
     assertEquals(
-        "splitViewgenerateHistogramgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+        "splitViewgenerateHistogramgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -39,7 +42,7 @@ public class GUIControllerTest {
   @Test
   public void testColorCorrect() throws IOException {
     testController.colorCorrect();
-    assertEquals("colorCorrectgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("colorCorrectgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -47,7 +50,7 @@ public class GUIControllerTest {
   @Test
   public void testAdjustLevels() throws IOException {
     testController.adjustLevels(10, 120, 230);
-    assertEquals("adjustLevelsgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("adjustLevelsgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -56,7 +59,7 @@ public class GUIControllerTest {
   @Test
   public void horizontalFlip() throws IOException {
     testController.horizontalFlip();
-    assertEquals("horizontalFlipgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("horizontalFlipgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -64,7 +67,7 @@ public class GUIControllerTest {
   @Test
   public void verticalFlip() throws IOException {
     testController.verticalFlip();
-    assertEquals("verticalFlipgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("verticalFlipgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -72,7 +75,7 @@ public class GUIControllerTest {
   @Test
   public void testBlur() throws IOException {
     testController.blur();
-    assertEquals("blurgetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("blurgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -80,7 +83,7 @@ public class GUIControllerTest {
   @Test
   public void testSharpen() throws IOException {
     testController.sharpen();
-    assertEquals("sharpengetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("sharpengetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -88,7 +91,7 @@ public class GUIControllerTest {
   @Test
   public void testSepia() throws IOException {
     testController.sepia();
-    assertEquals("sepiagetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("sepiagetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
@@ -96,9 +99,49 @@ public class GUIControllerTest {
   @Test
   public void testGreyScale() throws IOException {
     testController.greyscale();
-    assertEquals("greyscalegetRawImageFromHashMapgenerateHistogramgetRawImageFromHashMap",
+    assertEquals("greyscalegetImageFromHashMapgenerateHistogramgetImageFromHashMap",
         log.toString());
     assertEquals("addFeaturessetImageInPanelsetHistogramInPanel",out.toString());
   }
 
+  @Test
+  public void testBackgroundPreviewSuperseded() throws Exception {
+    List<Runnable> jobs = new ArrayList<>();
+    StringBuilder asyncLog = new StringBuilder();
+    StringBuilder asyncOut = new StringBuilder();
+    GUIController controller = new GUICallBackController(new MockModel(asyncLog),
+        new MockView(asyncOut), jobs::add);
+    controller.preview("blur", 50);
+    controller.preview("sharpen", 30);
+    assertEquals("", asyncLog.toString());
+    assertEquals("addFeaturessetBusy", asyncOut.toString());
+
+    for (Runnable job : jobs) {
+      job.run();
+    }
+    SwingUtilities.invokeAndWait(() -> {
+    });
+    // Only the newer preview runs and is shown.
+    assertEquals(
+        "splitViewgenerateHistogramgetImageFromHashMapgenerateHistogramgetImageFromHashMap",
+        asyncLog.toString());
+    assertEquals("addFeaturessetBusysetBusysetImageInPanelsetHistogramInPanelsetBusy",
+        asyncOut.toString());
+  }
+
+  @Test
+  public void testBackgroundOperationsAllRun() throws Exception {
+    List<Runnable> jobs = new ArrayList<>();
+    StringBuilder asyncLog = new StringBuilder();
+    GUIController controller = new GUICallBackController(new MockModel(asyncLog),
+        new MockView(new StringBuilder()), jobs::add);
+    controller.blur();
+    controller.preview("blur", 50);
+    controller.sharpen();
+    for (Runnable job : jobs) {
+      job.run();
+    }
+    assertEquals("blurgetImageFromHashMapgenerateHistogramgetImageFromHashMap"
+        + "sharpengetImageFromHashMapgenerateHistogramgetImageFromHashMap", asyncLog.toString());
+  }
 }
@@ -1,9 +1,25 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
-
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import model.ChannelHistogram;
+import model.ChannelLookupTable;
+import model.FusedPointOperation;
+import model.GreyScaleFilter;
 import model.Image;
+import model.ImageAlbum;
 import model.ImageManipulatorModelImpl;
+import model.KernelFilter;
+import model.OperationResultCache;
 import model.Pixel;
+import model.PointOperation;
+import model.SepiaColorTransformationFilter;
+import model.SharpenKernelFilter;
+import model.TileScheduler;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -397,4 +413,550 @@ public class ImageManipulatorModelTest {
     assertEquals(150, intensityGreyscaleImage.getPixelRGB(0, 0).getBlue());
   }
 
+  @Test
+  public void testPackedRowAccessors() {
+    Image image = new Image(3, 2);
+    image.setRow(1, new int[]{0, Image.packRGB(1, 2, 3), Image.packRGB(4, 5, 6),
+        Image.packRGB(7, 8, 9)}, 1);
+
+    assertEquals(4, image.getPixelRGB(1, 1).getRed());
+    assertEquals(8, image.getPixelRGB(2, 1).getGreen());
+    assertEquals(Image.packRGB(1, 2, 3), image.getRGB(0, 1));
+    assertEquals(0, image.getRGB(2, 0));
+
+    int[] row = image.getRow(1, null);
+    assertEquals(3, row.length);
+    assertEquals(Image.packRGB(7, 8, 9), row[2]);
+    assertEquals(3, image.rowOffset(1));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testPixelOutsideImage() {
+    testImage.getPixelRGB(5, 0);
+  }
+
+  @Test
+  public void testRawImageRoundTrip() {
+    String[] rawImage = {"2", "1", "000128255" + "010020030"};
+    imageManipulatorModel.addRawImageToHashMap("rawImage", rawImage);
+
+    Image image = imageManipulatorModel.checkAndGetTheImage("rawImage");
+    assertEquals(255, image.getPixelRGB(0, 0).getBlue());
+    assertEquals(20, image.getPixelRGB(1, 0).getGreen());
+    assertArrayEquals(rawImage, imageManipulatorModel.getRawImageFromHashMap("rawImage"));
+
+    String[] derived = imageManipulatorModel.getRawImageFromHashMap("testImage");
+    assertEquals("5", derived[0]);
+    assertEquals("000025025025025050050025075075025100100025125", derived[3]);
+  }
+
+  @Test
+  public void testSeparableKernelMatchesDirectConvolution() {
+    double[] horizontal = {0.1, 0.3, 0.4, 0.2, -0.05};
+    double[] vertical = {0.2, 0.25, 0.5, 0.25, -0.1};
+    KernelFilter filter = new KernelFilter(horizontal, vertical) {
+    };
+    assertTrue(filter.isSeparable());
+
+    Image image = new Image(7, 6);
+    for (int y = 0; y < 6; y++) {
+      for (int x = 0; x < 7; x++) {
+        image.setPixelRGB(x, y, new Pixel((x * 37 + y * 11) % 256, (x * y * 13) % 256,
+            (255 - x * 29 - y * 7 + 512) % 256));
+      }
+    }
+    Image filtered = filter.applyFilterToImage(image);
+
+    for (int y = 0; y < 6; y++) {
+      for (int x = 0; x < 7; x++) {
+        double[] sum = new double[3];
+        for (int i = -2; i <= 2; i++) {
+          for (int j = -2; j <= 2; j++) {
+            if (x + i >= 0 && x + i < 7 && y + j >= 0 && y + j < 6) {
+              double k = horizontal[i + 2] * vertical[j + 2];
+              Pixel p = image.getPixelRGB(x + i, y + j);
+              sum[0] += k * p.getRed();
+              sum[1] += k * p.getGreen();
+              sum[2] += k * p.getBlue();
+            }
+          }
+        }
+        Pixel actual = filtered.getPixelRGB(x, y);
+        assertEquals(Math.max(0, Math.min(255, (int) sum[0])), actual.getRed(), 1);
+        assertEquals(Math.max(0, Math.min(255, (int) sum[1])), actual.getGreen(), 1);
+        assertEquals(Math.max(0, Math.min(255, (int) sum[2])), actual.getBlue(), 1);
+      }
+    }
+  }
+
+  @Test
+  public void testSeparableKernelDetection() {
+    KernelFilter blur = new KernelFilter(new double[][]{
+        {1.0 / 16, 1.0 / 8, 1.0 / 16},
+        {1.0 / 8, 1.0 / 4, 1.0 / 8},
+        {1.0 / 16, 1.0 / 8, 1.0 / 16}}) {
+    };
+    assertTrue(blur.isSeparable());
+    assertFalse(new SharpenKernelFilter().isSeparable());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSeparableKernelOfEvenLength() {
+    new KernelFilter(new double[]{0.5, 0.5}, new double[]{0.5, 0.5}) {
+    };
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    Image large = new Image(300, 260);
+    for (int y = 0; y < 260; y++) {
+      for (int x = 0; x < 300; x++) {
+        large.setPixelRGB(x, y, new Pixel((x * 7 + y) % 256, (x * y) % 256, (x + y * 3) % 256));
+      }
+    }
+    imageManipulatorModel.addImageToHashMap("large", large);
+    String[] operations = {"blur", "sharpen", "brighten", "horizontal", "vertical", "luma"};
+    int original = TileScheduler.getParallelism();
+    try {
+      TileScheduler.setParallelism(1);
+      runOperations(operations, "seq-");
+      TileScheduler.setParallelism(4);
+      runOperations(operations, "par-");
+    } finally {
+      TileScheduler.setParallelism(original);
+    }
+    for (String operation : operations) {
+      assertArrayEquals(operation,
+          imageManipulatorModel.getImageFromHashMap("seq-" + operation).getPixelData(),
+          imageManipulatorModel.getImageFromHashMap("par-" + operation).getPixelData());
+    }
+  }
+
+  private void runOperations(String[] operations, String prefix) {
+    imageManipulatorModel.blur("large", prefix + operations[0]);
+    imageManipulatorModel.sharpen("large", prefix + operations[1]);
+    imageManipulatorModel.brighten(40, "large", prefix + operations[2]);
+    imageManipulatorModel.horizontalFlip("large", prefix + operations[3]);
+    imageManipulatorModel.verticalFlip("large", prefix + operations[4]);
+    imageManipulatorModel.greyscale("luma-component", "large", prefix + operations[5]);
+  }
+
+  @Test
+  public void testChainedPointOperationsMatchStepByStep() {
+    imageManipulatorModel.brighten(30, "testImage", "bright");
+    imageManipulatorModel.sepia("bright", "sepia");
+    imageManipulatorModel.greyscale("luma-component", "sepia", "luma");
+    imageManipulatorModel.brighten(-50, "luma", "result");
+
+    Image expected = testImage;
+    for (int step = 0; step < 4; step++) {
+      Image next = new Image(5, 5);
+      for (int y = 0; y < 5; y++) {
+        for (int x = 0; x < 5; x++) {
+          Pixel p = expected.getPixelRGB(x, y);
+          int r = p.getRed();
+          int g = p.getGreen();
+          int b = p.getBlue();
+          if (step == 0 || step == 3) {
+            int increment = step == 0 ? 30 : -50;
+            r = Math.max(0, Math.min(255, r + increment));
+            g = Math.max(0, Math.min(255, g + increment));
+            b = Math.max(0, Math.min(255, b + increment));
+          } else if (step == 1) {
+            int nr = Math.min(255, (int) (0.393 * r + 0.769 * g + 0.189 * b));
+            int ng = Math.min(255, (int) (0.349 * r + 0.686 * g + 0.168 * b));
+            int nb = Math.min(255, (int) (0.272 * r + 0.534 * g + 0.131 * b));
+            r = nr;
+            g = ng;
+            b = nb;
+          } else {
+            r = p.getLumaComponent();
+            g = r;
+            b = r;
+          }
+          next.setPixelRGB(x, y, new Pixel(r, g, b));
+        }
+      }
+      expected = next;
+    }
+
+    assertArrayEquals(expected.getPixelData(),
+        imageManipulatorModel.getImageFromHashMap("result").getPixelData());
+    // Intermediate images are still available and computed on request.
+    Image luma = imageManipulatorModel.getImageFromHashMap("luma");
+    assertEquals(luma.getPixelRGB(2, 3).getRed(), luma.getPixelRGB(2, 3).getBlue());
+  }
+
+  @Test
+  public void testPointOperationChainFlattens() {
+    PointOperation chain = new SepiaColorTransformationFilter()
+        .andThen(new GreyScaleFilter("luma-component"))
+        .andThen(new SepiaColorTransformationFilter().andThen(rgb -> rgb & 0xFF));
+    assertEquals(4, ((FusedPointOperation) chain).getStageCount());
+    assertEquals(chain.applyToPixel(0x804020) & 0xFF, chain.applyToPixel(0x804020));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGreyscaleInvalidComponent() {
+    imageManipulatorModel.greyscale("alpha-component", "testImage", "alpha");
+  }
+
+  @Test
+  public void testLookupTablesCombine() {
+    ChannelLookupTable brighter = ChannelLookupTable.brighten(100);
+    ChannelLookupTable darker = ChannelLookupTable.brighten(-150);
+    PointOperation both = brighter.andThen(darker);
+    assertTrue(both instanceof ChannelLookupTable);
+    // 200 + 100 clamps to 255 before 150 is taken off.
+    assertEquals(105, ((ChannelLookupTable) both).lookup(0, 200));
+    assertEquals(0, ((ChannelLookupTable) both).lookup(2, 10));
+
+    PointOperation chain = new SepiaColorTransformationFilter().andThen(brighter)
+        .andThen(darker);
+    assertEquals(2, ((FusedPointOperation) chain).getStageCount());
+    assertEquals(darker.applyToPixel(brighter.applyToPixel(
+        new SepiaColorTransformationFilter().applyToPixel(0x336699))),
+        chain.applyToPixel(0x336699));
+  }
+
+  @Test
+  public void testCustomCurves() {
+    ChannelLookupTable gamma = ChannelLookupTable.gamma(2.0);
+    assertEquals(0, gamma.lookup(0, 0));
+    assertEquals(180, gamma.lookup(1, 127));
+    assertEquals(255, gamma.lookup(2, 255));
+
+    ChannelLookupTable curve = ChannelLookupTable.toneCurve(new int[]{50, 100, 200},
+        new int[]{0, 150, 255});
+    assertEquals(0, curve.lookup(0, 20));
+    assertEquals(75, curve.lookup(0, 75));
+    assertEquals(203, curve.lookup(1, 150));
+    assertEquals(255, curve.lookup(2, 230));
+
+    imageManipulatorModel.addPointOperation("testImage", curve, "curved");
+    assertEquals(curve.lookup(0, 100),
+        imageManipulatorModel.getImageFromHashMap("curved").getPixelRGB(4, 0).getRed());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testToneCurveUnordered() {
+    ChannelLookupTable.toneCurve(new int[]{100, 50}, new int[]{0, 255});
+  }
+
+  @Test
+  public void testHistogramsCarriedByOperations() {
+    Image large = new Image(120, 90);
+    for (int y = 0; y < 90; y++) {
+      for (int x = 0; x < 120; x++) {
+        large.setPixelRGB(x, y, new Pixel((x * 7 + y) % 256, (x * y) % 256, (x + y * 3) % 256));
+      }
+    }
+    imageManipulatorModel.addImageToHashMap("large", large);
+    large.getHistogram();
+    String[] operations = {"blur", "sharpen", "brighten", "horizontal", "vertical", "luma"};
+    runOperations(operations, "hist-");
+    imageManipulatorModel.addPointOperation("hist-brighten", ChannelLookupTable.gamma(1.8),
+        "hist-gamma");
+    for (String operation : new String[]{"blur", "brighten", "horizontal", "gamma"}) {
+      Image result = imageManipulatorModel.getImageFromHashMap("hist-" + operation);
+      int[][] carried = result.getHistogram();
+      int[][] counted = ChannelHistogram.compute(result);
+      for (int c = 0; c < 3; c++) {
+        assertArrayEquals(operation, counted[c], carried[c]);
+      }
+    }
+  }
+
+  @Test
+  public void testHistogramDroppedOnWrite() {
+    Image image = new Image(2, 1);
+    assertEquals(2, image.getHistogram()[0][0]);
+    image.setRGB(1, 0, Image.packRGB(255, 0, 0));
+    assertEquals(1, image.getHistogram()[0][0]);
+    assertEquals(1, image.getHistogram()[0][255]);
+    image.getPixelData()[0] = Image.packRGB(255, 0, 0);
+    image.markModified();
+    assertEquals(2, image.getHistogram()[0][255]);
+  }
+
+  @Test
+  public void testParallelAndSampledHistograms() {
+    Image large = new Image(301, 257);
+    int[][] expected = new int[3][256];
+    int[][] expectedSample = new int[3][256];
+    for (int y = 0; y < 257; y++) {
+      for (int x = 0; x < 301; x++) {
+        int rgb = Image.packRGB((x * 7 + y) % 256, (x * y) % 256, (x + y * 3) % 256);
+        large.setRGB(x, y, rgb);
+        expected[0][Image.red(rgb)]++;
+        expected[1][Image.green(rgb)]++;
+        expected[2][Image.blue(rgb)]++;
+        if (x % 3 == 0 && y % 3 == 0) {
+          expectedSample[0][Image.red(rgb)]++;
+          expectedSample[1][Image.green(rgb)]++;
+          expectedSample[2][Image.blue(rgb)]++;
+        }
+      }
+    }
+    int original = TileScheduler.getParallelism();
+    try {
+      TileScheduler.setParallelism(4);
+      int[][] counted = ChannelHistogram.compute(large);
+      int[][] sampled = ChannelHistogram.compute(large, 3);
+      for (int c = 0; c < 3; c++) {
+        assertArrayEquals(expected[c], counted[c]);
+        assertArrayEquals(expectedSample[c], sampled[c]);
+      }
+    } finally {
+      TileScheduler.setParallelism(original);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSampledHistogramInvalidStride() {
+    ChannelHistogram.compute(new Image(2, 2), 0);
+  }
+
+  @Test
+  public void testInterruptedWorkIsCancelled() {
+    for (int level : new int[]{1, 4}) {
+      int original = TileScheduler.getParallelism();
+      TileScheduler.setParallelism(level);
+      Thread.currentThread().interrupt();
+      try {
+        TileScheduler.forEachStrip(1000, 1000, (yStart, yEnd) -> fail("Strip ran."));
+        fail("Work was not cancelled.");
+      } catch (CancellationException e) {
+        assertTrue(Thread.interrupted());
+      } finally {
+        Thread.interrupted();
+        TileScheduler.setParallelism(original);
+      }
+    }
+  }
+
+  @Test
+  public void testRepeatedOperationsServedFromCache() {
+    Image image = new Image(20, 10);
+    for (int i = 0; i < 200; i++) {
+      image.getPixelData()[i] = Image.packRGB(i % 256, (i * 3) % 256, (i * 7) % 256);
+    }
+    imageManipulatorModel.addImageToHashMap("img", image);
+    OperationResultCache cache = imageManipulatorModel.getResultCache();
+    long hits = cache.getHitCount();
+    imageManipulatorModel.blur("img", "blur1");
+    imageManipulatorModel.blur("img", "blur2");
+    assertEquals(hits + 1, cache.getHitCount());
+    Image blur1 = imageManipulatorModel.getImageFromHashMap("blur1");
+    Image blur2 = imageManipulatorModel.getImageFromHashMap("blur2");
+    assertArrayEquals(blur1.getPixelData(), blur2.getPixelData());
+
+    // A result served from the cache is a copy, so writing to it leaves the other one alone.
+    assertFalse(blur1 == blur2);
+    int before = blur1.getRGB(0, 0);
+    blur2.setRGB(0, 0, before ^ 0xFFFFFF);
+    assertEquals(before, blur1.getRGB(0, 0));
+
+    imageManipulatorModel.brighten(10, "img", "bright1");
+    imageManipulatorModel.greyscale("luma-component", "bright1", "grey1");
+    imageManipulatorModel.brighten(10, "img", "bright2");
+    imageManipulatorModel.greyscale("luma-component", "bright2", "grey2");
+    assertArrayEquals(imageManipulatorModel.getImageFromHashMap("grey1").getPixelData(),
+        imageManipulatorModel.getImageFromHashMap("grey2").getPixelData());
+
+    // A different parameter or changed pixels are not served from the cache.
+    imageManipulatorModel.brighten(11, "img", "bright3");
+    assertFalse(imageManipulatorModel.getImageFromHashMap("bright3").getPixelData()[0]
+        == imageManipulatorModel.getImageFromHashMap("bright1").getPixelData()[0]);
+    image.setRGB(0, 0, 0);
+    imageManipulatorModel.blur("img", "blur3");
+    assertFalse(imageManipulatorModel.getImageFromHashMap("blur1")
+        == imageManipulatorModel.getImageFromHashMap("blur3"));
+  }
+
+  @Test
+  public void testResultCacheEvictsLeastRecentlyUsed() {
+    OperationResultCache cache = new OperationResultCache(2 * 4 * 100);
+    Image source = new Image(10, 10);
+    Image first = new Image(10, 10);
+    Image second = new Image(10, 10);
+    Image third = new Image(10, 10);
+    cache.put(source, "first", first);
+    cache.put(source, "second", second);
+    assertTrue(cache.get(source, "first") == first);
+    cache.put(source, "third", third);
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(800, cache.getSizeInBytes());
+    assertEquals(null, cache.get(source, "second"));
+    assertTrue(cache.get(source, "third") == third);
+
+    // Results changed after they were stored are dropped.
+    third.setRGB(0, 0, 1);
+    assertEquals(null, cache.get(source, "third"));
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+
+    cache.put(source, "large", new Image(30, 30));
+    assertEquals(null, cache.get(source, "large"));
+  }
+
+  @Test
+  public void testAlbumSpillsLeastRecentlyUsed() {
+    ImageAlbum album = new ImageAlbum(2 * 4 * 100);
+    Image first = new Image(10, 10);
+    for (int i = 0; i < 100; i++) {
+      first.getPixelData()[i] = Image.packRGB(i, 255 - i, i * 2);
+    }
+    int[][] histogram = first.getHistogram();
+    album.put("first", first);
+    album.put("second", new Image(10, 10));
+    assertEquals(0, album.getSpillCount());
+    album.put("third", new Image(10, 10));
+    assertEquals(1, album.getSpillCount());
+    assertEquals(800, album.getResidentBytes());
+    assertEquals(3, album.size());
+
+    // The spilled image comes back with the same pixels and histogram.
+    Image reloaded = album.get("first");
+    assertFalse(reloaded == first);
+    assertArrayEquals(first.getPixelData(), reloaded.getPixelData());
+    assertTrue(reloaded.getHistogram() == histogram);
+    assertEquals(2, album.getSpillCount());
+    assertEquals(800, album.getResidentBytes());
+
+    assertTrue(album.remove("second"));
+    assertFalse(album.contains("second"));
+    assertEquals(null, album.get("second"));
+    assertEquals(2, album.size());
+  }
+
+  @Test
+  public void testAlbumCountsSharedImageOnce() {
+    ImageAlbum album = new ImageAlbum(2 * 4 * 100);
+    Image shared = new Image(10, 10);
+    shared.setRGB(3, 3, Image.packRGB(1, 2, 3));
+    album.put("first", shared);
+    album.put("second", shared);
+    assertEquals(400, album.getResidentBytes());
+    album.put("third", new Image(10, 10));
+    assertEquals(0, album.getSpillCount());
+
+    // Both names of the shared image are spilled together, which frees its memory.
+    album.put("fourth", new Image(10, 10));
+    assertEquals(1, album.getSpillCount());
+    assertEquals(800, album.getResidentBytes());
+    assertFalse(album.holds("first", shared));
+    assertFalse(album.holds("second", shared));
+
+    // Reading one name back brings the image back under both.
+    Image reloaded = album.get("second");
+    assertArrayEquals(shared.getPixelData(), reloaded.getPixelData());
+    assertTrue(album.holds("first", reloaded));
+
+    // Pixels written after the image was read back are not lost to the old spill file.
+    reloaded.setRGB(0, 0, Image.packRGB(9, 9, 9));
+    album.get("third");
+    album.get("fourth");
+    album.put("fifth", new Image(10, 10));
+    assertFalse(album.holds("first", reloaded));
+    assertEquals(Image.packRGB(9, 9, 9), album.get("first").getRGB(0, 0));
+  }
+
+  @Test
+  public void testInterruptedReloadIsCancelled() {
+    ImageAlbum album = new ImageAlbum(4 * 100);
+    Image first = new Image(10, 10);
+    first.setRGB(5, 5, Image.packRGB(1, 2, 3));
+    album.put("first", first);
+    album.put("second", new Image(10, 10));
+    Thread.currentThread().interrupt();
+    try {
+      album.get("first");
+      fail("An interrupted reload should be cancelled.");
+    } catch (CancellationException e) {
+      assertTrue(Thread.interrupted());
+    }
+    // The image is still there once the interrupt is handled.
+    assertArrayEquals(first.getPixelData(), album.get("first").getPixelData());
+  }
+
+  @Test
+  public void testSpilledImagesAreNotHeldElsewhere() {
+    System.setProperty("imea.album.bytes", "800");
+    ImageManipulatorModelImpl model;
+    try {
+      model = new ImageManipulatorModelImpl();
+    } finally {
+      System.clearProperty("imea.album.bytes");
+    }
+    Image image = new Image(10, 10);
+    for (int i = 0; i < 100; i++) {
+      image.getPixelData()[i] = Image.packRGB(i, 255 - i, i * 2);
+    }
+    model.addImageToHashMap("img", image);
+    model.brighten(10, "img", "bright");
+    model.blur("img", "blurred");
+    ImageAlbum album = model.getImageAlbum();
+    OperationResultCache cache = model.getResultCache();
+    // The pending result holds its source, which is counted once.
+    assertEquals(800, album.getResidentBytes());
+    assertEquals(1, cache.getEntryCount());
+
+    model.addImageToHashMap("a", new Image(10, 10));
+    model.addImageToHashMap("b", new Image(10, 10));
+    assertEquals(2, album.getSpillCount());
+    assertEquals(800, album.getResidentBytes());
+    assertEquals(0, cache.getEntryCount());
+
+    // The pending result is computed from its spilled source.
+    Image expected = ChannelLookupTable.brighten(10).applyFilterToImage(image);
+    assertArrayEquals(expected.getPixelData(),
+        model.getImageFromHashMap("bright").getPixelData());
+  }
+
+  @Test
+  public void testModelWithGivenBudgets() {
+    ImageManipulatorModelImpl model = new ImageManipulatorModelImpl(800, 0);
+    assertEquals(800, model.getImageAlbum().getMemoryBudget());
+    Image image = new Image(10, 10);
+    model.addImageToHashMap("img", image);
+    model.blur("img", "blurred");
+    model.blur("img", "again");
+    // Nothing is cached, so the second blur is computed again.
+    assertEquals(0, model.getResultCache().getEntryCount());
+    assertEquals(1, model.getImageAlbum().getSpillCount());
+    assertArrayEquals(model.getImageFromHashMap("blurred").getPixelData(),
+        model.getImageFromHashMap("again").getPixelData());
+  }
+
+  @Test
+  public void testReleaseDropsCachedResult() {
+    OperationResultCache cache = imageManipulatorModel.getResultCache();
+    imageManipulatorModel.blur("testImage", "blurred");
+    imageManipulatorModel.blur("testImage", "again");
+    assertEquals(1, cache.getEntryCount());
+    Image blurred = imageManipulatorModel.getImageFromHashMap("blurred");
+    imageManipulatorModel.addImageToHashMap("blurred", blurred);
+    assertEquals(1, cache.getEntryCount());
+
+    // The copy stored by the cache hit is not the cached result, the first image is.
+    assertTrue(imageManipulatorModel.releaseImage("again"));
+    assertEquals(1, cache.getEntryCount());
+    assertTrue(imageManipulatorModel.releaseImage("blurred"));
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSizeInBytes());
+  }
+
+  @Test
+  public void testReleaseImage() {
+    imageManipulatorModel.brighten(10, "testImage", "bright");
+    imageManipulatorModel.blur("testImage", "blurred");
+    assertTrue(imageManipulatorModel.releaseImage("bright"));
+    assertTrue(imageManipulatorModel.releaseImage("blurred"));
+    assertFalse(imageManipulatorModel.releaseImage("blurred"));
+    assertEquals(null, imageManipulatorModel.getImageFromHashMap("bright"));
+    assertEquals(null, imageManipulatorModel.getImageFromHashMap("blurred"));
+    assertNotNull(imageManipulatorModel.getImageFromHashMap("testImage"));
+  }
 }
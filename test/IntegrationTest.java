@@ -1,4 +1,6 @@
 import controller.AdvancedImageManipulatorControllerImpl;
+import controller.BatchProcessor;
+import controller.command.Stream;
 import model.AdvancedImageManipulatorModel;
 import model.AdvancedImageManipulatorModelImpl;
 import model.Image;
@@ -10,7 +12,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
@@ -18,8 +23,12 @@ import controller.ImageManipulatorController;
 import controller.ImageManipulatorControllerImpl;
 import view.ImageManipulatorView;
 import view.ImageManipulatorViewImpl;
+import utility.ImageUtility;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * This class tests the program implementation as integration of model and controller.
@@ -159,4 +168,138 @@ public class IntegrationTest {
     assertEquals(sb3.toString(), "Source image not found.");
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testParallelScriptMatchesSequential() throws IOException {
+    Image source = new Image(40, 30);
+    for (int i = 0; i < 40 * 30; i++) {
+      source.getPixelData()[i] = Image.packRGB(i % 256, (i * 7) % 256, (i * 13) % 256);
+    }
+    String[] outputs = {"r.ppm", "combined.ppm", "blurred.ppm", "split.ppm", "reloaded.ppm"};
+    byte[][] expected = null;
+    for (int threads : new int[] {1, 4}) {
+      Path dir = Files.createTempDirectory("script");
+      String in = dir.resolve("in.ppm").toString();
+      ImageUtility.saveImageAsPPM(source, in);
+      Path script = dir.resolve("script.txt");
+      Files.write(script, Arrays.asList("load " + in + " img",
+          "rgb-split img r g b",
+          "save " + dir.resolve("r.ppm") + " r",
+          "brighten 30 g g",
+          "rgb-combine r g b combined",
+          "save " + dir.resolve("combined.ppm") + " combined",
+          "blur img blurred",
+          "blur blurred blurred",
+          "save " + dir.resolve("blurred.ppm") + " blurred",
+          "sepia img half split 40",
+          "save " + dir.resolve("split.ppm") + " half",
+          "load " + dir.resolve("blurred.ppm") + " again",
+          "sharpen again again",
+          "save " + dir.resolve("reloaded.ppm") + " again"));
+      AdvancedImageManipulatorModel model = new AdvancedImageManipulatorModelImpl();
+      StringBuilder log = new StringBuilder();
+      new AdvancedImageManipulatorControllerImpl(model, new ImageManipulatorViewImpl(), threads)
+          .runCommandsFromFile(script.toString(), log);
+
+      byte[][] written = new byte[outputs.length][];
+      for (int i = 0; i < outputs.length; i++) {
+        written[i] = Files.readAllBytes(dir.resolve(outputs[i]));
+      }
+      if (expected == null) {
+        expected = written;
+      } else {
+        for (int i = 0; i < outputs.length; i++) {
+          assertArrayEquals(outputs[i], expected[i], written[i]);
+        }
+      }
+      // Every image was released after its last use.
+      assertEquals(null, model.getImageFromHashMap("img"));
+      assertEquals(null, model.getImageFromHashMap("again"));
+    }
+  }
+
+  @Test
+  public void testBatchProcessesEveryMatchingFile() throws IOException {
+    Path dir = Files.createTempDirectory("batch");
+    Path out = dir.resolve("out");
+    for (int i = 0; i < 5; i++) {
+      Image image = new Image(8, 6);
+      Arrays.fill(image.getPixelData(), Image.packRGB(10 * i, 20, 30));
+      ImageUtility.saveImageAsPPM(image, dir.resolve("img" + i + ".ppm").toString());
+    }
+    Files.write(dir.resolve("broken.ppm"), Arrays.asList("P3", "8 6", "255", "1 2"));
+    Files.write(dir.resolve("notes.txt"), Arrays.asList("not an image"));
+
+    BatchProcessor batch = new BatchProcessor(Arrays.asList("load {in} img",
+        "# comments and blank lines are skipped", "",
+        "brighten 10 img bright",
+        "save {out}/{name}.ppm bright"), 2, new ImageManipulatorViewImpl());
+    StringBuilder log = new StringBuilder();
+    int failed = batch.run(dir + "/*.ppm", out, log);
+
+    assertEquals(1, failed);
+    assertEquals(6, batch.getProcessedCount());
+    assertEquals(1, batch.getFailedCount());
+    assertTrue(log.toString(), log.toString().contains("FAILED " + dir.resolve("broken.ppm")));
+    assertTrue(log.toString().endsWith("Processed 6 files, 1 failed.\n"));
+    for (int i = 0; i < 5; i++) {
+      Image result = ImageUtility.loadPPMImage(out.resolve("img" + i + ".ppm").toString());
+      assertEquals(Image.packRGB(10 * i + 10, 30, 40), result.getPixelData()[0]);
+    }
+    assertFalse(Files.exists(out.resolve("broken.ppm")));
+  }
+
+  @Test
+  public void testStreamMatchesLoadedImage() throws IOException {
+    Image source = new Image(53, 41);
+    for (int i = 0; i < 53 * 41; i++) {
+      source.getPixelData()[i] = Image.packRGB(i % 256, (i * 7) % 256, (i * 13) % 256);
+    }
+    Path dir = Files.createTempDirectory("stream");
+    String in = dir.resolve("in.ppm").toString();
+    ImageUtility.saveImageAsPPM(source, in);
+    String[] operations = {"blur", "sharpen", "brighten 15", "sepia", "value-component",
+        "levels-adjust 10 120 240"};
+    for (int i = 0; i < operations.length; i++) {
+      for (String extension : new String[] {"ppm", "png"}) {
+        Path loaded = dir.resolve("loaded" + i + "." + extension);
+        Path streamed = dir.resolve("streamed" + i + "." + extension);
+        Path script = dir.resolve("script.txt");
+        Files.write(script, Arrays.asList("load " + in + " img", operations[i] + " img out",
+            "save " + loaded + " out",
+            "stream " + in + " " + streamed + " " + operations[i]));
+        StringBuilder log = new StringBuilder();
+        new AdvancedImageManipulatorControllerImpl(new AdvancedImageManipulatorModelImpl(),
+            new ImageManipulatorViewImpl()).runCommandsFromFile(script.toString(), log);
+
+        assertTrue(log.toString(), log.toString().contains(
+            "Operation performed successfully: stream"));
+        assertArrayEquals(operations[i], Files.readAllBytes(loaded),
+            Files.readAllBytes(streamed));
+      }
+    }
+  }
+
+  @Test
+  public void testStreamOntoItself() throws IOException {
+    // Large enough not to be read whole before the output is opened.
+    Image source = new Image(600, 400);
+    for (int i = 0; i < 600 * 400; i++) {
+      source.getPixelData()[i] = Image.packRGB(i % 256, (i * 3) % 256, (i * 11) % 256);
+    }
+    Path dir = Files.createTempDirectory("stream");
+    Path file = dir.resolve("image.ppm");
+    Path expected = dir.resolve("expected.ppm");
+    ImageUtility.saveImageAsPPM(source, file.toString());
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    model.addImageToHashMap("img", source);
+    model.brighten(10, "img", "bright");
+    ImageUtility.saveImageAsPPM(model.getImageFromHashMap("bright"), expected.toString());
+
+    new Stream(file.toString(), file.toString(), "brighten 10").execute(model);
+    assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(file));
+    // The temporary file the image was written to is gone.
+    try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+      assertEquals(2, files.count());
+    }
+  }
+}
@@ -1,4 +1,6 @@
 import model.AdvancedImageManipulatorModel;
+import model.Image;
+import model.RowSource;
 
 /**
  * A mock class for AdvancedImageManipulatorModel used for controller testing.
@@ -39,6 +41,18 @@ public class MockModel implements AdvancedImageManipulatorModel {
     log.append("adjustLevels");
   }
 
+  @Override
+  public void thumbnail(int scale, String srcImageName, String destImageName)
+      throws IllegalArgumentException {
+    log.append("thumbnail");
+  }
+
+  @Override
+  public RowSource streamOperation(String operation, RowSource source) {
+    log.append("streamOperation");
+    return source;
+  }
+
   @Override
   public void addRawImageToHashMap(String key, String[] rawImage) {
     log.append("addRawImageToHashMap");
@@ -50,6 +64,28 @@ public class MockModel implements AdvancedImageManipulatorModel {
     return new String[0];
   }
 
+  @Override
+  public void addImageToHashMap(String key, Image image) {
+    log.append("addImageToHashMap");
+  }
+
+  @Override
+  public Image getImageFromHashMap(String imageName) {
+    log.append("getImageFromHashMap");
+    return null;
+  }
+
+  @Override
+  public boolean releaseImage(String imageName) {
+    log.append("releaseImage");
+    return false;
+  }
+
+  @Override
+  public long getPixelCount(String imageName) {
+    return 0;
+  }
+
   @Override
   public void rgbSplit(String srcImageName, String destRedImageName, String destGreenImageName,
       String destBlueImageName) {
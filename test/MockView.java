@@ -1,4 +1,5 @@
 import controller.GUIController;
+import model.Image;
 import view.ImageManipulatorGUIView;
 
 /**
@@ -18,12 +19,12 @@ public class MockView implements ImageManipulatorGUIView {
   }
 
   @Override
-  public void setImageInPanel(String[] image) {
+  public void setImageInPanel(Image image) {
     log.append("setImageInPanel");
   }
 
   @Override
-  public void setHistogramInPanel(String[] image) {
+  public void setHistogramInPanel(Image image) {
     log.append("setHistogramInPanel");
   }
 
@@ -31,4 +32,9 @@ public class MockView implements ImageManipulatorGUIView {
   public void displayErrorMessage(String errorMessage) {
     log.append("displayErrorMessage");
   }
+
+  @Override
+  public void setBusy(boolean busy) {
+    log.append("setBusy");
+  }
 }
@@ -0,0 +1,134 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import controller.command.Save;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import model.Image;
+import model.ImageManipulatorModelImpl;
+import model.RowSource;
+import org.junit.Test;
+import utility.ImageUtility;
+import utility.PPMCodec;
+
+/**
+ * Test class for reading and writing plain and binary PPM files.
+ */
+public class PPMCodecTest {
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    Image image = new Image(3, 2);
+    for (int y = 0; y < 2; y++) {
+      for (int x = 0; x < 3; x++) {
+        image.setRGB(x, y, Image.packRGB(x * 80, y * 200, 255 - x - y));
+      }
+    }
+    Path path = tempFile();
+    PPMCodec.write(image, path, true);
+    Image loaded = PPMCodec.read(path);
+
+    assertEquals(3, loaded.getWidth());
+    assertEquals(2, loaded.getHeight());
+    for (int y = 0; y < 2; y++) {
+      for (int x = 0; x < 3; x++) {
+        assertEquals(image.getRGB(x, y), loaded.getRGB(x, y));
+      }
+    }
+    assertEquals("P6\n3 2\n255\n".length() + 3 * 3 * 2, Files.size(path));
+  }
+
+  @Test
+  public void testPlainWithCommentsAndMaxValue() throws IOException {
+    Path path = tempFile();
+    Files.write(path, ("# leading comment\nP3\n# size\n2 1 # trailing\n15\n"
+        + "15 0 5\n0 15 10").getBytes(StandardCharsets.US_ASCII));
+    Image loaded = PPMCodec.read(path);
+
+    assertEquals(255, loaded.getPixelRGB(0, 0).getRed());
+    assertEquals(85, loaded.getPixelRGB(0, 0).getBlue());
+    assertEquals(255, loaded.getPixelRGB(1, 0).getGreen());
+    assertEquals(170, loaded.getPixelRGB(1, 0).getBlue());
+  }
+
+  @Test
+  public void testPlainWriteLayout() throws IOException {
+    Image image = new Image(2, 1);
+    image.setRGB(1, 0, Image.packRGB(7, 80, 255));
+    Path path = tempFile();
+    PPMCodec.write(image, path, false);
+
+    assertEquals("P3\n2 1\n255\n0 0 0 7 80 255 \n",
+        new String(Files.readAllBytes(path), StandardCharsets.US_ASCII));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMagic() throws IOException {
+    Path path = tempFile();
+    Files.write(path, "P5\n1 1\n255\n0".getBytes(StandardCharsets.US_ASCII));
+    PPMCodec.read(path);
+  }
+
+  @Test
+  public void testRowsMatchWholeImage() throws IOException {
+    Image image = new Image(5, 7);
+    for (int i = 0; i < 35; i++) {
+      image.getPixelData()[i] = Image.packRGB(i * 7, 255 - i, i * i % 256);
+    }
+    for (boolean binary : new boolean[] {false, true}) {
+      Path path = tempFile();
+      PPMCodec.write(image, path, binary);
+      Image rows = new Image(5, 7);
+      try (RowSource source = PPMCodec.openRows(path)) {
+        assertEquals(5, source.getWidth());
+        assertEquals(7, source.getHeight());
+        source.readRows(rows, 0, 3);
+        source.readRows(rows, 3, 7);
+      }
+      assertArrayEquals(image.getPixelData(), rows.getPixelData());
+
+      Path copy = tempFile();
+      try (RowSource source = PPMCodec.openRows(path)) {
+        PPMCodec.write(source, copy, binary);
+      }
+      assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy));
+    }
+  }
+
+  @Test
+  public void testSaveWritesBinaryWhenAsked() throws IOException {
+    ImageManipulatorModelImpl model = new ImageManipulatorModelImpl();
+    Image image = new Image(4, 3);
+    for (int i = 0; i < 12; i++) {
+      image.getPixelData()[i] = Image.packRGB(i * 20, 255 - i, i * i);
+    }
+    model.addImageToHashMap("image", image);
+    Path plain = tempFile();
+    new Save(plain.toString(), "image").execute(model);
+    assertEquals('3', Files.readAllBytes(plain)[1]);
+
+    Path binary = tempFile();
+    Path streamed = tempFile();
+    System.setProperty(ImageUtility.BINARY_PPM_PROPERTY, "true");
+    try {
+      new Save(binary.toString(), "image").execute(model);
+      try (RowSource rows = PPMCodec.openRows(plain)) {
+        ImageUtility.saveRows(rows, streamed.toString());
+      }
+    } finally {
+      System.clearProperty(ImageUtility.BINARY_PPM_PROPERTY);
+    }
+    assertEquals("P6\n4 3\n255\n".length() + 3 * 12, Files.size(binary));
+    assertArrayEquals(image.getPixelData(), PPMCodec.read(binary).getPixelData());
+    assertArrayEquals(Files.readAllBytes(binary), Files.readAllBytes(streamed));
+  }
+
+  private Path tempFile() throws IOException {
+    File file = File.createTempFile("ppm-codec", ".ppm");
+    file.deleteOnExit();
+    return file.toPath();
+  }
+}
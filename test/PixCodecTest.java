@@ -0,0 +1,105 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import controller.command.Load;
+import controller.command.Save;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import model.AdvancedImageManipulatorModelImpl;
+import model.Image;
+import org.junit.Test;
+import utility.ImageUtility;
+import utility.PixCodec;
+
+/**
+ * Test class for reading and writing uncompressed pix files and sidecar caches.
+ */
+public class PixCodecTest {
+
+  @Test
+  public void testSaveAndLoadThroughCommands() throws IOException {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    Image image = createTestImage(31, 17);
+    model.addImageToHashMap("image", image);
+
+    Path path = tempFile();
+    new Save(path.toString(), "image").execute(model);
+    assertEquals(32 + 4 * 31 * 17, Files.size(path));
+    assertFalse(PixCodec.isDecodedFrom(path, 0, 0));
+
+    new Load(path.toString(), "reloaded").execute(model);
+    Image reloaded = model.getImageFromHashMap("reloaded");
+    assertEquals(31, reloaded.getWidth());
+    assertEquals(17, reloaded.getHeight());
+    assertArrayEquals(image.getPixelData(), reloaded.getPixelData());
+  }
+
+  @Test
+  public void testSidecarFollowsSourceFile() throws IOException {
+    Path png = Files.createTempFile("sidecar", ".png");
+    png.toFile().deleteOnExit();
+    Path sidecar = png.resolveSibling(png.getFileName() + ".pix");
+    sidecar.toFile().deleteOnExit();
+    ImageUtility.saveImageWithFormat(createTestImage(12, 9), png.toString(), "PNG");
+
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    System.setProperty(ImageUtility.SIDECAR_PROPERTY, "true");
+    try {
+      assertNull(ImageUtility.loadSidecar(png.toString()));
+      new Load(png.toString(), "first").execute(model);
+      assertTrue(Files.exists(sidecar));
+      assertArrayEquals(model.getImageFromHashMap("first").getPixelData(),
+          ImageUtility.loadSidecar(png.toString()).getPixelData());
+
+      // A changed source file is decoded again and its sidecar replaced.
+      ImageUtility.saveImageWithFormat(createTestImage(5, 4), png.toString(), "PNG");
+      Files.setLastModifiedTime(png, FileTime.fromMillis(
+          Files.getLastModifiedTime(sidecar).toMillis() + 2000));
+      assertNull(ImageUtility.loadSidecar(png.toString()));
+      new Load(png.toString(), "second").execute(model);
+      assertEquals(5, model.getImageFromHashMap("second").getWidth());
+      assertEquals(5, ImageUtility.loadSidecar(png.toString()).getWidth());
+    } finally {
+      System.clearProperty(ImageUtility.SIDECAR_PROPERTY);
+    }
+    assertNull(ImageUtility.loadSidecar(png.toString()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMagic() throws IOException {
+    Path path = tempFile();
+    Files.write(path, new byte[32]);
+    PixCodec.read(path);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncatedFile() throws IOException {
+    Path path = tempFile();
+    PixCodec.write(createTestImage(4, 4), path, -1, -1);
+    Files.write(path, Arrays.copyOf(Files.readAllBytes(path), 40));
+    PixCodec.read(path);
+  }
+
+  private Image createTestImage(int width, int height) {
+    Image image = new Image(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, Image.packRGB((x * 6) % 256, (y * 8) % 256, (x * y) % 256));
+      }
+    }
+    return image;
+  }
+
+  private Path tempFile() throws IOException {
+    File file = File.createTempFile("pix-codec", ".pix");
+    file.deleteOnExit();
+    return file.toPath();
+  }
+}
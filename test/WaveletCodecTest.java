@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import controller.command.Load;
+import controller.command.Save;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import model.AdvancedImageManipulatorModelImpl;
+import model.CompressedImage;
+import model.Image;
+import model.ImageCompressionImpl;
+import model.WaveletCoefficients;
+import org.junit.Test;
+import utility.WaveletCodec;
+
+/**
+ * Test class for reading and writing compressed wavelet files.
+ */
+public class WaveletCodecTest {
+
+  @Test
+  public void testCompressedRoundTrip() throws IOException {
+    Image image = createTestImage(40, 30);
+    CompressedImage compressed = (CompressedImage) new ImageCompressionImpl()
+        .compress(image, 80.0);
+    WaveletCoefficients coefficients = compressed.getCoefficients();
+
+    Path path = tempFile();
+    WaveletCodec.write(coefficients, path);
+    WaveletCoefficients loaded = WaveletCodec.read(path);
+
+    assertEquals(40, loaded.getWidth());
+    assertEquals(30, loaded.getHeight());
+    for (int c = 0; c < 3; c++) {
+      int[] expectedPositions = coefficients.getPositions(c);
+      int[] loadedPositions = loaded.getPositions(c);
+      assertTrue(loadedPositions.length <= expectedPositions.length);
+      for (int i = 0, j = 0; i < loadedPositions.length; i++, j++) {
+        // Coefficients quantised to zero are dropped.
+        while (expectedPositions[j] != loadedPositions[i]) {
+          assertEquals(0, coefficients.getValues(c)[j], 1.0 / 128);
+          j++;
+        }
+        assertEquals(coefficients.getValues(c)[j], loaded.getValues(c)[i], 1.0 / 128);
+      }
+    }
+
+    Image reloaded = new ImageCompressionImpl().reconstruct(loaded);
+    for (int i = 0; i < image.getPixelData().length; i++) {
+      int expected = compressed.getPixelData()[i];
+      int actual = reloaded.getPixelData()[i];
+      assertEquals(Image.red(expected), Image.red(actual), 1);
+      assertEquals(Image.green(expected), Image.green(actual), 1);
+      assertEquals(Image.blue(expected), Image.blue(actual), 1);
+    }
+  }
+
+  @Test
+  public void testSaveAndLoadThroughCommands() throws IOException {
+    AdvancedImageManipulatorModelImpl model = new AdvancedImageManipulatorModelImpl();
+    model.addImageToHashMap("image", createTestImage(64, 64));
+    model.compress(90, "image", "compressed");
+
+    Path full = tempFile();
+    Path compressed = tempFile();
+    new Save(full.toString(), "image").execute(model);
+    new Save(compressed.toString(), "compressed").execute(model);
+    assertTrue(Files.size(compressed) < Files.size(full));
+
+    new Load(full.toString(), "reloaded").execute(model);
+    Image original = model.getImageFromHashMap("image");
+    Image reloaded = model.getImageFromHashMap("reloaded");
+    for (int i = 0; i < original.getPixelData().length; i++) {
+      assertEquals(Image.red(original.getPixelData()[i]), Image.red(reloaded.getPixelData()[i]),
+          1);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMagic() throws IOException {
+    Path path = tempFile();
+    Files.write(path, new byte[]{'P', '6', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+    WaveletCodec.read(path);
+  }
+
+  private Image createTestImage(int width, int height) {
+    Image image = new Image(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, Image.packRGB((x * 6) % 256, (y * 8) % 256, (x * y) % 256));
+      }
+    }
+    return image;
+  }
+
+  private Path tempFile() throws IOException {
+    File file = File.createTempFile("wavelet", ".hwt");
+    file.deleteOnExit();
+    return file.toPath();
+  }
+}